@@ -0,0 +1,90 @@
+package com.github.neemogu.bannerads.benchmarks;
+
+import com.github.neemogu.bannerads.banner.BannerSummary;
+import com.github.neemogu.bannerads.banner.BannerFetchParameters;
+import com.github.neemogu.bannerads.banner.BannerService;
+import com.github.neemogu.bannerads.banner.BannerSortBy;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryFetchParameters;
+import com.github.neemogu.bannerads.category.CategoryService;
+import com.github.neemogu.bannerads.util.SortDirection;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency percentiles of the admin listings: a random page of banners sorted by price
+ * within a random category and a page of categories, both optionally filtered by a name substring.
+ * <p>
+ * {@code priceIndexes=false} drops the banner price indexes to compare the category scan
+ * with a filesort against the ordered index scan, e.g. at 100k banners:
+ * {@code -p categories=100 -p bannersPerCategory=1000 -p searchName=}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AdminListBenchmark {
+    private static final int pageSize = 20;
+
+    @Param({"10", "100"})
+    private int categories;
+    @Param({"100", "1000"})
+    private int bannersPerCategory;
+    @Param({"", "7"})
+    private String searchName;
+    @Param({"true", "false"})
+    private boolean priceIndexes;
+
+    private BenchmarkDataset dataset;
+    private BannerService bannerService;
+    private CategoryService categoryService;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new BenchmarkDataset(categories, bannersPerCategory, 0, 0);
+        bannerService = dataset.getBean(BannerService.class);
+        categoryService = dataset.getBean(CategoryService.class);
+        if (!priceIndexes) {
+            dataset.getJdbcTemplate().execute("drop index banner_category_price_idx");
+            dataset.getJdbcTemplate().execute("drop index banner_price_idx");
+        }
+        dataset.getJdbcTemplate().execute("analyze");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.close();
+    }
+
+    @Benchmark
+    public List<BannerSummary> getBannerList(ThreadState state) {
+        Integer categoryId = dataset.getCategoryIds().get(state.random.nextInt(categories));
+        return bannerService.getBannerList(BannerFetchParameters.builder()
+                .page(state.random.nextInt(Math.max(1, bannersPerCategory / pageSize)))
+                .pageSize(pageSize)
+                .sortBy(BannerSortBy.PRICE)
+                .sortDirection(SortDirection.DESC)
+                .searchName(searchName)
+                .categoryId(categoryId)
+                .build());
+    }
+
+    @Benchmark
+    public List<Category> getCategoryList(ThreadState state) {
+        return categoryService.getCategoryList(CategoryFetchParameters.builder()
+                .page(state.random.nextInt(Math.max(1, categories / pageSize)))
+                .pageSize(pageSize)
+                .searchName(searchName)
+                .build());
+    }
+}
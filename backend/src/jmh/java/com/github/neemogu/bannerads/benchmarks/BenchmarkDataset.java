@@ -0,0 +1,138 @@
+package com.github.neemogu.bannerads.benchmarks;
+
+import com.github.neemogu.bannerads.BannerAdsApplication;
+import com.github.neemogu.bannerads.banner.BannerIndex;
+import com.github.neemogu.bannerads.banner.BannerService;
+import com.github.neemogu.bannerads.category.CategoryCache;
+import com.github.neemogu.bannerads.category.CategoryService;
+import com.github.neemogu.bannerads.request.UserAgentDictionary;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.ViewerHash;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application context on an embedded H2 database in MySQL mode, filled with a synthetic dataset:
+ * categories with banners of distinct prices and viewers who have already seen the most expensive banners.
+ */
+final class BenchmarkDataset implements AutoCloseable {
+    private static final int userAgentsCount = 20;
+    private static final String content = "<div class=\"banner\">Benchmark banner content</div>\n".repeat(40);
+
+    private final ConfigurableApplicationContext context;
+    private final JdbcTemplate jdbcTemplate;
+    private final int categories;
+    private final int viewers;
+    private List<Integer> categoryIds;
+
+    BenchmarkDataset(int categories, int bannersPerCategory, int viewers, int priorImpressionsPerViewer) {
+        this.categories = categories;
+        this.viewers = viewers;
+        this.context = new SpringApplicationBuilder(BannerAdsApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.flyway.enabled=false",
+                        "--spring.main.banner-mode=off",
+                        "--bannerads.retention.enabled=false",
+                        "--logging.level.root=WARN");
+        this.jdbcTemplate = context.getBean(JdbcTemplate.class);
+        fill(bannersPerCategory, priorImpressionsPerViewer);
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    String categoryReqName(int category) {
+        return "category-" + category;
+    }
+
+    String userAgent(int viewer) {
+        return "Mozilla/5.0 (X11; Linux x86_64) Benchmark/" + (viewer % userAgentsCount);
+    }
+
+    String ipAddress(int viewer) {
+        return "10." + (viewer >>> 16 & 0xff) + "." + (viewer >>> 8 & 0xff) + "." + (viewer & 0xff);
+    }
+
+    /**
+     * @return Ids of generated categories in the order of their numbers.
+     */
+    List<Integer> getCategoryIds() {
+        return categoryIds;
+    }
+
+    int getCategories() {
+        return categories;
+    }
+
+    int getViewers() {
+        return viewers;
+    }
+
+    private void fill(int bannersPerCategory, int priorImpressionsPerViewer) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int c = 0; c < categories; ++c) {
+            rows.add(new Object[]{"Category " + c, categoryReqName(c)});
+        }
+        jdbcTemplate.batchUpdate("insert into category (name, req_name, deleted) values (?, ?, false)", rows);
+        categoryIds = jdbcTemplate.queryForList("select id from category order by id", Integer.class);
+
+        rows.clear();
+        for (int c = 0; c < categories; ++c) {
+            for (int b = 0; b < bannersPerCategory; ++b) {
+                rows.add(new Object[]{"Banner " + c + "-" + b, 1.0 + b * 0.01, content, categoryReqName(c)});
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into banner (name, price, category_id, content, deleted) " +
+                "select ?, ?, id, ?, false from category where req_name = ?", rows);
+
+        UserAgentDictionary userAgents = getBean(UserAgentDictionary.class);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        rows.clear();
+        for (int c = 0; c < categories; ++c) {
+            // the most expensive banners, which are checked first
+            List<Integer> seen = jdbcTemplate.queryForList("select b.id from banner b join category c " +
+                    "on b.category_id = c.id where c.req_name = ? order by b.price desc, b.id limit ?",
+                    Integer.class, categoryReqName(c), priorImpressionsPerViewer);
+            for (int v = 0; v < viewers; ++v) {
+                IpAddress ip = IpAddress.parse(ipAddress(v));
+                String userAgent = userAgent(v);
+                long hash = ViewerHash.of(ip, userAgent);
+                Integer userAgentId = userAgents.getId(userAgent);
+                for (Integer bannerId : seen) {
+                    rows.add(new Object[]{bannerId, userAgentId, ip.toBytes(), hash, now});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into request (banner_id, user_agent_id, ip_address, viewer_hash, date) " +
+                "values (?, ?, ?, ?, ?)", rows);
+
+        getBean(BannerIndex.class).rebuild();
+        getBean(CategoryCache.class).invalidate();
+        getBean(CategoryService.class).rebuildNameIndex();
+        getBean(CategoryService.class).invalidateCounts();
+        getBean(BannerService.class).invalidateCounts();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
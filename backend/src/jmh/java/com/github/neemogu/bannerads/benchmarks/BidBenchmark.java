@@ -0,0 +1,73 @@
+package com.github.neemogu.bannerads.benchmarks;
+
+import com.github.neemogu.bannerads.exceptions.BadRequestException;
+import com.github.neemogu.bannerads.request.ImpressionWriter;
+import com.github.neemogu.bannerads.request.RequestService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency percentiles of {@link RequestService#getNextBannerContent(String, String, String)}
+ * for random viewers and categories. Impressions served during an iteration are removed before the next one,
+ * so every iteration starts from the generated dataset.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BidBenchmark {
+    @Param({"10"})
+    private int categories;
+    @Param({"10", "100"})
+    private int bannersPerCategory;
+    @Param({"1000"})
+    private int viewers;
+    @Param({"0", "8"})
+    private int priorImpressionsPerViewer;
+
+    private BenchmarkDataset dataset;
+    private RequestService requestService;
+    private ImpressionWriter impressionWriter;
+    private int generatedRequestsMaxId;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new BenchmarkDataset(categories, bannersPerCategory, viewers, priorImpressionsPerViewer);
+        requestService = dataset.getBean(RequestService.class);
+        impressionWriter = dataset.getBean(ImpressionWriter.class);
+        Integer maxId = dataset.getJdbcTemplate().queryForObject("select max(id) from request", Integer.class);
+        generatedRequestsMaxId = maxId == null ? 0 : maxId;
+    }
+
+    @Setup(Level.Iteration)
+    public void removeServedImpressions() throws InterruptedException {
+        impressionWriter.flush();
+        dataset.getJdbcTemplate().update("delete from request where id > ?", generatedRequestsMaxId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        impressionWriter.flush();
+        dataset.close();
+    }
+
+    @Benchmark
+    public Optional<String> getNextBannerContent(ThreadState state) throws BadRequestException {
+        int viewer = state.random.nextInt(dataset.getViewers());
+        return requestService.getNextBannerContent(
+                dataset.userAgent(viewer),
+                dataset.ipAddress(viewer),
+                dataset.categoryReqName(state.random.nextInt(dataset.getCategories()))
+        );
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.neemogu.bannerads.benchmarks;
+
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.ViewerHash;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a request deduplication lookup on a synthetic request table: by the raw IP address
+ * and user agent columns through a composite (banner_id, ip_address, user_agent_id, date) index,
+ * against the lookup through the (banner_id, viewer_hash, date) index used by banner selection.
+ * Every lookup hits an existing viewer and banner, half of them a request made within the last day.
+ * The raw index only exists in the RAW trials, so each lookup is planned with its own index.
+ * <p>
+ * The table has 2 million rows by default and the fork gets a 4 GB heap to hold it in memory,
+ * smaller tables for a quick run are set with e.g. -Djmh.args="RequestDedupLookupBenchmark -p rows=100000".
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RequestDedupLookupBenchmark {
+    private static final int bannersCount = 50;
+    private static final int userAgentsCount = 2000;
+    private static final long millisInDay = 86400000L;
+    private static final String userAgentPrefix = "Mozilla/5.0 (X11; Linux x86_64) Benchmark/";
+
+    public enum Lookup {
+        RAW, HASHED
+    }
+
+    @Param({"2000000"})
+    private int rows;
+    @Param({"RAW", "HASHED"})
+    private Lookup lookup;
+
+    private BenchmarkDataset dataset;
+    private JdbcTemplate jdbcTemplate;
+    private String sql;
+    private int minBannerId;
+    private int minUserAgentId;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final SplittableRandom random = new SplittableRandom(42);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new BenchmarkDataset(1, bannersCount, 0, 0);
+        jdbcTemplate = dataset.getJdbcTemplate();
+        jdbcTemplate.update("insert into user_agent (agent) select ? || x from system_range(0, ? - 1)",
+                userAgentPrefix, userAgentsCount);
+        jdbcTemplate.execute("create alias if not exists viewer_hash_of for " +
+                "\"com.github.neemogu.bannerads.benchmarks.RequestDedupLookupBenchmark.viewerHash\"");
+        jdbcTemplate.execute("create alias if not exists ip_bytes_of for " +
+                "\"com.github.neemogu.bannerads.benchmarks.RequestDedupLookupBenchmark.ipBytes\"");
+        minBannerId = jdbcTemplate.queryForObject("select min(id) from banner", Integer.class);
+        minUserAgentId = jdbcTemplate.queryForObject("select min(id) from user_agent", Integer.class);
+        // request x is made by viewer x / bannersCount, half of the requests are older than a day;
+        // ids are given in descending order, so only the first row moves the identity sequence,
+        // which commits on every move
+        jdbcTemplate.update("insert into request (id, banner_id, ip_address, user_agent_id, viewer_hash, date) " +
+                        "select id, ? + banner_number, ip_bytes_of(ip), ? + ua_number, " +
+                        "viewer_hash_of(ip, ? || ua_number), date from (" +
+                        "select ? - x id, mod(x, ?) banner_number, " +
+                        "'10.' || mod(x / ? / 65536, 256) || '.' || mod(x / ? / 256, 256) || '.' || mod(x / ?, 256) ip, " +
+                        "mod(x / ?, ?) ua_number, " +
+                        "dateadd('MILLISECOND', -mod(x * 7919, ?), current_timestamp()) date " +
+                        "from system_range(0, ? - 1))",
+                minBannerId, minUserAgentId, userAgentPrefix, rows,
+                bannersCount, bannersCount, bannersCount, bannersCount, bannersCount, userAgentsCount,
+                millisInDay * 2, rows);
+        if (lookup == Lookup.RAW) {
+            jdbcTemplate.execute("create index request_raw_lookup_idx " +
+                    "on request (banner_id, ip_address, user_agent_id, date)");
+            sql = "select 1 from request where banner_id = ? and ip_address = ? " +
+                    "and user_agent_id = ? and date > ? limit 1";
+        } else {
+            sql = "select 1 from request where banner_id = ? and viewer_hash = ? " +
+                    "and date > ? and ip_address = ? and user_agent_id = ? limit 1";
+        }
+    }
+
+    public static long viewerHash(String ipAddress, String userAgent) {
+        return ViewerHash.of(IpAddress.parse(ipAddress), userAgent);
+    }
+
+    public static byte[] ipBytes(String ipAddress) {
+        return IpAddress.parse(ipAddress).toBytes();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.close();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> lookUpRequest(ThreadState state) {
+        int row = state.random.nextInt(rows);
+        int viewer = row / bannersCount;
+        IpAddress ip = IpAddress.parse(
+                "10." + (viewer / 65536 % 256) + "." + (viewer / 256 % 256) + "." + (viewer % 256));
+        int userAgentNumber = viewer % userAgentsCount;
+        int bannerId = minBannerId + row % bannersCount;
+        Timestamp after = new Timestamp(System.currentTimeMillis() - millisInDay);
+        if (lookup == Lookup.RAW) {
+            return jdbcTemplate.queryForList(sql, bannerId, ip.toBytes(), minUserAgentId + userAgentNumber, after);
+        }
+        return jdbcTemplate.queryForList(sql, bannerId, ViewerHash.of(ip, userAgentPrefix + userAgentNumber), after,
+                ip.toBytes(), minUserAgentId + userAgentNumber);
+    }
+}
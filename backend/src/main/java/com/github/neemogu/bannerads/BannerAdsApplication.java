@@ -1,9 +1,14 @@
 package com.github.neemogu.bannerads;
 
+import com.github.neemogu.bannerads.util.PageCursor;
+import com.github.neemogu.bannerads.util.SqlFunctions;
 import lombok.NonNull;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -12,6 +17,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
  */
 
 @SpringBootApplication
+@EnableScheduling
 public class BannerAdsApplication {
 
     public static void main(String[] args) {
@@ -26,8 +32,17 @@ public class BannerAdsApplication {
                 registry.addMapping("/**")
                         .allowedOrigins("*")
                         .allowedMethods("GET", "POST", "PUT", "DELETE")
-                        .allowedHeaders("*");
+                        .allowedHeaders("*")
+                        .exposedHeaders(PageCursor.nextPageHeader);
             }
         };
     }
+
+    @Bean
+    public HibernatePropertiesCustomizer sqlFunctionsCustomizer() {
+        return properties -> properties.put(
+                EntityManagerFactoryBuilderImpl.METADATA_BUILDER_CONTRIBUTOR,
+                SqlFunctions.contributor()
+        );
+    }
 }
@@ -15,7 +15,10 @@ import javax.validation.constraints.Size;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "banner")
+@Table(name = "banner", indexes = {
+        @Index(name = "banner_category_price_idx", columnList = "category_id, deleted, price DESC, id"),
+        @Index(name = "banner_price_idx", columnList = "deleted, price DESC, id")
+})
 public final class Banner {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -40,4 +43,45 @@ public final class Banner {
     @Column(name = "deleted")
     @JsonIgnore
     private Boolean deleted = false;
+    /**
+     * Maximum number of impressions per day (UTC), not limited if null.
+     */
+    @Column(name = "daily_impression_cap")
+    @Min(value = 1, message = "Banner daily impression cap must be positive value")
+    private Long dailyImpressionCap;
+    /**
+     * Maximum sum of prices of impressions per day (UTC), not limited if null.
+     */
+    @Column(name = "daily_budget")
+    @Min(value = 0, message = "Banner daily budget must be positive or zero value")
+    private Double dailyBudget;
+    /**
+     * Comma separated user agent families the banner is shown to, see
+     * {@link UserAgentFamily}. Shown to all if null or blank.
+     */
+    @Column(name = "target_user_agents")
+    @Size(max = 255, message = "Banner user agent targeting must be up to 255 symbols length")
+    private String targetUserAgents;
+    /**
+     * Comma separated IP addresses, CIDR blocks or hyphenated address ranges the banner is shown to,
+     * see {@link com.github.neemogu.bannerads.util.IpRange}. Shown to all if null or blank.
+     */
+    @Column(name = "target_ip_ranges", length = 10000)
+    @Size(max = 10000, message = "Banner IP targeting must be up to 10000 symbols length")
+    private String targetIpRanges;
+
+    /**
+     * Creates a banner without daily caps.
+     */
+    public Banner(Integer id, String name, Double price, Category category, String content, Boolean deleted) {
+        this(id, name, price, category, content, deleted, null, null);
+    }
+
+    /**
+     * Creates a banner without targeting.
+     */
+    public Banner(Integer id, String name, Double price, Category category, String content, Boolean deleted,
+                  Long dailyImpressionCap, Double dailyBudget) {
+        this(id, name, price, category, content, deleted, dailyImpressionCap, dailyBudget, null, null);
+    }
 }
@@ -1,5 +1,9 @@
 package com.github.neemogu.bannerads.banner;
 
+import com.github.neemogu.bannerads.util.ListPage;
+import com.github.neemogu.bannerads.util.PageCursor;
+import com.github.neemogu.bannerads.util.SortDirection;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -10,6 +14,7 @@ import java.util.List;
 import java.util.Optional;
 
 @RestController
+@Timed(histogram = true, percentiles = {0.5, 0.95, 0.99})
 @RequestMapping("/banners")
 public class BannerController {
     private final BannerService service;
@@ -24,6 +29,11 @@ public class BannerController {
      */
     public final static int maxPageSize = 100;
 
+    /**
+     * Maximum number of name suggestions
+     */
+    public final static int maxSuggestions = 20;
+
     /**
      * Validates and creates a new banner given in json object.
      *
@@ -77,29 +87,104 @@ public class BannerController {
     /**
      * Returns paged list of banners containing search string in a name.
      * If search string is empty then returns paged list of all banners.
+     * Banners are listed without content, it is returned by the specific banner endpoint.
+     * If the page is full, the response has a cursor header to fetch the next page with
+     * regardless of banners added or removed meanwhile.
      *
      * @param searchName String to search in banner name.
-     * @param page Number of a page to return.
+     * @param page Number of a page to return, ignored if cursor is given.
      * @param pageSize Size of a page to return.
-     * @return HTTP 400 if page size is too much.
+     * @param sortBy Field to sort banners by.
+     * @param sortDirection Sort direction, banners are ordered by id if none.
+     * @param cursor Cursor returned with the previous page.
+     * @return HTTP 400 if page size is too much or cursor is invalid.
      * HTTP 200 with a paged list of banners found if ok.
      */
 
     @GetMapping("/list")
-    public ResponseEntity<List<Banner>> getBannersList(
+    public ResponseEntity<List<BannerSummary>> getBannersList(
             @RequestParam(name = "searchName", defaultValue = "") String searchName,
             @RequestParam(name = "page", defaultValue = "0") Integer page,
-            @RequestParam(name = "pageSize", defaultValue = "20") Integer pageSize
+            @RequestParam(name = "pageSize", defaultValue = "20") Integer pageSize,
+            @RequestParam(name = "sortBy", defaultValue = "NAME") BannerSortBy sortBy,
+            @RequestParam(name = "sortDirection", defaultValue = "NONE") SortDirection sortDirection,
+            @RequestParam(name = "cursor", defaultValue = "") String cursor
     ) {
-        if (pageSize > maxPageSize) {
+        Optional<BannerFetchParameters> parameters =
+                getListParameters(searchName, page, pageSize, sortBy, sortDirection, cursor);
+        if (parameters.isEmpty()) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
-        BannerFetchParameters parameters = BannerFetchParameters.builder()
+        List<BannerSummary> result = service.getBannerList(parameters.get());
+        return withNextCursor(result, parameters.get()).body(result);
+    }
+
+    /**
+     * Returns paged list of banners (as the list endpoint does) together with the number of banners
+     * and pages found, so that a client does not need to request the page count separately.
+     *
+     * @param searchName String to search in banner name.
+     * @param page Number of a page to return, ignored if cursor is given.
+     * @param pageSize Size of a page to return.
+     * @param sortBy Field to sort banners by.
+     * @param sortDirection Sort direction, banners are ordered by id if none.
+     * @param cursor Cursor returned with the previous page.
+     * @return HTTP 400 if page size is too much or cursor is invalid.
+     * HTTP 200 with a page of banners and the numbers of banners and pages found if ok.
+     */
+
+    @GetMapping("/page")
+    public ResponseEntity<ListPage<BannerSummary>> getBannersPage(
+            @RequestParam(name = "searchName", defaultValue = "") String searchName,
+            @RequestParam(name = "page", defaultValue = "0") Integer page,
+            @RequestParam(name = "pageSize", defaultValue = "20") Integer pageSize,
+            @RequestParam(name = "sortBy", defaultValue = "NAME") BannerSortBy sortBy,
+            @RequestParam(name = "sortDirection", defaultValue = "NONE") SortDirection sortDirection,
+            @RequestParam(name = "cursor", defaultValue = "") String cursor
+    ) {
+        Optional<BannerFetchParameters> parameters =
+                getListParameters(searchName, page, pageSize, sortBy, sortDirection, cursor);
+        if (parameters.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        ListPage<BannerSummary> result = service.getBannerPage(parameters.get());
+        return withNextCursor(result.getItems(), parameters.get()).body(result);
+    }
+
+    private Optional<BannerFetchParameters> getListParameters(String searchName,
+                                                              Integer page,
+                                                              Integer pageSize,
+                                                              BannerSortBy sortBy,
+                                                              SortDirection sortDirection,
+                                                              String cursor) {
+        if (pageSize > maxPageSize) {
+            return Optional.empty();
+        }
+        PageCursor after = null;
+        if (!cursor.isEmpty()) {
+            Optional<PageCursor> decoded = service.decodeCursor(cursor, sortBy, sortDirection);
+            if (decoded.isEmpty()) {
+                return Optional.empty();
+            }
+            after = decoded.get();
+        }
+        return Optional.of(BannerFetchParameters.builder()
                 .searchName(searchName)
                 .page(page)
                 .pageSize(pageSize)
-                .build();
-        return ResponseEntity.ok(service.getBannerList(parameters));
+                .sortBy(sortBy)
+                .sortDirection(sortDirection)
+                .after(after)
+                .build());
+    }
+
+    private ResponseEntity.BodyBuilder withNextCursor(List<BannerSummary> banners, BannerFetchParameters parameters) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!banners.isEmpty() && banners.size() == parameters.getPageSize()) {
+            PageCursor next = service.getCursorAfter(banners.get(banners.size() - 1), parameters);
+            response.header(PageCursor.nextPageHeader, next.encode());
+        }
+        return response;
     }
 
     /**
@@ -144,4 +229,24 @@ public class BannerController {
         Optional<Banner> result = service.getSpecificBanner(id);
         return result.map(ResponseEntity::ok).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
+
+    /**
+     * Returns names of banners starting with a prefix (ignoring case) for autocompletion.
+     *
+     * @param prefix Name prefix.
+     * @param limit Maximum number of names to return.
+     * @return HTTP 400 if limit is too much.
+     * HTTP 200 with a list of names ordered alphabetically if ok.
+     */
+
+    @GetMapping("/names")
+    public ResponseEntity<List<String>> getBannerNames(
+            @RequestParam(name = "prefix", defaultValue = "") String prefix,
+            @RequestParam(name = "limit", defaultValue = "10") Integer limit
+    ) {
+        if (limit > maxSuggestions) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return ResponseEntity.ok(service.completeName(prefix, limit));
+    }
 }
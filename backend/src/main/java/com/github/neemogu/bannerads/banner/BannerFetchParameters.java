@@ -1,5 +1,6 @@
 package com.github.neemogu.bannerads.banner;
 
+import com.github.neemogu.bannerads.util.PageCursor;
 import com.github.neemogu.bannerads.util.SortDirection;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
@@ -23,4 +24,9 @@ public final class BannerFetchParameters {
     private String searchName = "";
     @Builder.Default
     private Integer categoryId = null;
+    /**
+     * Position to continue the listing after, when set the page number is ignored.
+     */
+    @Builder.Default
+    private PageCursor after = null;
 }
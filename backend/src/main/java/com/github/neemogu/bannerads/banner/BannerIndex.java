@@ -0,0 +1,295 @@
+package com.github.neemogu.bannerads.banner;
+
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.util.TrigramIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * In-memory index of not deleted banners grouped by category and ordered by price (highest first).
+ * Banner contents are kept pre-encoded for serving, see {@link EncodedContent}.
+ * Readers always see an immutable snapshot, writers replace it copy-on-write.
+ * <p>
+ * Targeting rules of banners are compiled per category whenever a category list is replaced,
+ * see {@link TargetingIndex}.
+ * <p>
+ * Banners are also indexed by name for substring and prefix search, see {@link TrigramIndex}.
+ */
+@Component
+public class BannerIndex {
+    private static final Comparator<Banner> priceDescending = Comparator
+            .comparing(Banner::getPrice, Comparator.reverseOrder())
+            .thenComparing(Banner::getId);
+    private static final TargetingIndex noBanners = new TargetingIndex(Collections.emptyList());
+
+    private final BannerRepository bannerRepository;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), Collections.emptyMap(),
+            Collections.emptyMap(), Collections.emptyMap());
+    private final TrigramIndex<Banner> byName = new TrigramIndex<>(Banner::getId, Banner::getName);
+    @Value("${bannerads.bid.precompress:true}")
+    private boolean precompress = true;
+
+    @Autowired
+    public BannerIndex(BannerRepository bannerRepository) {
+        this.bannerRepository = bannerRepository;
+    }
+
+    /**
+     * Returns not deleted banners of a category ordered by price from highest to lowest.
+     *
+     * @param categoryId Category id.
+     * @return Immutable list of banners, empty if a category has no banners.
+     */
+    public List<Banner> getCategoryBanners(Integer categoryId) {
+        return snapshot.byCategory.getOrDefault(categoryId, Collections.emptyList());
+    }
+
+    /**
+     * Returns not deleted banners of a category ordered by price from highest to lowest
+     * together with their compiled targeting rules, both from the same version of the index.
+     *
+     * @param categoryId Category id.
+     * @return Targeting index of the category, with no banners if a category has no banners.
+     */
+    public TargetingIndex getCategoryTargeting(Integer categoryId) {
+        return snapshot.targetingOfCategory.getOrDefault(categoryId, noBanners);
+    }
+
+    /**
+     * Returns a not deleted banner with its content. Banners which are not in the index
+     * (e.g. saved bypassing the services) are loaded from a database.
+     *
+     * @param bannerId Banner id.
+     * @return Optional - banner if it exists and is not deleted else empty.
+     */
+    public Optional<Banner> findBanner(Integer bannerId) {
+        Snapshot current = snapshot;
+        Integer categoryId = current.categoryOfBanner.get(bannerId);
+        if (categoryId != null) {
+            for (Banner banner : current.byCategory.get(categoryId)) {
+                if (banner.getId().equals(bannerId)) {
+                    return Optional.of(banner);
+                }
+            }
+        }
+        return bannerRepository.findByIdAndDeletedFalse(bannerId);
+    }
+
+    /**
+     * Returns not deleted banners whose names contain a string ignoring case.
+     *
+     * @param substring String to search in banner names, all banners are returned if it is empty.
+     * @return Banners found in no particular order. Not to be modified.
+     */
+    public List<Banner> searchByName(String substring) {
+        return byName.search(substring);
+    }
+
+    /**
+     * Returns not deleted banners whose names start with a prefix ignoring case.
+     *
+     * @param prefix Banner name prefix.
+     * @param limit Maximum number of banners to return.
+     * @return Banners found ordered by name. Not to be modified.
+     */
+    public List<Banner> completeName(String prefix, int limit) {
+        return byName.complete(prefix, limit);
+    }
+
+    /**
+     * Returns pre-encoded content of a banner. Content of a banner which is not in the index
+     * is encoded on the fly.
+     *
+     * @param banner Banner object.
+     * @return Encoded banner content.
+     */
+    public EncodedContent getEncodedContent(Banner banner) {
+        EncodedContent content = snapshot.contentOfBanner.get(banner.getId());
+        if (content == null || !content.getText().equals(banner.getContent())) {
+            return EncodedContent.of(banner.getContent(), false);
+        }
+        return content;
+    }
+
+    /**
+     * Reloads the whole index from a database.
+     */
+    @PostConstruct
+    public synchronized void rebuild() {
+        Map<Integer, List<Banner>> byCategory = new HashMap<>();
+        Map<Integer, Integer> categoryOfBanner = new HashMap<>();
+        Map<Integer, EncodedContent> contentOfBanner = new HashMap<>();
+        for (Banner banner : bannerRepository.findAllByDeletedFalse()) {
+            Banner copy = copyOf(banner);
+            byCategory.computeIfAbsent(copy.getCategory().getId(), id -> new ArrayList<>()).add(copy);
+            categoryOfBanner.put(copy.getId(), copy.getCategory().getId());
+            contentOfBanner.put(copy.getId(), EncodedContent.of(copy.getContent(), precompress));
+        }
+        byCategory.replaceAll((id, banners) -> sortedImmutable(banners));
+        Map<Integer, TargetingIndex> targetingOfCategory = new HashMap<>();
+        byCategory.forEach((id, banners) -> targetingOfCategory.put(id, new TargetingIndex(banners)));
+        snapshot = new Snapshot(byCategory, categoryOfBanner, contentOfBanner, targetingOfCategory);
+        List<Banner> all = new ArrayList<>();
+        byCategory.values().forEach(all::addAll);
+        byName.replaceAll(all);
+    }
+
+    /**
+     * Adds a saved banner to the index or replaces its previous version
+     * (possibly in another category). Deleted banners are removed.
+     *
+     * @param banner Saved banner object with not null id.
+     */
+    public synchronized void put(Banner banner) {
+        if (banner.getDeleted() != null && banner.getDeleted()) {
+            remove(banner.getId());
+            return;
+        }
+        Banner copy = copyOf(banner);
+        Integer categoryId = copy.getCategory().getId();
+        Map<Integer, List<Banner>> byCategory = new HashMap<>(snapshot.byCategory);
+        Map<Integer, Integer> categoryOfBanner = new HashMap<>(snapshot.categoryOfBanner);
+        Map<Integer, EncodedContent> contentOfBanner = new HashMap<>(snapshot.contentOfBanner);
+        Map<Integer, TargetingIndex> targetingOfCategory = new HashMap<>(snapshot.targetingOfCategory);
+        contentOfBanner.put(copy.getId(), EncodedContent.of(copy.getContent(), precompress));
+
+        Integer previousCategoryId = categoryOfBanner.put(copy.getId(), categoryId);
+        if (previousCategoryId != null && !previousCategoryId.equals(categoryId)) {
+            List<Banner> previousBanners = without(byCategory.get(previousCategoryId), copy.getId());
+            byCategory.put(previousCategoryId, previousBanners);
+            targetingOfCategory.put(previousCategoryId, new TargetingIndex(previousBanners));
+        }
+        List<Banner> banners = new ArrayList<>(without(byCategory.get(categoryId), copy.getId()));
+        banners.add(copy);
+        List<Banner> sorted = sortedImmutable(banners);
+        byCategory.put(categoryId, sorted);
+        targetingOfCategory.put(categoryId, new TargetingIndex(sorted));
+        snapshot = new Snapshot(byCategory, categoryOfBanner, contentOfBanner, targetingOfCategory);
+        byName.put(copy);
+    }
+
+    /**
+     * Removes a banner from the index. Does nothing if there is no such banner.
+     *
+     * @param bannerId Banner id.
+     */
+    public synchronized void remove(Integer bannerId) {
+        Integer categoryId = snapshot.categoryOfBanner.get(bannerId);
+        if (categoryId == null) {
+            return;
+        }
+        Map<Integer, List<Banner>> byCategory = new HashMap<>(snapshot.byCategory);
+        Map<Integer, Integer> categoryOfBanner = new HashMap<>(snapshot.categoryOfBanner);
+        Map<Integer, EncodedContent> contentOfBanner = new HashMap<>(snapshot.contentOfBanner);
+        Map<Integer, TargetingIndex> targetingOfCategory = new HashMap<>(snapshot.targetingOfCategory);
+        categoryOfBanner.remove(bannerId);
+        contentOfBanner.remove(bannerId);
+        List<Banner> banners = without(byCategory.get(categoryId), bannerId);
+        byCategory.put(categoryId, banners);
+        targetingOfCategory.put(categoryId, new TargetingIndex(banners));
+        snapshot = new Snapshot(byCategory, categoryOfBanner, contentOfBanner, targetingOfCategory);
+        byName.remove(bannerId);
+    }
+
+    /**
+     * Replaces a category object referenced by indexed banners of this category,
+     * drops all banners of a category if it is deleted.
+     *
+     * @param category Saved category object with not null id.
+     */
+    public synchronized void updateCategory(Category category) {
+        List<Banner> banners = snapshot.byCategory.get(category.getId());
+        if (banners == null) {
+            return;
+        }
+        if (category.getDeleted() != null && category.getDeleted()) {
+            removeCategory(category.getId());
+            return;
+        }
+        Category categoryCopy = new Category(category.getId(), category.getName(),
+                category.getReqName(), category.getDeleted(), category.getSelectionStrategy());
+        List<Banner> updated = new ArrayList<>(banners.size());
+        for (Banner banner : banners) {
+            Banner copy = copyOf(banner);
+            copy.setCategory(categoryCopy);
+            updated.add(copy);
+        }
+        List<Banner> immutable = Collections.unmodifiableList(updated);
+        Map<Integer, List<Banner>> byCategory = new HashMap<>(snapshot.byCategory);
+        Map<Integer, TargetingIndex> targetingOfCategory = new HashMap<>(snapshot.targetingOfCategory);
+        byCategory.put(category.getId(), immutable);
+        targetingOfCategory.put(category.getId(), new TargetingIndex(immutable));
+        snapshot = new Snapshot(byCategory, snapshot.categoryOfBanner, snapshot.contentOfBanner, targetingOfCategory);
+        updated.forEach(byName::put);
+    }
+
+    /**
+     * Removes all banners of a category from the index.
+     *
+     * @param categoryId Category id.
+     */
+    public synchronized void removeCategory(Integer categoryId) {
+        List<Banner> banners = snapshot.byCategory.get(categoryId);
+        if (banners == null) {
+            return;
+        }
+        Map<Integer, List<Banner>> byCategory = new HashMap<>(snapshot.byCategory);
+        Map<Integer, Integer> categoryOfBanner = new HashMap<>(snapshot.categoryOfBanner);
+        Map<Integer, EncodedContent> contentOfBanner = new HashMap<>(snapshot.contentOfBanner);
+        Map<Integer, TargetingIndex> targetingOfCategory = new HashMap<>(snapshot.targetingOfCategory);
+        byCategory.remove(categoryId);
+        targetingOfCategory.remove(categoryId);
+        banners.forEach(b -> {
+            categoryOfBanner.remove(b.getId());
+            contentOfBanner.remove(b.getId());
+        });
+        snapshot = new Snapshot(byCategory, categoryOfBanner, contentOfBanner, targetingOfCategory);
+        banners.forEach(b -> byName.remove(b.getId()));
+    }
+
+    private static List<Banner> without(List<Banner> banners, Integer bannerId) {
+        if (banners == null) {
+            return Collections.emptyList();
+        }
+        List<Banner> result = new ArrayList<>(banners.size());
+        for (Banner banner : banners) {
+            if (!banner.getId().equals(bannerId)) {
+                result.add(banner);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static List<Banner> sortedImmutable(List<Banner> banners) {
+        banners.sort(priceDescending);
+        return Collections.unmodifiableList(banners);
+    }
+
+    private static Banner copyOf(Banner banner) {
+        return new Banner(banner.getId(), banner.getName(), banner.getPrice(),
+                banner.getCategory(), banner.getContent(), banner.getDeleted(),
+                banner.getDailyImpressionCap(), banner.getDailyBudget(),
+                banner.getTargetUserAgents(), banner.getTargetIpRanges());
+    }
+
+    private static final class Snapshot {
+        private final Map<Integer, List<Banner>> byCategory;
+        private final Map<Integer, Integer> categoryOfBanner;
+        private final Map<Integer, EncodedContent> contentOfBanner;
+        private final Map<Integer, TargetingIndex> targetingOfCategory;
+
+        private Snapshot(Map<Integer, List<Banner>> byCategory,
+                         Map<Integer, Integer> categoryOfBanner,
+                         Map<Integer, EncodedContent> contentOfBanner,
+                         Map<Integer, TargetingIndex> targetingOfCategory) {
+            this.byCategory = byCategory;
+            this.categoryOfBanner = categoryOfBanner;
+            this.contentOfBanner = contentOfBanner;
+            this.targetingOfCategory = targetingOfCategory;
+        }
+    }
+}
@@ -10,6 +10,7 @@ public interface BannerRepository extends JpaRepository<Banner, Integer> {
     Optional<Banner> findByNameAndIdIsNot(String name, Integer id);
     Optional<Banner> findByName(String name);
     List<Banner> findAllByDeletedFalseAndCategoryIs(Category category);
+    List<Banner> findAllByDeletedFalse();
     Optional<Banner> findByIdAndDeletedFalse(Integer id);
     boolean existsByIdAndDeletedFalse(Integer id);
 }
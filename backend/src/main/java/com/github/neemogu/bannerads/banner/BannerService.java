@@ -1,33 +1,56 @@
 package com.github.neemogu.bannerads.banner;
 
+import com.github.neemogu.bannerads.category.Category;
 import com.github.neemogu.bannerads.category.CategoryRepository;
 import com.github.neemogu.bannerads.category.CategoryService;
+import com.github.neemogu.bannerads.util.CountCache;
+import com.github.neemogu.bannerads.util.IpRange;
+import com.github.neemogu.bannerads.util.ListPage;
+import com.github.neemogu.bannerads.util.PageCursor;
 import com.github.neemogu.bannerads.util.SortDirection;
+import com.github.neemogu.bannerads.util.SqlFunctions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.PersistenceUnit;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
-import java.util.LinkedList;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Service
 public class BannerService {
+    private static final int countCacheSize = 1000;
+    private static final String summaryColumns = "b.id, b.name, b.price, c.id, c.name, c.reqName";
+    private static final String countQuery = "select count(b) from Banner b where b.deleted = false";
+    private static final String categoryCountQuery = countQuery + " and b.category.id = :categoryId";
+
     private final BannerRepository bannerRepository;
     private final CategoryRepository categoryRepository;
-    @PersistenceUnit
-    private EntityManagerFactory entityManagerFactory;
+    private final BannerIndex bannerIndex;
+    // banner counts by lower case search string and category id
+    private final CountCache<List<Object>> countCache = new CountCache<>(countCacheSize);
+    // JPQL of listing queries by shape: sort, direction, category filter, cursor and window count
+    private final Map<List<Object>, String> listQueries = new ConcurrentHashMap<>();
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Value("${bannerads.listing.window-count:true}")
+    private boolean windowCount;
 
     @Autowired
-    public BannerService(BannerRepository bannerRepository, CategoryRepository categoryRepository) {
+    public BannerService(BannerRepository bannerRepository,
+                         CategoryRepository categoryRepository,
+                         BannerIndex bannerIndex) {
         this.bannerRepository = bannerRepository;
         this.categoryRepository = categoryRepository;
+        this.bannerIndex = bannerIndex;
     }
 
     /**
@@ -43,6 +66,10 @@ public class BannerService {
         if (checked.isPresent()) {
             return checked;
         }
+        checked = checkTargeting(banner);
+        if (checked.isPresent()) {
+            return checked;
+        }
         if (banner.getId() != null) {
             checked = checkExistingBanner(banner);
         } else {
@@ -52,13 +79,36 @@ public class BannerService {
             return checked;
         }
         bannerRepository.save(banner);
+        countCache.invalidate();
+        bannerIndex.put(banner);
         return Optional.empty();
     }
 
+    /**
+     * Checks that the category of a banner exists and replaces the category given in the request
+     * (which may only have an id) with the stored one, so that the banner index gets its name.
+     */
     private Optional<String> checkCategory(Banner banner) {
-        if (!categoryRepository.existsByIdAndDeletedFalse(banner.getCategory().getId())) {
+        Optional<Category> category = categoryRepository.findByIdAndDeletedFalse(banner.getCategory().getId());
+        if (category.isEmpty()) {
             return Optional.of("Category with such ID does not exist");
         }
+        banner.setCategory(category.get());
+        return Optional.empty();
+    }
+
+    private static Optional<String> checkTargeting(Banner banner) {
+        try {
+            UserAgentFamily.parseSet(banner.getTargetUserAgents());
+        } catch (IllegalArgumentException e) {
+            return Optional.of("Banner user agent targeting must list families of "
+                    + Arrays.toString(UserAgentFamily.values()));
+        }
+        try {
+            IpRange.parseList(banner.getTargetIpRanges());
+        } catch (IllegalArgumentException e) {
+            return Optional.of(e.getMessage());
+        }
         return Optional.empty();
     }
 
@@ -100,90 +150,280 @@ public class BannerService {
         if (banner != null) {
             banner.setDeleted(true);
             bannerRepository.save(banner);
+            countCache.invalidate();
+            bannerIndex.remove(id);
         }
     }
 
-    private List<Predicate> getWherePredicates(CriteriaBuilder builder,
-                                               Root<Banner> root,
-                                               String searchName,
-                                               Integer categoryId) {
-        List<Predicate> predicates = new LinkedList<>();
-        if (!searchName.equals("")) {
-            predicates.add(builder.like(builder.lower(root.get("name")), "%" + searchName.toLowerCase() + "%"));
-        }
-        if (categoryId != null) {
-            predicates.add(builder.equal(root.get("category").get("id"), categoryId));
+    /**
+     * Returns paged list of banners satisfying the parameters. All banners in list is not deleted.
+     * Banners are listed without their content, see {@link #getSpecificBanner(Integer)}.
+     * If search string is empty there won't be any filtering by name, otherwise banners are searched
+     * (case-insensitively) and sorted in the in-memory {@link BannerIndex} without querying the database.
+     * Banners with equal sort keys are ordered by id.
+     * If the parameters contain a cursor, the page starts right after it instead of the page number offset.
+     * Database queries are parameterized JPQL built once per query shape, so Hibernate reuses their translation.
+     *
+     * @param parameters Parameters object that contain page number or cursor, page size,
+     *                  sort direction, sort by field name, a search string and may contain a category id.
+     * @return Paged list of banners satisfying the parameters.
+     */
+
+    public List<BannerSummary> getBannerList(BannerFetchParameters parameters) {
+        if (!parameters.getSearchName().isEmpty()) {
+            return summariesOf(getResultPage(searchBanners(parameters), parameters));
         }
-        predicates.add(builder.isFalse(root.get("deleted")));
-        return predicates;
+        return getResultPage(createListQuery(parameters, false, BannerSummary.class), parameters);
     }
 
     /**
-     * Returns paged list of banners satisfying the parameters. All banners in list is not deleted.
-     * If search string is empty there won't be any filtering by name.
+     * Returns paged list of banners satisfying the parameters (as {@link #getBannerList(BannerFetchParameters)})
+     * together with the number of all banners satisfying them.
+     * The number is selected by the same statement with a window function if it is enabled,
+     * otherwise (or if the page is empty or continues a cursor) it is taken from a count cached
+     * until the next banner change.
      *
-     * @param parameters Parameters object that contain page number, page size,
+     * @param parameters Parameters object that contain page number or cursor, page size,
      *                  sort direction, sort by field name, a search string and may contain a category id.
-     * @return Paged list of banners satisfying the parameters.
+     * @return Page of banners with the total number of banners and pages.
      */
+    public ListPage<BannerSummary> getBannerPage(BannerFetchParameters parameters) {
+        if (!parameters.getSearchName().isEmpty()) {
+            List<Banner> found = searchBanners(parameters);
+            return ListPage.of(summariesOf(getResultPage(found, parameters)), found.size(), parameters.getPageSize());
+        }
+        if (!windowCount || parameters.getAfter() != null) {
+            return ListPage.of(getBannerList(parameters), getBannerCount(parameters), parameters.getPageSize());
+        }
+        long loadGeneration = countCache.getGeneration();
+        List<Object[]> rows = getResultPage(createListQuery(parameters, true, Object[].class), parameters);
+        if (rows.isEmpty()) {
+            return ListPage.of(List.of(), getBannerCount(parameters), parameters.getPageSize());
+        }
+        long total = (Long) rows.get(0)[6];
+        countCache.put(getCountKey(parameters), total, loadGeneration);
+        List<BannerSummary> banners = rows.stream()
+                .map(row -> new BannerSummary((Integer) row[0], (String) row[1], (Double) row[2],
+                        (Integer) row[3], (String) row[4], (String) row[5]))
+                .collect(Collectors.toList());
+        return ListPage.of(banners, total, parameters.getPageSize());
+    }
 
-    public List<Banner> getBannerList(BannerFetchParameters parameters) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        CriteriaBuilder builder = em.getCriteriaBuilder();
-        CriteriaQuery<Banner> query = builder.createQuery(Banner.class);
-        Root<Banner> root = query.from(Banner.class);
+    private <T> TypedQuery<T> createListQuery(BannerFetchParameters parameters, boolean withCount, Class<T> type) {
+        List<Object> shape = Arrays.asList(parameters.getSortBy(), parameters.getSortDirection(),
+                parameters.getCategoryId() != null, parameters.getAfter() != null, withCount);
+        TypedQuery<T> query = entityManager.createQuery(
+                listQueries.computeIfAbsent(shape, key -> buildListQuery(parameters, withCount)), type);
+        if (parameters.getCategoryId() != null) {
+            query.setParameter("categoryId", parameters.getCategoryId());
+        }
+        PageCursor after = parameters.getAfter();
+        if (after != null) {
+            query.setParameter("afterId", after.getId());
+            if (parameters.getSortDirection() != SortDirection.NONE) {
+                query.setParameter("afterKey", parseSortKey(parameters.getSortBy(), after.getSortKey()));
+            }
+        }
+        return query;
+    }
+
+    private static String buildListQuery(BannerFetchParameters parameters, boolean withCount) {
+        StringBuilder jpql = new StringBuilder("select ");
+        if (withCount) {
+            jpql.append(summaryColumns).append(", ").append(SqlFunctions.countOver).append("()");
+        } else {
+            jpql.append("new ").append(BannerSummary.class.getName()).append('(').append(summaryColumns).append(')');
+        }
+        // content is not selected, categories are selected by the same statement
+        jpql.append(" from Banner b join b.category c where b.deleted = false");
+        if (parameters.getCategoryId() != null) {
+            jpql.append(" and b.category.id = :categoryId");
+        }
 
-        if (parameters.getSortDirection() == SortDirection.ASC) {
-            query.orderBy(builder.asc(root.get(parameters.getSortBy().name().toLowerCase())));
-        } else if (parameters.getSortDirection() == SortDirection.DESC) {
-            query.orderBy(builder.desc(root.get(parameters.getSortBy().name().toLowerCase())));
+        String sortKey = "b." + parameters.getSortBy().name().toLowerCase();
+        SortDirection sortDirection = parameters.getSortDirection();
+        if (parameters.getAfter() != null) {
+            if (sortDirection == SortDirection.NONE) {
+                jpql.append(" and b.id > :afterId");
+            } else {
+                jpql.append(" and (").append(sortKey).append(sortDirection == SortDirection.ASC ? " > " : " < ")
+                        .append(":afterKey or (").append(sortKey).append(" = :afterKey and b.id > :afterId))");
+            }
         }
 
-        List<Predicate> wherePredicates = getWherePredicates(
-                builder,
-                root,
-                parameters.getSearchName(),
-                parameters.getCategoryId()
-        );
-        query.where(builder.and(wherePredicates.toArray(new Predicate[0])));
+        if (sortDirection == SortDirection.NONE) {
+            jpql.append(" order by b.id asc");
+        } else {
+            jpql.append(" order by ").append(sortKey).append(' ').append(sortDirection.name().toLowerCase())
+                    .append(", b.id asc");
+        }
+        return jpql.toString();
+    }
 
-        List<Banner> result = em.createQuery(query.select(root))
-                .setFirstResult(parameters.getPage() * parameters.getPageSize())
-                .setMaxResults(parameters.getPageSize()).getResultList();
-        em.close();
-        return result;
+    private static <T> List<T> getResultPage(TypedQuery<T> query, BannerFetchParameters parameters) {
+        if (parameters.getAfter() == null) {
+            query.setFirstResult(parameters.getPage() * parameters.getPageSize());
+        }
+        return query.setMaxResults(parameters.getPageSize()).getResultList();
+    }
+
+    /**
+     * Returns all not deleted banners satisfying the parameters from the in-memory index in the listing order.
+     */
+    private List<Banner> searchBanners(BannerFetchParameters parameters) {
+        Integer categoryId = parameters.getCategoryId();
+        return bannerIndex.searchByName(parameters.getSearchName()).stream()
+                .filter(banner -> categoryId == null || categoryId.equals(banner.getCategory().getId()))
+                .sorted(getListComparator(parameters.getSortBy(), parameters.getSortDirection()))
+                .collect(Collectors.toList());
+    }
+
+    private static List<BannerSummary> summariesOf(List<Banner> banners) {
+        return banners.stream().map(BannerSummary::of).collect(Collectors.toList());
+    }
+
+    private static List<Banner> getResultPage(List<Banner> sorted, BannerFetchParameters parameters) {
+        int from;
+        PageCursor after = parameters.getAfter();
+        if (after == null) {
+            from = (int) Math.min((long) parameters.getPage() * parameters.getPageSize(), sorted.size());
+        } else {
+            Banner position = new Banner();
+            position.setId(after.getId());
+            if (parameters.getSortDirection() != SortDirection.NONE) {
+                if (parameters.getSortBy() == BannerSortBy.PRICE) {
+                    position.setPrice(Double.valueOf(after.getSortKey()));
+                } else {
+                    position.setName(after.getSortKey());
+                }
+            }
+            int found = Collections.binarySearch(sorted, position,
+                    getListComparator(parameters.getSortBy(), parameters.getSortDirection()));
+            from = found >= 0 ? found + 1 : -found - 1;
+        }
+        return sorted.subList(from, Math.min(from + parameters.getPageSize(), sorted.size()));
+    }
+
+    private static Comparator<Banner> getListComparator(BannerSortBy sortBy, SortDirection sortDirection) {
+        Comparator<Banner> byId = Comparator.comparing(Banner::getId);
+        if (sortDirection == SortDirection.NONE) {
+            return byId;
+        }
+        Comparator<Banner> byKey = sortBy == BannerSortBy.PRICE
+                ? Comparator.comparing(Banner::getPrice)
+                : Comparator.comparing(Banner::getName, String.CASE_INSENSITIVE_ORDER);
+        if (sortDirection == SortDirection.DESC) {
+            byKey = byKey.reversed();
+        }
+        return byKey.thenComparing(byId);
+    }
+
+    /**
+     * Returns names of not deleted banners starting with a prefix ignoring case, from the in-memory index.
+     *
+     * @param prefix Banner name prefix.
+     * @param limit Maximum number of names to return.
+     * @return Banner names ordered alphabetically.
+     */
+    public List<String> completeName(String prefix, int limit) {
+        return bannerIndex.completeName(prefix, limit).stream().map(Banner::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a cursor pointing after the given banner of a listing with the parameters,
+     * to fetch the next page with {@link BannerFetchParameters#getAfter()}.
+     *
+     * @param banner Last banner of a page.
+     * @param parameters Parameters the page was fetched with.
+     * @return Cursor after the banner.
+     */
+    public PageCursor getCursorAfter(BannerSummary banner, BannerFetchParameters parameters) {
+        String sortKey = null;
+        if (parameters.getSortDirection() != SortDirection.NONE) {
+            sortKey = parameters.getSortBy() == BannerSortBy.PRICE
+                    ? banner.getPrice().toString()
+                    : banner.getName();
+        }
+        return new PageCursor(getOrder(parameters.getSortBy(), parameters.getSortDirection()), sortKey, banner.getId());
+    }
+
+    /**
+     * Decodes a cursor token of a banner listing.
+     *
+     * @param token Token returned with a previous page.
+     * @param sortBy Sort by field name of the listing.
+     * @param sortDirection Sort direction of the listing.
+     * @return Optional - cursor if the token is valid and was taken in the same order else empty.
+     */
+    public Optional<PageCursor> decodeCursor(String token, BannerSortBy sortBy, SortDirection sortDirection) {
+        return PageCursor.decode(token)
+                .filter(cursor -> cursor.getOrder().equals(getOrder(sortBy, sortDirection)))
+                .filter(cursor -> sortDirection == SortDirection.NONE || isValidSortKey(sortBy, cursor.getSortKey()));
+    }
+
+    private static String getOrder(BannerSortBy sortBy, SortDirection sortDirection) {
+        return sortDirection == SortDirection.NONE ? "id" : sortBy.name() + "," + sortDirection.name();
+    }
+
+    private static boolean isValidSortKey(BannerSortBy sortBy, String sortKey) {
+        if (sortKey == null) {
+            return false;
+        }
+        try {
+            parseSortKey(sortBy, sortKey);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> parseSortKey(BannerSortBy sortBy, String sortKey) {
+        Comparable<?> key = sortBy == BannerSortBy.PRICE ? Double.valueOf(sortKey) : sortKey;
+        return (Comparable<Object>) key;
     }
 
     /**
      * Returns number of pages of banners satisfying the parameters.
      * If search string is empty there won't be any filtering by name.
+     * The number of banners is cached until the next banner change.
      *
      * @param parameters Parameters object that contain page size, a search string and may contain a category id.
      * @return Number of pages of banners satisfying the parameters.
      */
 
     public long getBannerListPageCount(BannerFetchParameters parameters) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        CriteriaBuilder builder = em.getCriteriaBuilder();
-        CriteriaQuery<Long> query = builder.createQuery(Long.class);
-        Root<Banner> root = query.from(Banner.class);
-
-        List<Predicate> wherePredicates = getWherePredicates(
-                builder,
-                root,
-                parameters.getSearchName(),
-                parameters.getCategoryId()
-        );
-        query.where(builder.and(wherePredicates.toArray(new Predicate[0])));
-        query.select(builder.count(root));
-
-        Long result = em.createQuery(query).getSingleResult();
-        em.close();
+        long result = getBannerCount(parameters);
         return result / parameters.getPageSize() +(result % parameters.getPageSize() == 0 ? 0 : 1);
     }
 
+    private long getBannerCount(BannerFetchParameters parameters) {
+        if (!parameters.getSearchName().isEmpty()) {
+            return searchBanners(parameters).size();
+        }
+        return countCache.get(getCountKey(parameters), () -> {
+            if (parameters.getCategoryId() == null) {
+                return entityManager.createQuery(countQuery, Long.class).getSingleResult();
+            }
+            return entityManager.createQuery(categoryCountQuery, Long.class)
+                    .setParameter("categoryId", parameters.getCategoryId())
+                    .getSingleResult();
+        });
+    }
+
+    /**
+     * Removes cached banner counts, to be called after banners are changed bypassing the service.
+     */
+    public void invalidateCounts() {
+        countCache.invalidate();
+    }
+
+    private static List<Object> getCountKey(BannerFetchParameters parameters) {
+        return Arrays.asList(parameters.getSearchName().toLowerCase(), parameters.getCategoryId());
+    }
+
     /**
-     * Returns a banner by it's id.
+     * Returns a banner with its content by it's id.
      *
      * @param id Banner id.
      * @return Optional - banner object if banner with such id exists and not deleted else empty.
@@ -0,0 +1,40 @@
+package com.github.neemogu.bannerads.banner;
+
+import com.github.neemogu.bannerads.category.Category;
+import lombok.Value;
+
+/**
+ * Banner without its content, for listings. Content of a banner may be up to 10000 symbols,
+ * so it is loaded only for a banner being served or opened for editing.
+ */
+@Value
+public class BannerSummary {
+    Integer id;
+    String name;
+    Double price;
+    Category category;
+
+    /**
+     * Constructor for JPQL constructor expressions, the category is created from its selected columns
+     * instead of being loaded as an entity.
+     */
+    public BannerSummary(Integer id, String name, Double price,
+                         Integer categoryId, String categoryName, String categoryReqName) {
+        this(id, name, price, new Category(categoryId, categoryName, categoryReqName, false));
+    }
+
+    public BannerSummary(Integer id, String name, Double price, Category category) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.category = category;
+    }
+
+    /**
+     * @param banner Banner object.
+     * @return Summary of the banner.
+     */
+    public static BannerSummary of(Banner banner) {
+        return new BannerSummary(banner.getId(), banner.getName(), banner.getPrice(), banner.getCategory());
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.neemogu.bannerads.banner;
+
+/**
+ * HTTP content codings banner content is prepared in.
+ */
+public enum ContentEncoding {
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private final String headerValue;
+
+    ContentEncoding(String headerValue) {
+        this.headerValue = headerValue;
+    }
+
+    /**
+     * @return Coding name as used in Accept-Encoding and Content-Encoding headers.
+     */
+    public String getHeaderValue() {
+        return headerValue;
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.neemogu.bannerads.banner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Banner content encoded to UTF-8 once, optionally with gzip and deflate compressed variants,
+ * so that serving it needs neither encoding nor compression. A compressed variant is kept
+ * only if it is smaller than the plain one.
+ */
+public final class EncodedContent {
+    private final String text;
+    private final byte[] identity;
+    private final byte[] gzip;
+    private final byte[] deflate;
+
+    private EncodedContent(String text, byte[] identity, byte[] gzip, byte[] deflate) {
+        this.text = text;
+        this.identity = identity;
+        this.gzip = gzip;
+        this.deflate = deflate;
+    }
+
+    /**
+     * Encodes content.
+     *
+     * @param text Content string.
+     * @param compress Whether to prepare compressed variants.
+     * @return Encoded content.
+     */
+    public static EncodedContent of(String text, boolean compress) {
+        byte[] identity = text.getBytes(StandardCharsets.UTF_8);
+        if (!compress) {
+            return new EncodedContent(text, identity, null, null);
+        }
+        byte[] gzip = smallerOrNull(identity, ContentEncoding.GZIP);
+        byte[] deflate = smallerOrNull(identity, ContentEncoding.DEFLATE);
+        return new EncodedContent(text, identity, gzip, deflate);
+    }
+
+    /**
+     * @return Content string.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Chooses the encoding to send to a client, gzip is preferred over deflate.
+     *
+     * @param acceptEncoding Accept-Encoding header value, may be null.
+     * @return Accepted encoding which this content has a variant for, identity if there is no such one.
+     */
+    public ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return ContentEncoding.IDENTITY;
+        }
+        if (gzip != null && accepts(acceptEncoding, ContentEncoding.GZIP)) {
+            return ContentEncoding.GZIP;
+        }
+        if (deflate != null && accepts(acceptEncoding, ContentEncoding.DEFLATE)) {
+            return ContentEncoding.DEFLATE;
+        }
+        return ContentEncoding.IDENTITY;
+    }
+
+    /**
+     * Returns content bytes in an encoding. The array is shared and must not be modified.
+     *
+     * @param encoding Encoding returned by {@link #negotiate(String)}.
+     * @return Encoded bytes, plain UTF-8 bytes if there is no such variant.
+     */
+    public byte[] getBytes(ContentEncoding encoding) {
+        switch (encoding) {
+            case GZIP:
+                return gzip != null ? gzip : identity;
+            case DEFLATE:
+                return deflate != null ? deflate : identity;
+            default:
+                return identity;
+        }
+    }
+
+    private static boolean accepts(String acceptEncoding, ContentEncoding encoding) {
+        String coding = encoding.getHeaderValue();
+        int start = 0;
+        while (start < acceptEncoding.length()) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) {
+                end = acceptEncoding.length();
+            }
+            int paramsStart = acceptEncoding.indexOf(';', start);
+            int nameEnd = paramsStart >= 0 && paramsStart < end ? paramsStart : end;
+            String name = acceptEncoding.substring(start, nameEnd).trim();
+            if (name.equalsIgnoreCase(coding)) {
+                return nameEnd == end || !isZeroQuality(acceptEncoding.substring(nameEnd + 1, end));
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static boolean isZeroQuality(String params) {
+        for (String param : params.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.startsWith("q=") || trimmed.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] smallerOrNull(byte[] identity, ContentEncoding encoding) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(identity.length / 2 + 32);
+        try (OutputStream out = encoding == ContentEncoding.GZIP
+                ? new GZIPOutputStream(buffer)
+                : new DeflaterOutputStream(buffer)) {
+            out.write(identity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.size() < identity.length ? buffer.toByteArray() : null;
+    }
+}
@@ -0,0 +1,305 @@
+package com.github.neemogu.bannerads.banner;
+
+import com.github.neemogu.bannerads.util.AliasTable;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.IpRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Banners of a category of the {@link BannerIndex} with their targeting rules ({@link Banner#getTargetUserAgents()},
+ * {@link Banner#getTargetIpRanges()}) compiled into bitsets over the positions of banners in the category list.
+ * <p>
+ * For every user agent family there is a bitset of banners shown to it. IP ranges of all banners of a category
+ * split the address space into intervals where the same rules match, and every interval has a bitset
+ * of banners shown to its addresses. The bitsets are built by a sweep over the sorted range starts and ends,
+ * which keeps the number of matching ranges of every banner, so compiling takes one bitset copy per interval. Eligible banners of a viewer are the intersection of the bitset of its family
+ * and the bitset of the interval containing its address, found by a binary search over interval bounds,
+ * so the cost of a request depends on the number of banners, not on the number of rules.
+ * <p>
+ * Rules are compiled when the banner index publishes a changed category list, a request only looks bitsets up
+ * and allocates no bitsets of its own. The {@link AliasTable} of banner prices used by price weighted selection
+ * is built at the same time. Immutable.
+ */
+public final class TargetingIndex {
+    private static final Logger log = LoggerFactory.getLogger(TargetingIndex.class);
+
+    private final List<Banner> banners;
+    // null if there are no banners
+    private final AliasTable priceTable;
+    private final boolean targeted;
+    private final Map<Integer, Integer> positionOfBanner = new HashMap<>();
+    // null if no banner is targeted at user agent families
+    private final Map<UserAgentFamily, long[]> byFamily;
+    // bounds[i] is the first address of interval i, addresses before bounds[0] match untargeted banners only;
+    // null if no banner is targeted at IP ranges
+    private final IpAddress[] bounds;
+    private final long[][] byInterval;
+    private final long[] ipUntargeted;
+    // eligible banners of every family, set if no banner is targeted at IP ranges
+    private final Map<UserAgentFamily, EligibleBanners> eligibleOfFamily;
+
+    /**
+     * Compiles targeting rules of banners. A banner with invalid rules (saved bypassing the service)
+     * is shown to nobody.
+     *
+     * @param banners Immutable list of banners of a category.
+     */
+    public TargetingIndex(List<Banner> banners) {
+        this.banners = banners;
+        int size = banners.size();
+        List<Set<UserAgentFamily>> families = new ArrayList<>(size);
+        List<List<IpRange>> ranges = new ArrayList<>(size);
+        boolean familyTargeted = false;
+        boolean ipTargeted = false;
+        for (int i = 0; i < size; ++i) {
+            Banner banner = banners.get(i);
+            positionOfBanner.put(banner.getId(), i);
+            Set<UserAgentFamily> bannerFamilies = parseFamilies(banner);
+            List<IpRange> bannerRanges = parseRanges(banner);
+            families.add(bannerFamilies);
+            ranges.add(bannerRanges);
+            familyTargeted |= bannerFamilies != null;
+            ipTargeted |= bannerRanges != null;
+        }
+        this.targeted = familyTargeted || ipTargeted;
+        this.priceTable = size == 0 ? null : priceTableOf(banners);
+
+        if (familyTargeted) {
+            byFamily = new EnumMap<>(UserAgentFamily.class);
+            for (UserAgentFamily family : UserAgentFamily.values()) {
+                BitSet bits = new BitSet(size);
+                for (int i = 0; i < size; ++i) {
+                    if (families.get(i) == null || families.get(i).contains(family)) {
+                        bits.set(i);
+                    }
+                }
+                byFamily.put(family, bits.toLongArray());
+            }
+        } else {
+            byFamily = null;
+        }
+
+        if (ipTargeted) {
+            BitSet untargeted = new BitSet(size);
+            List<RangeEvent> events = new ArrayList<>();
+            for (int i = 0; i < size; ++i) {
+                if (ranges.get(i) == null) {
+                    untargeted.set(i);
+                    continue;
+                }
+                for (IpRange range : ranges.get(i)) {
+                    events.add(new RangeEvent(range.getFirst(), i, 1));
+                    IpAddress afterLast = next(range.getLast());
+                    if (afterLast != null) {
+                        events.add(new RangeEvent(afterLast, i, -1));
+                    }
+                }
+            }
+            events.sort(Comparator.comparing(event -> event.address));
+            ipUntargeted = untargeted.toLongArray();
+            List<IpAddress> boundList = new ArrayList<>();
+            List<long[]> intervalBits = new ArrayList<>();
+            // number of ranges of every banner containing the current interval
+            int[] matching = new int[size];
+            BitSet bits = (BitSet) untargeted.clone();
+            int next = 0;
+            while (next < events.size()) {
+                IpAddress bound = events.get(next).address;
+                for (; next < events.size() && events.get(next).address.equals(bound); ++next) {
+                    RangeEvent event = events.get(next);
+                    matching[event.position] += event.delta;
+                    bits.set(event.position, matching[event.position] > 0);
+                }
+                boundList.add(bound);
+                intervalBits.add(bits.toLongArray());
+            }
+            bounds = boundList.toArray(new IpAddress[0]);
+            byInterval = intervalBits.toArray(new long[0][]);
+            eligibleOfFamily = null;
+        } else {
+            ipUntargeted = null;
+            bounds = null;
+            byInterval = null;
+            eligibleOfFamily = new EnumMap<>(UserAgentFamily.class);
+            for (UserAgentFamily family : UserAgentFamily.values()) {
+                eligibleOfFamily.put(family, byFamily == null
+                        ? EligibleBanners.all()
+                        : new EligibleBanners(byFamily.get(family), null, positionOfBanner, size));
+            }
+        }
+    }
+
+    /**
+     * @return Banners of the category the rules are compiled for, positions of eligible banners refer to this list.
+     */
+    public List<Banner> getBanners() {
+        return banners;
+    }
+
+    /**
+     * @return Alias table drawing positions of banners with probability proportional to their prices,
+     * null if the category has no banners.
+     */
+    public AliasTable getPriceTable() {
+        return priceTable;
+    }
+
+    /**
+     * Returns banners of the category which may be shown to a viewer.
+     *
+     * @param family User agent family of the viewer, OTHER if null.
+     * @param address IP address of the viewer.
+     * @return Eligible banners, {@link EligibleBanners#all()} if no banner of the category is targeted.
+     */
+    public EligibleBanners eligibleFor(UserAgentFamily family, IpAddress address) {
+        if (!targeted) {
+            return EligibleBanners.all();
+        }
+        UserAgentFamily viewerFamily = family == null ? UserAgentFamily.OTHER : family;
+        if (bounds == null) {
+            return eligibleOfFamily.get(viewerFamily);
+        }
+        int found = Arrays.binarySearch(bounds, address);
+        int interval = found >= 0 ? found : -found - 2;
+        return new EligibleBanners(byFamily == null ? null : byFamily.get(viewerFamily),
+                interval < 0 ? ipUntargeted : byInterval[interval], positionOfBanner, banners.size());
+    }
+
+    /**
+     * Banners of a category which may be shown to a viewer: the intersection of a family bitset
+     * and an IP interval bitset of the index, either of them not limiting if null.
+     */
+    public static final class EligibleBanners {
+        private static final EligibleBanners all = new EligibleBanners(null, null, null, 0);
+
+        private final long[] familyBits;
+        private final long[] intervalBits;
+        private final Map<Integer, Integer> positionOfBanner;
+        private final int excludedCount;
+
+        private EligibleBanners(long[] familyBits, long[] intervalBits,
+                                Map<Integer, Integer> positionOfBanner, int size) {
+            this.familyBits = familyBits;
+            this.intervalBits = intervalBits;
+            this.positionOfBanner = positionOfBanner;
+            int excluded = 0;
+            for (int word = 0; word << 6 < size; ++word) {
+                long eligible = wordOf(familyBits, word) & wordOf(intervalBits, word);
+                int bitsInWord = Math.min(64, size - (word << 6));
+                long inList = bitsInWord == 64 ? -1L : (1L << bitsInWord) - 1;
+                excluded += bitsInWord - Long.bitCount(eligible & inList);
+            }
+            this.excludedCount = excluded;
+        }
+
+        /**
+         * @return All banners of a category.
+         */
+        public static EligibleBanners all() {
+            return all;
+        }
+
+        /**
+         * @param position Position of a banner in the category list.
+         * @return Whether the banner may be shown.
+         */
+        public boolean contains(int position) {
+            return isSet(familyBits, position) && isSet(intervalBits, position);
+        }
+
+        /**
+         * @param bannerId Banner id.
+         * @return Whether the banner may be shown, true for banners not in the compiled category list.
+         */
+        public boolean containsBanner(Integer bannerId) {
+            if (positionOfBanner == null) {
+                return true;
+            }
+            Integer position = positionOfBanner.get(bannerId);
+            return position == null || contains(position);
+        }
+
+        /**
+         * @return Number of banners of the category which may not be shown.
+         */
+        public int getExcludedCount() {
+            return excludedCount;
+        }
+
+        /**
+         * @return Word of a bitset, all bits set if there is no bitset,
+         * none beyond its length ({@link BitSet#toLongArray()} drops trailing zero words).
+         */
+        private static long wordOf(long[] bits, int word) {
+            if (bits == null) {
+                return -1L;
+            }
+            return word < bits.length ? bits[word] : 0;
+        }
+
+        private static boolean isSet(long[] bits, int position) {
+            return (wordOf(bits, position >>> 6) & (1L << position)) != 0;
+        }
+    }
+
+    private static AliasTable priceTableOf(List<Banner> banners) {
+        double[] prices = new double[banners.size()];
+        for (int i = 0; i < prices.length; ++i) {
+            prices[i] = banners.get(i).getPrice();
+        }
+        return new AliasTable(prices);
+    }
+
+    /**
+     * @return Families of a banner, null if it is not targeted at families.
+     */
+    private static Set<UserAgentFamily> parseFamilies(Banner banner) {
+        try {
+            Set<UserAgentFamily> families = UserAgentFamily.parseSet(banner.getTargetUserAgents());
+            return families.isEmpty() ? null : families;
+        } catch (IllegalArgumentException e) {
+            log.warn("Banner {} has invalid user agent targeting: {}", banner.getId(), e.getMessage());
+            return EnumSet.noneOf(UserAgentFamily.class);
+        }
+    }
+
+    /**
+     * @return IP ranges of a banner, null if it is not targeted at IP ranges.
+     */
+    private static List<IpRange> parseRanges(Banner banner) {
+        try {
+            List<IpRange> ranges = IpRange.parseList(banner.getTargetIpRanges());
+            return ranges.isEmpty() ? null : ranges;
+        } catch (IllegalArgumentException e) {
+            log.warn("Banner {} has invalid IP targeting: {}", banner.getId(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Start (delta 1) or end (delta -1, at the address after the last one) of an IP range of a banner.
+     */
+    private static final class RangeEvent {
+        private final IpAddress address;
+        private final int position;
+        private final int delta;
+
+        private RangeEvent(IpAddress address, int position, int delta) {
+            this.address = address;
+            this.position = position;
+            this.delta = delta;
+        }
+    }
+
+    /**
+     * @return Address following the given one, null if it is the last address.
+     */
+    private static IpAddress next(IpAddress address) {
+        long low = address.getLow() + 1;
+        long high = low == 0 ? address.getHigh() + 1 : address.getHigh();
+        return high == 0 && low == 0 ? null : new IpAddress(high, low);
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.neemogu.bannerads.banner;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Browser family of a user agent, banners may be targeted at some of them.
+ */
+public enum UserAgentFamily {
+    BOT, EDGE, OPERA, FIREFOX, CHROME, SAFARI, IE, OTHER;
+
+    private static final String[] botWords = {"bot", "spider", "crawler", "crawl"};
+
+    /**
+     * Classifies a user agent string by the product tokens it contains, ignoring case.
+     * Tokens of browsers which also mention the ones they are based on ("Edg/" with "Chrome/",
+     * "Chrome/" with "Safari/") are checked first. Edge is only recognized by its "Edge/" and "Edg/" tokens,
+     * see {@link #hasProductToken(String, String)}, as "edge" is a part of many words.
+     * Bot words are matched on word boundaries, see {@link #hasBotWord(String)}.
+     *
+     * @param userAgent User agent string, may be null.
+     * @return User agent family, OTHER if it is not recognized.
+     */
+    public static UserAgentFamily of(String userAgent) {
+        if (userAgent == null) {
+            return OTHER;
+        }
+        String lowerCase = userAgent.toLowerCase(Locale.ROOT);
+        if (hasBotWord(lowerCase)) {
+            return BOT;
+        }
+        if (hasProductToken(lowerCase, "edg/") || hasProductToken(lowerCase, "edge/")) {
+            return EDGE;
+        }
+        if (lowerCase.contains("opr/") || lowerCase.contains("opera")) {
+            return OPERA;
+        }
+        if (lowerCase.contains("firefox") || lowerCase.contains("fxios")) {
+            return FIREFOX;
+        }
+        if (lowerCase.contains("chrome") || lowerCase.contains("crios") || lowerCase.contains("chromium")) {
+            return CHROME;
+        }
+        if (lowerCase.contains("safari")) {
+            return SAFARI;
+        }
+        if (lowerCase.contains("msie") || lowerCase.contains("trident/")) {
+            return IE;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Checks whether a user agent has a product token which is not the end of a longer word
+     * ("Edg/96.0" but not "Hedg/1.0").
+     *
+     * @param lowerCase User agent string in lower case.
+     * @param token Product name with '/' in lower case.
+     * @return Whether the user agent has the token.
+     */
+    private static boolean hasProductToken(String lowerCase, String token) {
+        int found = lowerCase.indexOf(token);
+        while (found >= 0) {
+            if (found == 0 || !Character.isLetter(lowerCase.charAt(found - 1))) {
+                return true;
+            }
+            found = lowerCase.indexOf(token, found + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a user agent has a word (a run of letters) which is a bot word ("bot", "spider", ...)
+     * or ends with one and names a product, i.e. is followed by '/' or '-' ("Googlebot/2.1", "AdsBot-Google").
+     * Other words merely ending with a bot word ("Cubot" phones) are not bots.
+     *
+     * @param lowerCase User agent string in lower case.
+     * @return Whether the user agent is a bot.
+     */
+    private static boolean hasBotWord(String lowerCase) {
+        int length = lowerCase.length();
+        int start = 0;
+        while (start < length) {
+            if (!Character.isLetter(lowerCase.charAt(start))) {
+                ++start;
+                continue;
+            }
+            int end = start;
+            while (end < length && Character.isLetter(lowerCase.charAt(end))) {
+                ++end;
+            }
+            boolean product = end < length && (lowerCase.charAt(end) == '/' || lowerCase.charAt(end) == '-');
+            for (String botWord : botWords) {
+                int wordLength = end - start;
+                if (wordLength == botWord.length() && lowerCase.startsWith(botWord, start)
+                        || product && wordLength > botWord.length()
+                        && lowerCase.startsWith(botWord, end - botWord.length())) {
+                    return true;
+                }
+            }
+            start = end;
+        }
+        return false;
+    }
+
+    /**
+     * Parses comma separated family names, ignoring case.
+     *
+     * @param families Comma separated family names, blank entries are ignored.
+     * @return Parsed families, empty if the string is null or blank.
+     * @throws IllegalArgumentException If any of the names is not a family.
+     */
+    public static Set<UserAgentFamily> parseSet(String families) {
+        Set<UserAgentFamily> result = EnumSet.noneOf(UserAgentFamily.class);
+        if (families == null) {
+            return result;
+        }
+        for (String family : families.split(",")) {
+            if (!family.isBlank()) {
+                result.add(valueOf(family.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        return result;
+    }
+}
@@ -1,6 +1,7 @@
 package com.github.neemogu.bannerads.category;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.neemogu.bannerads.request.SelectionStrategyType;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -30,4 +31,17 @@ public final class Category {
     @Column(name = "deleted")
     @JsonIgnore
     private Boolean deleted = false;
+    /**
+     * Order in which banners of the category are served, the configured default if null.
+     */
+    @Column(name = "selection_strategy")
+    @Enumerated(EnumType.STRING)
+    private SelectionStrategyType selectionStrategy;
+
+    /**
+     * Creates a category served with the default selection strategy.
+     */
+    public Category(Integer id, String name, String reqName, Boolean deleted) {
+        this(id, name, reqName, deleted, null);
+    }
 }
@@ -0,0 +1,87 @@
+package com.github.neemogu.bannerads.category;
+
+import com.github.neemogu.bannerads.util.BoundedCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of categories by request name. Missing request names are cached too,
+ * so that requests with invalid category names do not reach the database.
+ * The whole cache is invalidated by {@link CategoryService} on every category change.
+ */
+@Component
+public class CategoryCache {
+    private final CategoryRepository categoryRepository;
+    private final BoundedCache<String, Optional<Category>> cache;
+    // incremented on invalidation, so that a lookup started before it does not cache a stale result
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    @Autowired
+    public CategoryCache(CategoryRepository categoryRepository,
+                         MeterRegistry meterRegistry,
+                         @Value("${bannerads.categories.cache-size:1000}") int cacheSize) {
+        this.categoryRepository = categoryRepository;
+        this.cache = new BoundedCache<>(cacheSize);
+        this.hitCounter = meterRegistry.counter("bannerads.categories.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("bannerads.categories.cache", "result", "miss");
+    }
+
+    /**
+     * Returns a category (deleted ones included) by it's request name.
+     *
+     * @param reqName Category request name.
+     * @return Optional - category object if category with such request name exists else empty.
+     */
+    public Optional<Category> findByReqName(String reqName) {
+        if (reqName == null) {
+            return Optional.empty();
+        }
+        Optional<Category> cached = cache.get(reqName);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+        missCounter.increment();
+        long loadGeneration = generation.get();
+        // a copy, so that the cached object is not attached to a persistence context
+        Optional<Category> found = categoryRepository.findByReqName(reqName)
+                .map(c -> new Category(c.getId(), c.getName(), c.getReqName(), c.getDeleted(), c.getSelectionStrategy()));
+        if (generation.get() == loadGeneration) {
+            cache.put(reqName, found);
+            if (generation.get() != loadGeneration) {
+                cache.remove(reqName);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Removes all cached categories and missing request names.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * @return Number of lookups served from the cache.
+     */
+    public long getHitCount() {
+        return (long) hitCounter.count();
+    }
+
+    /**
+     * @return Number of lookups which queried the database.
+     */
+    public long getMissCount() {
+        return (long) missCounter.count();
+    }
+}
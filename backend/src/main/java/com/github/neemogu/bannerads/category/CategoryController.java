@@ -1,5 +1,8 @@
 package com.github.neemogu.bannerads.category;
 
+import com.github.neemogu.bannerads.util.ListPage;
+import com.github.neemogu.bannerads.util.PageCursor;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -10,6 +13,7 @@ import java.util.List;
 import java.util.Optional;
 
 @RestController
+@Timed(histogram = true, percentiles = {0.5, 0.95, 0.99})
 @RequestMapping("/categories")
 public class CategoryController {
     private final CategoryService service;
@@ -24,6 +28,11 @@ public class CategoryController {
      */
     public final static int maxPageSize = 100;
 
+    /**
+     * Maximum number of name suggestions
+     */
+    public final static int maxSuggestions = 20;
+
     /**
      * Validates and creates a new category given in json object.
      *
@@ -79,13 +88,16 @@ public class CategoryController {
     }
 
     /**
-     * Returns paged list of categories containing search string in a name.
+     * Returns paged list of categories containing search string in a name ordered by id.
      * If search string is empty then returns paged list of all categories.
+     * If the page is full, the response has a cursor header to fetch the next page with
+     * regardless of categories added or removed meanwhile.
      *
      * @param searchName String to search in category name.
-     * @param page Number of a page to return.
+     * @param page Number of a page to return, ignored if cursor is given.
      * @param pageSize Size of a page to return.
-     * @return HTTP 400 if page size is too much.
+     * @param cursor Cursor returned with the previous page.
+     * @return HTTP 400 if page size is too much or cursor is invalid.
      * HTTP 200 with a paged list of categories found if ok.
      */
 
@@ -93,17 +105,74 @@ public class CategoryController {
     public ResponseEntity<List<Category>> getCategoriesList(
             @RequestParam(name = "searchName", defaultValue = "") String searchName,
             @RequestParam(name = "page", defaultValue = "0") Integer page,
-            @RequestParam(name = "pageSize", defaultValue = "20") Integer pageSize
+            @RequestParam(name = "pageSize", defaultValue = "20") Integer pageSize,
+            @RequestParam(name = "cursor", defaultValue = "") String cursor
     ) {
-        if (pageSize > maxPageSize) {
+        Optional<CategoryFetchParameters> parameters = getListParameters(searchName, page, pageSize, cursor);
+        if (parameters.isEmpty()) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
-        CategoryFetchParameters parameters = CategoryFetchParameters.builder()
+        List<Category> result = service.getCategoryList(parameters.get());
+        return withNextCursor(result, parameters.get()).body(result);
+    }
+
+    /**
+     * Returns paged list of categories (as the list endpoint does) together with the number of categories
+     * and pages found, so that a client does not need to request the page count separately.
+     *
+     * @param searchName String to search in category name.
+     * @param page Number of a page to return, ignored if cursor is given.
+     * @param pageSize Size of a page to return.
+     * @param cursor Cursor returned with the previous page.
+     * @return HTTP 400 if page size is too much or cursor is invalid.
+     * HTTP 200 with a page of categories and the numbers of categories and pages found if ok.
+     */
+
+    @GetMapping("/page")
+    public ResponseEntity<ListPage<Category>> getCategoriesPage(
+            @RequestParam(name = "searchName", defaultValue = "") String searchName,
+            @RequestParam(name = "page", defaultValue = "0") Integer page,
+            @RequestParam(name = "pageSize", defaultValue = "20") Integer pageSize,
+            @RequestParam(name = "cursor", defaultValue = "") String cursor
+    ) {
+        Optional<CategoryFetchParameters> parameters = getListParameters(searchName, page, pageSize, cursor);
+        if (parameters.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        ListPage<Category> result = service.getCategoryPage(parameters.get());
+        return withNextCursor(result.getItems(), parameters.get()).body(result);
+    }
+
+    private Optional<CategoryFetchParameters> getListParameters(String searchName,
+                                                                Integer page,
+                                                                Integer pageSize,
+                                                                String cursor) {
+        if (pageSize > maxPageSize) {
+            return Optional.empty();
+        }
+        PageCursor after = null;
+        if (!cursor.isEmpty()) {
+            Optional<PageCursor> decoded = service.decodeCursor(cursor);
+            if (decoded.isEmpty()) {
+                return Optional.empty();
+            }
+            after = decoded.get();
+        }
+        return Optional.of(CategoryFetchParameters.builder()
                 .searchName(searchName)
                 .page(page)
                 .pageSize(pageSize)
-                .build();
-        return ResponseEntity.ok(service.getCategoryList(parameters));
+                .after(after)
+                .build());
+    }
+
+    private ResponseEntity.BodyBuilder withNextCursor(List<Category> categories, CategoryFetchParameters parameters) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!categories.isEmpty() && categories.size() == parameters.getPageSize()) {
+            PageCursor next = service.getCursorAfter(categories.get(categories.size() - 1));
+            response.header(PageCursor.nextPageHeader, next.encode());
+        }
+        return response;
     }
 
     /**
@@ -146,4 +215,24 @@ public class CategoryController {
         Optional<Category> result = service.getSpecificCategory(id);
         return result.map(ResponseEntity::ok).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
+
+    /**
+     * Returns names of categories starting with a prefix (ignoring case) for autocompletion.
+     *
+     * @param prefix Name prefix.
+     * @param limit Maximum number of names to return.
+     * @return HTTP 400 if limit is too much.
+     * HTTP 200 with a list of names ordered alphabetically if ok.
+     */
+
+    @GetMapping("/names")
+    public ResponseEntity<List<String>> getCategoryNames(
+            @RequestParam(name = "prefix", defaultValue = "") String prefix,
+            @RequestParam(name = "limit", defaultValue = "10") Integer limit
+    ) {
+        if (limit > maxSuggestions) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return ResponseEntity.ok(service.completeName(prefix, limit));
+    }
 }
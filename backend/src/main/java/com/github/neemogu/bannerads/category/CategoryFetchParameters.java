@@ -1,5 +1,6 @@
 package com.github.neemogu.bannerads.category;
 
+import com.github.neemogu.bannerads.util.PageCursor;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -14,4 +15,9 @@ public class CategoryFetchParameters {
     private int pageSize = 20;
     @Builder.Default
     private String searchName = "";
+    /**
+     * Position to continue the listing after, when set the page number is ignored.
+     */
+    @Builder.Default
+    private PageCursor after = null;
 }
@@ -2,6 +2,7 @@ package com.github.neemogu.bannerads.category;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface CategoryRepository extends JpaRepository<Category, Integer> {
@@ -10,5 +11,6 @@ public interface CategoryRepository extends JpaRepository<Category, Integer> {
     Optional<Category> findByNameAndIdIsNot(String name, Integer id);
     Optional<Category> findByReqNameAndIdIsNot(String reqName, Integer id);
     Optional<Category> findByIdAndDeletedFalse(Integer id);
+    List<Category> findAllByDeletedFalse();
     boolean existsByIdAndDeletedFalse(Integer id);
 }
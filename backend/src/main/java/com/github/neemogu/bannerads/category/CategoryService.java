@@ -1,33 +1,64 @@
 package com.github.neemogu.bannerads.category;
 
 import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerIndex;
 import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.util.CountCache;
+import com.github.neemogu.bannerads.util.ListPage;
+import com.github.neemogu.bannerads.util.PageCursor;
+import com.github.neemogu.bannerads.util.SqlFunctions;
+import com.github.neemogu.bannerads.util.TrigramIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.PersistenceUnit;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
-import java.util.LinkedList;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
 public class CategoryService {
+    private static final String cursorOrder = "id";
+    private static final int countCacheSize = 1000;
+    private static final String listSelect = "select c from Category c where c.deleted = false";
+    private static final String countedListSelect =
+            "select c, " + SqlFunctions.countOver + "() from Category c where c.deleted = false";
+    private static final String afterCursor = " and c.id > :afterId";
+    private static final String listOrder = " order by c.id asc";
+    // listing queries by cursor presence and window count
+    private static final String listQuery = listSelect + listOrder;
+    private static final String cursorListQuery = listSelect + afterCursor + listOrder;
+    private static final String countedListQuery = countedListSelect + listOrder;
+    private static final String countedCursorListQuery = countedListSelect + afterCursor + listOrder;
+    private static final String countQuery = "select count(c) from Category c where c.deleted = false";
+
     private final CategoryRepository categoryRepository;
     private final BannerRepository bannerRepository;
-    @PersistenceUnit
-    private EntityManagerFactory entityManagerFactory;
+    private final BannerIndex bannerIndex;
+    private final CategoryCache categoryCache;
+    // category counts by lower case search string
+    private final CountCache<String> countCache = new CountCache<>(countCacheSize);
+    // copies of not deleted categories for name search
+    private final TrigramIndex<Category> nameIndex = new TrigramIndex<>(Category::getId, Category::getName);
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Value("${bannerads.listing.window-count:true}")
+    private boolean windowCount;
 
     @Autowired
-    public CategoryService(CategoryRepository categoryRepository, BannerRepository bannerRepository) {
+    public CategoryService(CategoryRepository categoryRepository,
+                           BannerRepository bannerRepository,
+                           BannerIndex bannerIndex,
+                           CategoryCache categoryCache) {
         this.categoryRepository = categoryRepository;
         this.bannerRepository = bannerRepository;
+        this.bannerIndex = bannerIndex;
+        this.categoryCache = categoryCache;
     }
 
     /**
@@ -49,6 +80,14 @@ public class CategoryService {
             return checked;
         }
         categoryRepository.save(category);
+        categoryCache.invalidate();
+        countCache.invalidate();
+        if (category.getDeleted() != null && category.getDeleted()) {
+            nameIndex.remove(category.getId());
+        } else if (category.getId() != null) {
+            nameIndex.put(copyOf(category));
+        }
+        bannerIndex.updateCategory(category);
         return Optional.empty();
     }
 
@@ -136,66 +175,167 @@ public class CategoryService {
             }
             category.setDeleted(true);
             categoryRepository.save(category);
+            categoryCache.invalidate();
+            countCache.invalidate();
+            nameIndex.remove(id);
+            bannerIndex.removeCategory(id);
         }
         return Optional.empty();
     }
 
-    private List<Predicate> getWherePredicates(CriteriaBuilder builder,
-                                               Root<Category> root,
-                                               String searchName) {
-        List<Predicate> predicates = new LinkedList<>();
-        if (!searchName.equals("")) {
-            predicates.add(builder.like(builder.lower(root.get("name")), "%" + searchName.toLowerCase() + "%"));
-        }
-        predicates.add(builder.isFalse(root.get("deleted")));
-        return predicates;
+    /**
+     * Reloads the in-memory index of category names from a database.
+     */
+    @PostConstruct
+    public void rebuildNameIndex() {
+        nameIndex.replaceAll(categoryRepository.findAllByDeletedFalse().stream()
+                .map(CategoryService::copyOf)
+                .collect(Collectors.toList()));
     }
 
     /**
-     * Returns paged list of categories satisfying the parameters. All categories in list is not deleted.
-     * If search string is empty there won't be any filtering by name.
+     * Returns names of not deleted categories starting with a prefix ignoring case, from the in-memory index.
      *
-     * @param parameters Parameters object containing page number, page size and a search string.
+     * @param prefix Category name prefix.
+     * @param limit Maximum number of names to return.
+     * @return Category names ordered alphabetically.
+     */
+    public List<String> completeName(String prefix, int limit) {
+        return nameIndex.complete(prefix, limit).stream().map(Category::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns paged list of categories satisfying the parameters ordered by id. All categories in list is not deleted.
+     * If search string is empty there won't be any filtering by name, otherwise categories are searched
+     * (case-insensitively) in the in-memory name index without querying the database.
+     * If the parameters contain a cursor, the page starts right after it instead of the page number offset.
+     *
+     * @param parameters Parameters object containing page number or cursor, page size and a search string.
      * @return Paged list of categories satisfying the parameters.
      */
 
     public List<Category> getCategoryList(CategoryFetchParameters parameters) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        CriteriaBuilder builder = em.getCriteriaBuilder();
-        CriteriaQuery<Category> query = builder.createQuery(Category.class);
-        Root<Category> root = query.from(Category.class);
+        if (!parameters.getSearchName().isEmpty()) {
+            return getResultPage(searchCategories(parameters), parameters);
+        }
+        return getResultPage(createListQuery(parameters, false, Category.class), parameters);
+    }
+
+    /**
+     * Returns paged list of categories satisfying the parameters (as {@link #getCategoryList(CategoryFetchParameters)})
+     * together with the number of all categories satisfying them.
+     * The number is selected by the same statement with a window function if it is enabled,
+     * otherwise (or if the page is empty or continues a cursor) it is taken from a count cached
+     * until the next category change.
+     *
+     * @param parameters Parameters object containing page number or cursor, page size and a search string.
+     * @return Page of categories with the total number of categories and pages.
+     */
+    public ListPage<Category> getCategoryPage(CategoryFetchParameters parameters) {
+        if (!parameters.getSearchName().isEmpty()) {
+            List<Category> found = searchCategories(parameters);
+            return ListPage.of(getResultPage(found, parameters), found.size(), parameters.getPageSize());
+        }
+        if (!windowCount || parameters.getAfter() != null) {
+            return ListPage.of(getCategoryList(parameters), getCategoryCount(parameters), parameters.getPageSize());
+        }
+        long loadGeneration = countCache.getGeneration();
+        List<Object[]> rows = getResultPage(createListQuery(parameters, true, Object[].class), parameters);
+        if (rows.isEmpty()) {
+            return ListPage.of(List.of(), getCategoryCount(parameters), parameters.getPageSize());
+        }
+        long total = (Long) rows.get(0)[1];
+        countCache.put(parameters.getSearchName().toLowerCase(), total, loadGeneration);
+        List<Category> categories = rows.stream().map(row -> (Category) row[0]).collect(Collectors.toList());
+        return ListPage.of(categories, total, parameters.getPageSize());
+    }
+
+    private <T> TypedQuery<T> createListQuery(CategoryFetchParameters parameters, boolean withCount, Class<T> type) {
+        if (parameters.getAfter() == null) {
+            return entityManager.createQuery(withCount ? countedListQuery : listQuery, type);
+        }
+        return entityManager.createQuery(withCount ? countedCursorListQuery : cursorListQuery, type)
+                .setParameter("afterId", parameters.getAfter().getId());
+    }
+
+    private static <T> List<T> getResultPage(TypedQuery<T> query, CategoryFetchParameters parameters) {
+        if (parameters.getAfter() == null) {
+            query.setFirstResult(parameters.getPage() * parameters.getPageSize());
+        }
+        return query.setMaxResults(parameters.getPageSize()).getResultList();
+    }
 
-        List<Predicate> wherePredicates = getWherePredicates(builder, root, parameters.getSearchName());
-        query.where(builder.and(wherePredicates.toArray(new Predicate[0])));
+    private List<Category> searchCategories(CategoryFetchParameters parameters) {
+        List<Category> found = nameIndex.search(parameters.getSearchName());
+        found.sort(Comparator.comparing(Category::getId));
+        return found;
+    }
 
-        List<Category> result = em.createQuery(query.select(root))
-                .setFirstResult(parameters.getPage() * parameters.getPageSize())
-                .setMaxResults(parameters.getPageSize()).getResultList();
-        em.close();
-        return result;
+    private static List<Category> getResultPage(List<Category> sorted, CategoryFetchParameters parameters) {
+        int from = 0;
+        if (parameters.getAfter() == null) {
+            from = (int) Math.min((long) parameters.getPage() * parameters.getPageSize(), sorted.size());
+        } else {
+            while (from < sorted.size() && sorted.get(from).getId() <= parameters.getAfter().getId()) {
+                ++from;
+            }
+        }
+        return sorted.subList(from, Math.min(from + parameters.getPageSize(), sorted.size()));
+    }
+
+    private static Category copyOf(Category category) {
+        return new Category(category.getId(), category.getName(), category.getReqName(), category.getDeleted(),
+                category.getSelectionStrategy());
+    }
+
+    /**
+     * Returns a cursor pointing after the given category,
+     * to fetch the next page with {@link CategoryFetchParameters#getAfter()}.
+     *
+     * @param category Last category of a page.
+     * @return Cursor after the category.
+     */
+    public PageCursor getCursorAfter(Category category) {
+        return new PageCursor(cursorOrder, null, category.getId());
+    }
+
+    /**
+     * Decodes a cursor token of a category listing.
+     *
+     * @param token Token returned with a previous page.
+     * @return Optional - cursor if the token is valid category listing cursor else empty.
+     */
+    public Optional<PageCursor> decodeCursor(String token) {
+        return PageCursor.decode(token).filter(cursor -> cursor.getOrder().equals(cursorOrder));
     }
 
     /**
      * Returns number of pages of categories satisfying the parameters.
      * If search string is empty there won't be any filtering by name.
+     * The number of categories is cached until the next category change.
      *
      * @param parameters Parameters object containing page size and search string.
      * @return Number of pages of categories satisfying the parameters.
      */
 
     public long getCategoryListPageCount(CategoryFetchParameters parameters) {
-        EntityManager em = entityManagerFactory.createEntityManager();
-        CriteriaBuilder builder = em.getCriteriaBuilder();
-        CriteriaQuery<Long> query = builder.createQuery(Long.class);
-        Root<Category> root = query.from(Category.class);
+        long result = getCategoryCount(parameters);
+        return result / parameters.getPageSize() + (result % parameters.getPageSize() == 0 ? 0 : 1);
+    }
 
-        List<Predicate> wherePredicates = getWherePredicates(builder, root, parameters.getSearchName());
-        query.where(builder.and(wherePredicates.toArray(new Predicate[0])));
-        query.select(builder.count(root));
+    private long getCategoryCount(CategoryFetchParameters parameters) {
+        if (!parameters.getSearchName().isEmpty()) {
+            return nameIndex.search(parameters.getSearchName()).size();
+        }
+        return countCache.get(parameters.getSearchName().toLowerCase(),
+                () -> entityManager.createQuery(countQuery, Long.class).getSingleResult());
+    }
 
-        Long result = em.createQuery(query).getSingleResult();
-        em.close();
-        return result / parameters.getPageSize() + (result % parameters.getPageSize() == 0 ? 0 : 1);
+    /**
+     * Removes cached category counts, to be called after categories are changed bypassing the service.
+     */
+    public void invalidateCounts() {
+        countCache.invalidate();
     }
 
     /**
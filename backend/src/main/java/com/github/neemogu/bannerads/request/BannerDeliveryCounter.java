@@ -0,0 +1,30 @@
+package com.github.neemogu.bannerads.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Persisted impressions and spending of a capped banner in a day (UTC), see {@link DeliveryCounters}.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(BannerDeliveryCounterId.class)
+@Table(name = "banner_delivery_counter")
+public final class BannerDeliveryCounter {
+    @Id
+    @Column(name = "date")
+    private LocalDate date;
+    @Id
+    @Column(name = "banner_id")
+    private Integer bannerId;
+    @Column(name = "impressions", nullable = false)
+    private Long impressions;
+    @Column(name = "spent", nullable = false)
+    private Double spent;
+}
@@ -0,0 +1,19 @@
+package com.github.neemogu.bannerads.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Primary key of {@link BannerDeliveryCounter}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BannerDeliveryCounterId implements Serializable {
+    private LocalDate date;
+    private Integer bannerId;
+}
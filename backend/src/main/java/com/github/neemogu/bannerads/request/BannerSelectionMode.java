@@ -0,0 +1,13 @@
+package com.github.neemogu.bannerads.request;
+
+/**
+ * How the next banner for a viewer is selected.
+ * INDEX_SCAN - walks the in-memory banner index by price and checks each banner against the request log.
+ * ANTI_JOIN - finds the most priced banner not requested by the viewer with a single database query,
+ * category selection strategies are not applied.
+ * FREQUENCY_SKETCH - walks the in-memory banner index by price and checks configurable frequency caps
+ * against in-memory approximate counters instead of the request log, see {@link FrequencyCaps}.
+ */
+public enum BannerSelectionMode {
+    INDEX_SCAN, ANTI_JOIN, FREQUENCY_SKETCH
+}
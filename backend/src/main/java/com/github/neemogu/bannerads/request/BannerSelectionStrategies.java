@@ -0,0 +1,48 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.category.Category;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of {@link BannerSelectionStrategy} beans by type, resolves the strategy of a category.
+ */
+@Component
+public class BannerSelectionStrategies {
+    private final Map<SelectionStrategyType, BannerSelectionStrategy> strategies =
+            new EnumMap<>(SelectionStrategyType.class);
+    private final SelectionStrategyType defaultType;
+
+    /**
+     * @param strategies Available strategies, one per type.
+     * @param defaultType Strategy of categories without a configured one.
+     */
+    @Autowired
+    public BannerSelectionStrategies(List<BannerSelectionStrategy> strategies,
+                                     @Value("${bannerads.selection.default-strategy:STRICT_PRICE}")
+                                             SelectionStrategyType defaultType) {
+        for (BannerSelectionStrategy strategy : strategies) {
+            if (this.strategies.put(strategy.getType(), strategy) != null) {
+                throw new IllegalArgumentException("Duplicate banner selection strategy " + strategy.getType());
+            }
+        }
+        if (!this.strategies.containsKey(defaultType)) {
+            throw new IllegalArgumentException("No banner selection strategy " + defaultType);
+        }
+        this.defaultType = defaultType;
+    }
+
+    /**
+     * @param category Category object.
+     * @return Strategy configured for the category, the default one if it is not configured or not available.
+     */
+    public BannerSelectionStrategy forCategory(Category category) {
+        SelectionStrategyType type = category.getSelectionStrategy();
+        return strategies.getOrDefault(type == null ? defaultType : type, strategies.get(defaultType));
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.banner.TargetingIndex;
+
+/**
+ * Chooses the banner of a category to offer first. Banners are then offered in price order
+ * starting from it and wrapping around, until one is allowed for the viewer.
+ * Implementations are called for every request and must not take more than constant time.
+ */
+public interface BannerSelectionStrategy {
+    /**
+     * @return Type of the strategy, to be configured for categories.
+     */
+    SelectionStrategyType getType();
+
+    /**
+     * Returns the position of the banner to offer first.
+     *
+     * @param categoryId Category id.
+     * @param category Compiled banners of the category from the banner index, at least one,
+     *                 ordered by price from highest to lowest. A new index is passed after banners
+     *                 of the category change.
+     * @return Position in {@link TargetingIndex#getBanners()}.
+     */
+    int firstCandidate(Integer categoryId, TargetingIndex category);
+}
@@ -0,0 +1,323 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory counters of impressions and spending (sum of prices) per banner and day (UTC)
+ * which enforce {@link Banner#getDailyImpressionCap()} and {@link Banner#getDailyBudget()} without
+ * database round trips during banner selection. Only banners with a cap are counted.
+ * <p>
+ * A reservation is a compare-and-set loop on atomic counters, so concurrent bids never exceed a cap
+ * in one instance. Counters are periodically flushed to the banner_delivery_counter table as increments
+ * and then set to the persisted totals, so instances sharing a database see each other's impressions
+ * after a flush and a restarted instance continues from the persisted totals. Totals are also raised
+ * to the impressions already rolled up into banner_daily_stats, which covers impressions served before
+ * a cap was set or not flushed before a crash. The raise is counted as already flushed: every instance
+ * applies it on its own, so writing it back would add it once per instance. Increments are written
+ * with a single upsert statement per banner, so flushes of several instances never collide on inserting
+ * the same row.
+ * <p>
+ * Capped banners are counted per category, so that banner selection in one category only makes room
+ * for the banners of that category which reached a cap.
+ */
+@Component
+public class DeliveryCounters {
+    private static final Logger log = LoggerFactory.getLogger(DeliveryCounters.class);
+    private static final long millisInDay = 86400000L;
+    // H2 runs in MySQL mode in tests and benchmarks to support it
+    private static final String upsertSql = "insert into banner_delivery_counter " +
+            "(date, banner_id, impressions, spent) values (?, ?, ?, ?) " +
+            "on duplicate key update impressions = impressions + values(impressions), spent = spent + values(spent)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AtomicReference<Day> current = new AtomicReference<>(new Day(System.currentTimeMillis()));
+    private final Queue<Day> retired = new ConcurrentLinkedQueue<>();
+    // ids of banners which reached a cap today by category id
+    private final Map<Integer, Set<Integer>> exhausted = new ConcurrentHashMap<>();
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public DeliveryCounters(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rejectedCounter = meterRegistry.counter("bannerads.caps.rejected");
+        meterRegistry.gauge("bannerads.caps.exhausted", exhausted, DeliveryCounters::countExhausted);
+    }
+
+    /**
+     * Checks if a banner may be served today without reserving an impression.
+     *
+     * @param banner Banner object.
+     * @return False if a cap of the banner is reached.
+     */
+    public boolean hasCapacity(Banner banner) {
+        if (!isCapped(banner)) {
+            return true;
+        }
+        Counters counters = today().counters.get(banner.getId());
+        if (counters == null) {
+            return true;
+        }
+        return (banner.getDailyImpressionCap() == null
+                || counters.impressions.get() < banner.getDailyImpressionCap())
+                && (banner.getDailyBudget() == null
+                || counters.spentCents.get() + cents(banner.getPrice()) <= cents(banner.getDailyBudget()));
+    }
+
+    /**
+     * Reserves an impression of a banner if its caps allow it.
+     *
+     * @param banner Banner object.
+     * @return True if the banner may be served, false if a cap is reached.
+     */
+    public boolean tryReserve(Banner banner) {
+        if (!isCapped(banner)) {
+            return true;
+        }
+        Counters counters = today().countersOf(banner.getId());
+        long price = cents(banner.getPrice());
+        boolean reserved;
+        if (banner.getDailyBudget() != null) {
+            reserved = tryAdd(counters.spentCents, price, cents(banner.getDailyBudget()));
+            if (reserved && banner.getDailyImpressionCap() != null
+                    && !tryAdd(counters.impressions, 1, banner.getDailyImpressionCap())) {
+                counters.spentCents.addAndGet(-price);
+                reserved = false;
+            } else if (reserved && banner.getDailyImpressionCap() == null) {
+                counters.impressions.incrementAndGet();
+            }
+        } else {
+            reserved = tryAdd(counters.impressions, 1, banner.getDailyImpressionCap());
+            if (reserved) {
+                counters.spentCents.addAndGet(price);
+            }
+        }
+        Integer categoryId = banner.getCategory().getId();
+        if (!reserved) {
+            exhausted.computeIfAbsent(categoryId, id -> ConcurrentHashMap.newKeySet()).add(banner.getId());
+            rejectedCounter.increment();
+        } else if (!exhausted.isEmpty()) {
+            // a cap may have been raised
+            Set<Integer> exhaustedOfCategory = exhausted.get(categoryId);
+            if (exhaustedOfCategory != null) {
+                exhaustedOfCategory.remove(banner.getId());
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * @return Number of banners of all categories which reached a cap today.
+     */
+    public int getExhaustedCount() {
+        today();
+        return countExhausted(exhausted);
+    }
+
+    /**
+     * @param categoryId Category id.
+     * @return Number of banners of a category which reached a cap today.
+     * Banner selection in the category may skip that many banners.
+     */
+    public int getExhaustedCount(Integer categoryId) {
+        today();
+        Set<Integer> exhaustedOfCategory = exhausted.get(categoryId);
+        return exhaustedOfCategory == null ? 0 : exhaustedOfCategory.size();
+    }
+
+    /**
+     * Returns counted impressions of a banner today.
+     *
+     * @param bannerId Banner id.
+     * @return Number of impressions, 0 if the banner is not counted.
+     */
+    public long getImpressions(Integer bannerId) {
+        Counters counters = today().counters.get(bannerId);
+        return counters == null ? 0 : counters.impressions.get();
+    }
+
+    /**
+     * Loads persisted totals of today on startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        flush();
+    }
+
+    @Scheduled(initialDelayString = "${bannerads.caps.flush-interval-ms:5000}",
+            fixedDelayString = "${bannerads.caps.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (DataAccessException e) {
+            log.error("Failed to flush delivery counters", e);
+        }
+    }
+
+    /**
+     * Writes impressions and spending counted since the last flush.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        try {
+            Day day;
+            while ((day = retired.poll()) != null) {
+                write(day);
+            }
+            write(current.get());
+        } catch (DataAccessException e) {
+            log.error("Failed to flush delivery counters on shutdown", e);
+        }
+    }
+
+    /**
+     * Adds impressions and spending counted since the last flush to the persisted totals
+     * and updates today's counters with the totals counted by all instances.
+     */
+    public synchronized void flush() {
+        Day retiredDay;
+        while ((retiredDay = retired.poll()) != null) {
+            write(retiredDay);
+        }
+        Day day = today();
+        write(day);
+        Map<Integer, long[]> totals = new HashMap<>();
+        java.sql.Date date = java.sql.Date.valueOf(day.date);
+        jdbcTemplate.query("select banner_id, impressions, spent from banner_delivery_counter where date = ?",
+                resultSet -> {
+                    totals.put(resultSet.getInt(1),
+                            new long[] {resultSet.getLong(2), cents(resultSet.getBigDecimal(3))});
+                }, date);
+        for (Map.Entry<Integer, long[]> total : totals.entrySet()) {
+            long[] value = total.getValue();
+            day.countersOf(total.getKey()).setFlushed(value[0], value[1]);
+        }
+        jdbcTemplate.query("select banner_id, impressions, revenue from banner_daily_stats where date = ?",
+                resultSet -> {
+                    Counters counters = day.counters.get(resultSet.getInt(1));
+                    if (counters == null) {
+                        return;
+                    }
+                    counters.setFlushed(Math.max(counters.flushedImpressions, resultSet.getLong(2)),
+                            Math.max(counters.flushedSpentCents, cents(resultSet.getBigDecimal(3))));
+                }, date);
+    }
+
+    private void write(Day day) {
+        java.sql.Date date = java.sql.Date.valueOf(day.date);
+        for (Map.Entry<Integer, Counters> entry : day.counters.entrySet()) {
+            Counters counters = entry.getValue();
+            long impressions = counters.impressions.get();
+            long spentCents = counters.spentCents.get();
+            long addedImpressions = impressions - counters.flushedImpressions;
+            BigDecimal addedSpent = BigDecimal.valueOf(spentCents - counters.flushedSpentCents, 2);
+            if (addedImpressions == 0 && addedSpent.signum() == 0) {
+                continue;
+            }
+            jdbcTemplate.update(upsertSql, date, entry.getKey(), addedImpressions, addedSpent);
+            counters.flushedImpressions = impressions;
+            counters.flushedSpentCents = spentCents;
+        }
+    }
+
+    private static int countExhausted(Map<Integer, Set<Integer>> exhausted) {
+        int count = 0;
+        for (Set<Integer> exhaustedOfCategory : exhausted.values()) {
+            count += exhaustedOfCategory.size();
+        }
+        return count;
+    }
+
+    private Day today() {
+        Day day = current.get();
+        long now = System.currentTimeMillis();
+        while (now >= day.endMillis) {
+            Day next = new Day(now);
+            if (current.compareAndSet(day, next)) {
+                retired.add(day);
+                exhausted.clear();
+            }
+            day = current.get();
+        }
+        return day;
+    }
+
+    private static boolean isCapped(Banner banner) {
+        return banner.getDailyImpressionCap() != null || banner.getDailyBudget() != null;
+    }
+
+    private static boolean tryAdd(AtomicLong value, long delta, long limit) {
+        while (true) {
+            long previous = value.get();
+            if (previous + delta > limit) {
+                return false;
+            }
+            if (value.compareAndSet(previous, previous + delta)) {
+                return true;
+            }
+        }
+    }
+
+    private static long cents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    private static final class Day {
+        private final LocalDate date;
+        private final long endMillis;
+        private final Map<Integer, Counters> counters = new ConcurrentHashMap<>();
+
+        private Day(long millis) {
+            this.date = LocalDate.ofEpochDay(Math.floorDiv(millis, millisInDay));
+            this.endMillis = date.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+
+        private Counters countersOf(Integer bannerId) {
+            return counters.computeIfAbsent(bannerId, id -> new Counters());
+        }
+    }
+
+    private static final class Counters {
+        private final AtomicLong impressions = new AtomicLong();
+        private final AtomicLong spentCents = new AtomicLong();
+        // written by flushes only, which are synchronized
+        private long flushedImpressions;
+        private long flushedSpentCents;
+
+        /**
+         * Shifts the counters so that they start from the given totals, keeping reservations made
+         * since the last flush, which are the only ones the next flush writes.
+         */
+        private void setFlushed(long impressionsTotal, long spentCentsTotal) {
+            impressions.addAndGet(impressionsTotal - flushedImpressions);
+            spentCents.addAndGet(spentCentsTotal - flushedSpentCents);
+            flushedImpressions = impressionsTotal;
+            flushedSpentCents = spentCentsTotal;
+        }
+    }
+}
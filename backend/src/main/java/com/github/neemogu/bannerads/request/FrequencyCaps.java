@@ -0,0 +1,130 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.util.SlidingCountMinSketch;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Frequency caps of {@link BannerSelectionMode#FREQUENCY_SKETCH}: a viewer is shown a banner at most
+ * a given number of times per window and banners of a category at most a given number of times per window.
+ * <p>
+ * Impressions are counted in fixed memory by {@link SlidingCountMinSketch}es keyed by a viewer hash and
+ * a banner or category id, one sketch per cap, allocated only in this selection mode. Counts are never
+ * lower than the true ones, so a cap is never exceeded within an instance, but a viewer may be considered
+ * capped early: with n impressions per window, a sketch of width w and depth d per slice and s slices,
+ * a count is overestimated by more than (e / w) * n with probability at most (s + 1) * e^-d. A viewer
+ * who has not seen a banner is considered capped (with a cap of 1) with probability about
+ * (s + 1) * (1 - e^(-n / (s * w)))^d. A sketch takes (s + 2) * w * d * 4 bytes, 64 MiB with the defaults.
+ * Counts are kept per instance and are lost on restart.
+ * <p>
+ * The sketch of the next slice is cleared ahead of time by a scheduled task, so bids do not clear
+ * counters themselves when a slice begins; the task interval must be shorter than a slice.
+ */
+@Component
+public class FrequencyCaps {
+    private static final long bannerSalt = 0xc2b2ae3d27d4eb4fL;
+    private static final long categorySalt = 0x165667b19e3779f9L;
+
+    private final int bannerLimit;
+    private final int categoryLimit;
+    private final SlidingCountMinSketch bannerCounts;
+    private final SlidingCountMinSketch categoryCounts;
+
+    /**
+     * @param mode Banner selection mode, sketches are allocated only for {@link BannerSelectionMode#FREQUENCY_SKETCH}.
+     * @param bannerLimit Impressions of a banner per viewer and window, not limited if 0.
+     * @param categoryLimit Impressions of banners of a category per viewer and window, not limited if 0.
+     * @param windowMillis Window length in milliseconds.
+     * @param slices Number of time slices in a window.
+     * @param width Number of counters in a row of a slice sketch.
+     * @param depth Number of rows of a slice sketch.
+     */
+    @Autowired
+    public FrequencyCaps(@Value("${bannerads.bid.selection-mode:INDEX_SCAN}") BannerSelectionMode mode,
+                         @Value("${bannerads.frequency.banner-limit:1}") int bannerLimit,
+                         @Value("${bannerads.frequency.category-limit:0}") int categoryLimit,
+                         @Value("${bannerads.frequency.window-ms:86400000}") long windowMillis,
+                         @Value("${bannerads.frequency.slices:6}") int slices,
+                         @Value("${bannerads.frequency.sketch-width:524288}") int width,
+                         @Value("${bannerads.frequency.sketch-depth:4}") int depth,
+                         MeterRegistry meterRegistry) {
+        boolean enabled = mode == BannerSelectionMode.FREQUENCY_SKETCH;
+        this.bannerLimit = bannerLimit;
+        this.categoryLimit = categoryLimit;
+        this.bannerCounts = enabled && bannerLimit > 0
+                ? new SlidingCountMinSketch(windowMillis, slices, width, depth) : null;
+        this.categoryCounts = enabled && categoryLimit > 0
+                ? new SlidingCountMinSketch(windowMillis, slices, width, depth) : null;
+        meterRegistry.gauge("bannerads.frequency.sketch.bytes", this, FrequencyCaps::getSizeInBytes);
+    }
+
+    /**
+     * @param viewer Viewer.
+     * @param categoryId Category id.
+     * @return False if the viewer has reached the category cap.
+     */
+    public boolean allowsCategory(Viewer viewer, Integer categoryId) {
+        return categoryCounts == null
+                || categoryCounts.estimate(keyOf(viewer, categoryId, categorySalt), now()) < categoryLimit;
+    }
+
+    /**
+     * @param viewer Viewer.
+     * @param bannerId Banner id.
+     * @return False if the viewer has reached the banner cap.
+     */
+    public boolean allowsBanner(Viewer viewer, Integer bannerId) {
+        return bannerCounts == null
+                || bannerCounts.estimate(keyOf(viewer, bannerId, bannerSalt), now()) < bannerLimit;
+    }
+
+    /**
+     * Counts an impression served to a viewer.
+     *
+     * @param viewer Viewer.
+     * @param bannerId Served banner id.
+     * @param categoryId Category id of the banner.
+     */
+    public void record(Viewer viewer, Integer bannerId, Integer categoryId) {
+        long now = now();
+        if (bannerCounts != null) {
+            bannerCounts.add(keyOf(viewer, bannerId, bannerSalt), now);
+        }
+        if (categoryCounts != null) {
+            categoryCounts.add(keyOf(viewer, categoryId, categorySalt), now);
+        }
+    }
+
+    /**
+     * Clears sketches of the slices following the current ones ahead of time.
+     */
+    @Scheduled(fixedDelayString = "${bannerads.frequency.clear-interval-ms:60000}")
+    public void clearNextSlices() {
+        long now = now();
+        if (bannerCounts != null) {
+            bannerCounts.clearNext(now);
+        }
+        if (categoryCounts != null) {
+            categoryCounts.clearNext(now);
+        }
+    }
+
+    /**
+     * @return Memory taken by the sketches in bytes.
+     */
+    public long getSizeInBytes() {
+        return (bannerCounts == null ? 0 : bannerCounts.getSizeInBytes())
+                + (categoryCounts == null ? 0 : categoryCounts.getSizeInBytes());
+    }
+
+    private static long keyOf(Viewer viewer, Integer id, long salt) {
+        return viewer.getHash() ^ ((id + 1) * salt);
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.neemogu.bannerads.request;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+
+@RestController
+@RequestMapping("/impressions")
+public class ImpressionExportController {
+    private final ImpressionExporter exporter;
+
+    @Autowired
+    public ImpressionExportController(ImpressionExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    /**
+     * Streams served impressions (banner requests) ordered by id as a file download.
+     * Rows are written while they are read from a database, the response is not buffered.
+     *
+     * @param format Output format.
+     * @param from Earliest impression date, ISO-8601 instant, inclusive.
+     * @param to Latest impression date, ISO-8601 instant, exclusive.
+     * @param bannerId Banner id to export impressions of.
+     * @param categoryId Category id to export impressions of.
+     * @return HTTP 400 if the time range is empty.
+     * HTTP 200 with a stream of impressions if ok.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportImpressions(
+            @RequestParam(name = "format", defaultValue = "NDJSON") ImpressionExportFormat format,
+            @RequestParam(name = "from", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(name = "to", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(name = "bannerId", required = false) Integer bannerId,
+            @RequestParam(name = "categoryId", required = false) Integer categoryId
+    ) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        ImpressionExportFilter filter = ImpressionExportFilter.builder()
+                .from(from == null ? null : Date.from(from))
+                .to(to == null ? null : Date.from(to))
+                .bannerId(bannerId)
+                .categoryId(categoryId)
+                .build();
+        ContentDisposition disposition = ContentDisposition.attachment()
+                .filename("impressions." + format.getFileExtension())
+                .build();
+        return ResponseEntity.ok()
+                .contentType(new MediaType(format.getMediaType(), StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                .body(out -> exporter.export(filter, format, out));
+    }
+}
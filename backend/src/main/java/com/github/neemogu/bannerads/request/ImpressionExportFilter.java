@@ -0,0 +1,30 @@
+package com.github.neemogu.bannerads.request;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * Impressions to export, every condition is optional.
+ */
+@Getter
+@Builder
+@EqualsAndHashCode
+public final class ImpressionExportFilter {
+    /**
+     * Earliest impression date, inclusive.
+     */
+    @Builder.Default
+    private Date from = null;
+    /**
+     * Latest impression date, exclusive.
+     */
+    @Builder.Default
+    private Date to = null;
+    @Builder.Default
+    private Integer bannerId = null;
+    @Builder.Default
+    private Integer categoryId = null;
+}
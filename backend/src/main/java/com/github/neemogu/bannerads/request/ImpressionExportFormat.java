@@ -0,0 +1,35 @@
+package com.github.neemogu.bannerads.request;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Formats of the impression export.
+ * NDJSON - one JSON object per line.
+ * CSV - comma separated values with a header line, fields are quoted when needed (RFC 4180).
+ */
+public enum ImpressionExportFormat {
+    NDJSON(new MediaType("application", "x-ndjson"), "ndjson"),
+    CSV(new MediaType("text", "csv"), "csv");
+
+    private final MediaType mediaType;
+    private final String fileExtension;
+
+    ImpressionExportFormat(MediaType mediaType, String fileExtension) {
+        this.mediaType = mediaType;
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * @return Media type of the exported data, the charset is always UTF-8.
+     */
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return File name extension of the exported data.
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+}
@@ -0,0 +1,205 @@
+package com.github.neemogu.bannerads.request;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.neemogu.bannerads.util.IpAddress;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes impressions from the request table to a stream as NDJSON or CSV.
+ * <p>
+ * Rows are read with a forward-only read-only cursor with the configured fetch size
+ * and written as soon as they are read, so memory usage does not depend on the number of exported rows.
+ * A database connection is held until the export is finished.
+ * On MySQL the statement streams rows one by one instead (fetch size {@link Integer#MIN_VALUE}),
+ * as Connector/J would otherwise read the whole result into memory and only honours other fetch sizes
+ * with {@code useCursorFetch=true}, which would change fetching of all statements sharing the data source.
+ */
+@Component
+public class ImpressionExporter {
+    private static final String selectSql = "select r.id, r.date, r.banner_id, b.category_id, ua.agent, r.ip_address " +
+            "from request r join banner b on b.id = r.banner_id " +
+            "left join user_agent ua on ua.id = r.user_agent_id";
+    private static final String csvHeader = "id,date,bannerId,categoryId,userAgent,ipAddress\n";
+    private static final int bufferSize = 64 * 1024;
+    private static final int mySqlStreamingFetchSize = Integer.MIN_VALUE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    @Value("${bannerads.export.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    @Autowired
+    public ImpressionExporter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Writes impressions satisfying a filter ordered by id. The stream is flushed but not closed.
+     *
+     * @param filter Impressions to export.
+     * @param format Output format.
+     * @param out Stream to write to.
+     * @return Number of exported impressions.
+     * @throws IOException If writing to the stream failed.
+     */
+    public long export(ImpressionExportFilter filter, ImpressionExportFormat format, OutputStream out)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferSize);
+        RowWriter rowWriter = format == ImpressionExportFormat.CSV
+                ? new CsvRowWriter(writer)
+                : new NdjsonRowWriter(jsonFactory.createGenerator(writer));
+        List<Object> arguments = new ArrayList<>();
+        String sql = getSql(filter, arguments);
+        long[] exported = new long[1];
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(isMySql(connection) ? mySqlStreamingFetchSize : fetchSize);
+                for (int i = 0; i < arguments.size(); ++i) {
+                    statement.setObject(i + 1, arguments.get(i));
+                }
+                return statement;
+            }, resultSet -> {
+                try {
+                    rowWriter.write(resultSet);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                ++exported[0];
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        rowWriter.finish();
+        writer.flush();
+        return exported[0];
+    }
+
+    private static String getSql(ImpressionExportFilter filter, List<Object> arguments) {
+        StringBuilder sql = new StringBuilder(selectSql).append(" where 1 = 1");
+        if (filter.getFrom() != null) {
+            sql.append(" and r.date >= ?");
+            arguments.add(new Timestamp(filter.getFrom().getTime()));
+        }
+        if (filter.getTo() != null) {
+            sql.append(" and r.date < ?");
+            arguments.add(new Timestamp(filter.getTo().getTime()));
+        }
+        if (filter.getBannerId() != null) {
+            sql.append(" and r.banner_id = ?");
+            arguments.add(filter.getBannerId());
+        }
+        if (filter.getCategoryId() != null) {
+            sql.append(" and b.category_id = ?");
+            arguments.add(filter.getCategoryId());
+        }
+        return sql.append(" order by r.id").toString();
+    }
+
+    private static boolean isMySql(Connection connection) throws SQLException {
+        return "MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+    }
+
+    private static String getIpAddress(ResultSet resultSet) throws SQLException {
+        byte[] bytes = resultSet.getBytes(6);
+        return bytes == null ? null : IpAddress.fromBytes(bytes).toString();
+    }
+
+    private interface RowWriter {
+        void write(ResultSet row) throws SQLException, IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator json;
+
+        private NdjsonRowWriter(JsonGenerator json) {
+            this.json = json;
+            // lines are separated explicitly to end the last one too
+            json.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ResultSet row) throws SQLException, IOException {
+            json.writeStartObject();
+            json.writeNumberField("id", row.getLong(1));
+            json.writeStringField("date", row.getTimestamp(2).toInstant().toString());
+            json.writeNumberField("bannerId", row.getInt(3));
+            json.writeNumberField("categoryId", row.getInt(4));
+            json.writeStringField("userAgent", row.getString(5));
+            json.writeStringField("ipAddress", getIpAddress(row));
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            json.flush();
+        }
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        private CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(csvHeader);
+        }
+
+        @Override
+        public void write(ResultSet row) throws SQLException, IOException {
+            writer.write(Long.toString(row.getLong(1)));
+            writer.write(',');
+            writer.write(row.getTimestamp(2).toInstant().toString());
+            writer.write(',');
+            writer.write(Integer.toString(row.getInt(3)));
+            writer.write(',');
+            writer.write(Integer.toString(row.getInt(4)));
+            writer.write(',');
+            writeField(row.getString(5));
+            writer.write(',');
+            writeField(getIpAddress(row));
+            writer.write('\n');
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                    && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.neemogu.bannerads.request;
+
+/**
+ * What to do with a served impression when the write-behind queue is full.
+ * DROP - discard the impression and count it as dropped.
+ * BLOCK - wait in the calling thread until the queue has free space (backpressure).
+ * WRITE_THROUGH - insert the impression synchronously in the calling thread.
+ */
+public enum ImpressionOverflowPolicy {
+    DROP, BLOCK, WRITE_THROUGH
+}
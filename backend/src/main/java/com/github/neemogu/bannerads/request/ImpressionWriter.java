@@ -0,0 +1,271 @@
+package com.github.neemogu.bannerads.request;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind queue of served impressions. Impressions are collected in a bounded queue
+ * and inserted into the request table by a background thread with JDBC batches,
+ * flushed when a batch is full or when the flush interval elapses.
+ * <p>
+ * Impressions which are not written yet are reported by {@link #getPendingBannerIds(Viewer)}
+ * so that banner selection does not serve them twice before they reach the database.
+ */
+@Component
+public class ImpressionWriter {
+    private static final Logger log = LoggerFactory.getLogger(ImpressionWriter.class);
+    private static final String insertSql =
+            "insert into request (banner_id, user_agent_id, ip_address, viewer_hash, date) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final ImpressionOverflowPolicy overflowPolicy;
+    private final BlockingQueue<Impression> queue;
+    private final Map<Long, Set<Integer>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger unwritten = new AtomicInteger();
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private volatile boolean running;
+    private Thread drainThread;
+
+    @Autowired
+    public ImpressionWriter(JdbcTemplate jdbcTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${bannerads.impressions.write-behind:true}") boolean enabled,
+                            @Value("${bannerads.impressions.queue-capacity:10000}") int queueCapacity,
+                            @Value("${bannerads.impressions.batch-size:500}") int batchSize,
+                            @Value("${bannerads.impressions.flush-interval-ms:200}") long flushIntervalMillis,
+                            @Value("${bannerads.impressions.overflow-policy:WRITE_THROUGH}")
+                                    ImpressionOverflowPolicy overflowPolicy) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writtenCounter = meterRegistry.counter("bannerads.impressions.written");
+        this.droppedCounter = meterRegistry.counter("bannerads.impressions.dropped");
+        this.failedCounter = meterRegistry.counter("bannerads.impressions.failed");
+        meterRegistry.gauge("bannerads.impressions.queue.depth", queue, Collection::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        drainThread = new Thread(this::drainLoop, "impression-writer");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Stops the background thread and writes all queued impressions.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (drainThread != null) {
+            drainThread.join(flushIntervalMillis + TimeUnit.SECONDS.toMillis(10));
+        }
+        flush();
+    }
+
+    /**
+     * Records an impression of a banner. Written asynchronously if write-behind is enabled,
+     * if the queue is full the configured {@link ImpressionOverflowPolicy} is applied.
+     *
+     * @param bannerId Served banner id.
+     * @param viewer Viewer the banner is served to.
+     */
+    public void write(Integer bannerId, Viewer viewer) {
+        Impression impression = new Impression(bannerId, viewer, System.currentTimeMillis());
+        if (!enabled) {
+            insert(List.of(impression));
+            return;
+        }
+        addPending(impression);
+        unwritten.incrementAndGet();
+        if (queue.offer(impression)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(impression);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    removePending(List.of(impression));
+                    droppedCounter.increment();
+                }
+                break;
+            case WRITE_THROUGH:
+                try {
+                    insert(List.of(impression));
+                } finally {
+                    removePending(List.of(impression));
+                }
+                break;
+            default:
+                removePending(List.of(impression));
+                droppedCounter.increment();
+        }
+    }
+
+    /**
+     * Returns ids of banners served to a viewer which are not written to the database yet.
+     * Viewers are told apart by their hash, so a hash collision may only make a banner skipped
+     * until its impression is written.
+     *
+     * @param viewer Viewer to look up.
+     * @return Set of banner ids, empty if there are no pending impressions.
+     */
+    public Set<Integer> getPendingBannerIds(Viewer viewer) {
+        return pending.getOrDefault(viewer.getHash(), Collections.emptySet());
+    }
+
+    /**
+     * @return Number of impressions waiting in the queue.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return Number of impressions discarded because the queue was full.
+     */
+    public long getDroppedCount() {
+        return (long) droppedCounter.count();
+    }
+
+    /**
+     * Synchronously writes all queued impressions and waits (up to the flush interval plus 10 seconds)
+     * for a batch being written by the background thread.
+     */
+    public void flush() throws InterruptedException {
+        List<Impression> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+        long deadline = System.currentTimeMillis() + flushIntervalMillis + TimeUnit.SECONDS.toMillis(10);
+        while (unwritten.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void drainLoop() {
+        List<Impression> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Impression first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Impression next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch, a failure is counted and logged and does not stop the background thread,
+     * whether it is a database error or a bad impression (e.g. an invalid viewer).
+     */
+    private void writeBatch(List<Impression> batch) {
+        try {
+            insert(batch);
+        } catch (RuntimeException e) {
+            failedCounter.increment(batch.size());
+            log.error("Failed to write {} impressions", batch.size(), e);
+        } finally {
+            removePending(batch);
+        }
+    }
+
+    private void insert(List<Impression> impressions) {
+        jdbcTemplate.batchUpdate(insertSql, impressions, batchSize, (ps, impression) -> {
+            Viewer viewer = impression.viewer;
+            ps.setInt(1, impression.bannerId);
+            if (viewer.getUserAgentId() == null) {
+                ps.setNull(2, Types.INTEGER);
+            } else {
+                ps.setInt(2, viewer.getUserAgentId());
+            }
+            ps.setBytes(3, viewer.getIpAddress().toBytes());
+            ps.setLong(4, viewer.getHash());
+            ps.setTimestamp(5, new Timestamp(impression.date));
+        });
+        writtenCounter.increment(impressions.size());
+    }
+
+    private void addPending(Impression impression) {
+        pending.compute(impression.viewer.getHash(), (key, ids) -> {
+            Set<Integer> result = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+            result.add(impression.bannerId);
+            return result;
+        });
+    }
+
+    private void removePending(List<Impression> impressions) {
+        unwritten.addAndGet(-impressions.size());
+        for (Impression impression : impressions) {
+            pending.computeIfPresent(impression.viewer.getHash(), (key, ids) -> {
+                ids.remove(impression.bannerId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    private static final class Impression {
+        private final Integer bannerId;
+        private final Viewer viewer;
+        private final long date;
+
+        private Impression(Integer bannerId, Viewer viewer, long date) {
+            this.bannerId = bannerId;
+            this.viewer = viewer;
+            this.date = date;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.banner.TargetingIndex;
+import com.github.neemogu.bannerads.util.AliasTable;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Offers a random banner first, each with probability proportional to its price.
+ * A banner is drawn in constant time from the {@link AliasTable} of the category,
+ * which the banner index builds together with the category list, see {@link TargetingIndex#getPriceTable()}.
+ */
+@Component
+public class PriceWeightedSelection implements BannerSelectionStrategy {
+    @Override
+    public SelectionStrategyType getType() {
+        return SelectionStrategyType.PRICE_WEIGHTED;
+    }
+
+    @Override
+    public int firstCandidate(Integer categoryId, TargetingIndex category) {
+        return category.getPriceTable().sample(ThreadLocalRandom.current());
+    }
+}
@@ -1,6 +1,8 @@
 package com.github.neemogu.bannerads.request;
 
 import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.IpAddressConverter;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,7 +14,9 @@ import java.util.Date;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "request")
+@Table(name = "request", indexes = {
+        @Index(name = "request_banner_viewer_date_idx", columnList = "banner_id, viewer_hash, date")
+})
 public final class Request {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -23,10 +27,13 @@ public final class Request {
     @JoinColumn(name = "banner_id")
     private Banner banner;
 
-    @Column(name = "user_agent")
-    private String userAgent;
-    @Column(name = "ip_address")
-    private String ipAddress;
+    @Column(name = "user_agent_id")
+    private Integer userAgentId;
+    @Convert(converter = IpAddressConverter.class)
+    @Column(name = "ip_address", length = 16)
+    private IpAddress ipAddress;
+    @Column(name = "viewer_hash")
+    private Long viewerHash;
     @Column(name = "date")
     private Date date;
 
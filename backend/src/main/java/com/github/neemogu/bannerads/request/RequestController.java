@@ -1,8 +1,13 @@
 package com.github.neemogu.bannerads.request;
 
+import com.github.neemogu.bannerads.banner.ContentEncoding;
+import com.github.neemogu.bannerads.banner.EncodedContent;
 import com.github.neemogu.bannerads.exceptions.BadRequestException;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -10,11 +15,15 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 @RestController
+@Timed(histogram = true, percentiles = {0.5, 0.95, 0.99})
 @RequestMapping("/bid")
 public class RequestController {
+    private static final MediaType contentType = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
     private final RequestService service;
 
     @Autowired
@@ -25,21 +34,22 @@ public class RequestController {
     /**
      * Endpoint to get content of next most priced banner for today.
      * Returns only unique banners for one IP and user agent for one day.
+     * Content is written as pre-encoded bytes, compressed if the client accepts gzip or deflate.
      *
      * @param categoryReqName Request parameter - category request name to get next banner from.
-     * @param request To get IP address and User-Agent header.
+     * @param request To get IP address, User-Agent and Accept-Encoding headers.
      * @return HTTP 400 with error message if no category with such request name exists.
      * HTTP 409 if no banners for such IP and user agent left today.
      * HTTP 200 with next banner content if ok.
      */
     @GetMapping
-    public ResponseEntity<String> getNextBanner(
+    public ResponseEntity<?> getNextBanner(
             @RequestParam(name = "category") String categoryReqName,
             HttpServletRequest request
     ) {
-        Optional<String> nextBannerContent;
+        Optional<EncodedContent> nextBannerContent;
         try {
-            nextBannerContent = service.getNextBannerContent(
+            nextBannerContent = service.getNextEncodedBannerContent(
                     request.getHeader("User-Agent"),
                     request.getRemoteAddr(),
                     categoryReqName);
@@ -47,7 +57,18 @@ public class RequestController {
             return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
         }
         return nextBannerContent
-                .map(ResponseEntity::ok)
+                .map(content -> contentResponse(content, request.getHeader(HttpHeaders.ACCEPT_ENCODING)))
                 .orElseGet(() -> new ResponseEntity<>(HttpStatus.NO_CONTENT));
     }
+
+    private static ResponseEntity<byte[]> contentResponse(EncodedContent content, String acceptEncoding) {
+        ContentEncoding encoding = content.negotiate(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (encoding != ContentEncoding.IDENTITY) {
+            response.header(HttpHeaders.CONTENT_ENCODING, encoding.getHeaderValue());
+        }
+        return response.body(content.getBytes(encoding));
+    }
 }
@@ -1,13 +1,41 @@
 package com.github.neemogu.bannerads.request;
 
 import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.util.IpAddress;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Date;
+import java.util.List;
 
 public interface RequestRepository extends JpaRepository<Request, Integer> {
     void deleteAllByDateBefore(Date date);
-    boolean existsByBannerAndIpAddressAndUserAgentAndDateAfter(
-            Banner banner, String ipAddress, String userAgent, Date date
+    /**
+     * Checks if a banner was requested by a viewer after given date.
+     * Looks up by (banner, viewer hash, date) index, IP address and user agent id are compared
+     * only for the found rows.
+     */
+    boolean existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+            Banner banner, Long viewerHash, Date date, IpAddress ipAddress, Integer userAgentId
     );
+
+    /**
+     * Returns ids of not deleted banners of a category which were not requested by given IP address
+     * and user agent after given date, ordered by price from highest to lowest.
+     * Only ids are selected, content is loaded for the chosen banner only.
+     */
+    @Query("select b.id from Banner b " +
+            "where b.category.id = :categoryId and b.deleted = false and not exists (" +
+            "select r.id from Request r where r.banner = b and r.viewerHash = :viewerHash " +
+            "and r.date > :date and r.ipAddress = :ipAddress " +
+            "and (r.userAgentId = :userAgentId or (r.userAgentId is null and :userAgentId is null))) " +
+            "order by b.price desc, b.id asc")
+    List<Integer> findNotRequestedBannerIds(@Param("categoryId") Integer categoryId,
+                                           @Param("ipAddress") IpAddress ipAddress,
+                                           @Param("userAgentId") Integer userAgentId,
+                                           @Param("viewerHash") Long viewerHash,
+                                           @Param("date") Date date,
+                                           Pageable pageable);
 }
@@ -0,0 +1,129 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.stats.DailyRollupJob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically removes requests older than the deduplication window (plus configured extra retention).
+ * Rows are deleted by small primary key ranges starting from the oldest one, each range in its own
+ * statement, so that locks are short. After every chunk the job sleeps at least as long as the chunk
+ * took (and not less than the configured pause) to leave the database to live traffic.
+ * A throttled run holds a scheduler thread, so the scheduler pool (spring.task.scheduling.pool.size)
+ * must have a thread for every scheduled job to keep the other jobs on time.
+ */
+@Component
+public class RequestRetentionJob {
+    private static final Logger log = LoggerFactory.getLogger(RequestRetentionJob.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DailyRollupJob rollupJob;
+    private final boolean enabled;
+    private final long extraRetentionMillis;
+    private final int chunkSize;
+    private final int maxChunksPerRun;
+    private final long pauseMillis;
+    private final Counter removedCounter;
+    private final Timer runTimer;
+    private final AtomicLong lastRunRemoved = new AtomicLong();
+    private final AtomicLong lastRunMillis = new AtomicLong();
+
+    @Autowired
+    public RequestRetentionJob(JdbcTemplate jdbcTemplate,
+                               DailyRollupJob rollupJob,
+                               MeterRegistry meterRegistry,
+                               @Value("${bannerads.retention.enabled:true}") boolean enabled,
+                               @Value("${bannerads.retention.extra-ms:0}") long extraRetentionMillis,
+                               @Value("${bannerads.retention.chunk-size:1000}") int chunkSize,
+                               @Value("${bannerads.retention.max-chunks-per-run:1000}") int maxChunksPerRun,
+                               @Value("${bannerads.retention.pause-ms:50}") long pauseMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rollupJob = rollupJob;
+        this.enabled = enabled;
+        this.extraRetentionMillis = extraRetentionMillis;
+        this.chunkSize = chunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.pauseMillis = pauseMillis;
+        this.removedCounter = meterRegistry.counter("bannerads.retention.rows.removed");
+        this.runTimer = meterRegistry.timer("bannerads.retention.run");
+        meterRegistry.gauge("bannerads.retention.last.run.rows", lastRunRemoved);
+        meterRegistry.gauge("bannerads.retention.last.run.millis", lastRunMillis);
+    }
+
+    @Scheduled(initialDelayString = "${bannerads.retention.interval-ms:3600000}",
+            fixedDelayString = "${bannerads.retention.interval-ms:3600000}")
+    public void scheduledPurge() throws InterruptedException {
+        if (enabled) {
+            purge();
+        }
+    }
+
+    /**
+     * Removes requests older than the retention period in chunks.
+     * If the daily rollup is enabled, only requests it has already aggregated are removed.
+     *
+     * @return Number of removed requests.
+     * @throws InterruptedException If interrupted while pausing between chunks.
+     */
+    public long purge() throws InterruptedException {
+        long start = System.nanoTime();
+        Timestamp cutoff = new Timestamp(
+                System.currentTimeMillis() - RequestService.millisInDay - extraRetentionMillis
+        );
+        int lastRemovableId = rollupJob.isEnabled() ? rollupJob.getWatermark() : Integer.MAX_VALUE;
+        long removed = 0;
+        try {
+            for (int chunk = 0; chunk < maxChunksPerRun; ++chunk) {
+                Integer oldestId = jdbcTemplate.queryForObject("select min(id) from request", Integer.class);
+                if (oldestId == null) {
+                    break;
+                }
+                long chunkStart = System.nanoTime();
+                int deleted = jdbcTemplate.update(
+                        "delete from request where id >= ? and id < ? and date < ? and id <= ?",
+                        oldestId, oldestId + chunkSize, cutoff, lastRemovableId
+                );
+                if (deleted == 0) {
+                    break;
+                }
+                removed += deleted;
+                removedCounter.increment(deleted);
+                long chunkMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - chunkStart);
+                Thread.sleep(Math.max(pauseMillis, chunkMillis));
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            runTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            lastRunRemoved.set(removed);
+            lastRunMillis.set(TimeUnit.NANOSECONDS.toMillis(elapsed));
+            log.info("Request retention removed {} rows in {} ms", removed, lastRunMillis.get());
+        }
+        return removed;
+    }
+
+    /**
+     * @return Number of requests removed by the last run.
+     */
+    public long getLastRunRemoved() {
+        return lastRunRemoved.get();
+    }
+
+    /**
+     * @return Duration of the last run in milliseconds.
+     */
+    public long getLastRunMillis() {
+        return lastRunMillis.get();
+    }
+}
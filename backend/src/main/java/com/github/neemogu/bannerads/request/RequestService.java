@@ -1,91 +1,266 @@
 package com.github.neemogu.bannerads.request;
 
 import com.github.neemogu.bannerads.banner.Banner;
-import com.github.neemogu.bannerads.banner.BannerFetchParameters;
-import com.github.neemogu.bannerads.banner.BannerService;
-import com.github.neemogu.bannerads.banner.BannerSortBy;
+import com.github.neemogu.bannerads.banner.BannerIndex;
+import com.github.neemogu.bannerads.banner.EncodedContent;
+import com.github.neemogu.bannerads.banner.TargetingIndex;
 import com.github.neemogu.bannerads.category.Category;
-import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.category.CategoryCache;
 import com.github.neemogu.bannerads.exceptions.BadRequestException;
-import com.github.neemogu.bannerads.util.SortDirection;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.ViewerHash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class RequestService {
     /**
-     * Page size while searching for a next banner
+     * Period in which a banner is shown only once for one IP address and user agent
      */
-    public static final int bannerPageSize = 5;
-
-    private static final long millisInDay = 86400000L;
+    static final long millisInDay = 86400000L;
     private final RequestRepository requestRepository;
-    private final BannerService bannerService;
-    private final CategoryRepository categoryRepository;
+    private final BannerIndex bannerIndex;
+    private final CategoryCache categoryCache;
+    private final ImpressionWriter impressionWriter;
+    private final UserAgentDictionary userAgentDictionary;
+    private final DeliveryCounters deliveryCounters;
+    private final FrequencyCaps frequencyCaps;
+    private final BannerSelectionStrategies selectionStrategies;
+    private final MeterRegistry meterRegistry;
+    private final Timer categoryLookupTimer;
+    private final Timer candidateFetchTimer;
+    private final Timer dedupCheckTimer;
+    private final Timer insertTimer;
+    @Value("${bannerads.bid.selection-mode:INDEX_SCAN}")
+    private BannerSelectionMode selectionMode = BannerSelectionMode.INDEX_SCAN;
 
     @Autowired
     public RequestService(RequestRepository requestRepository,
-                          BannerService bannerService,
-                          CategoryRepository categoryRepository) {
+                          BannerIndex bannerIndex,
+                          CategoryCache categoryCache,
+                          ImpressionWriter impressionWriter,
+                          UserAgentDictionary userAgentDictionary,
+                          DeliveryCounters deliveryCounters,
+                          FrequencyCaps frequencyCaps,
+                          BannerSelectionStrategies selectionStrategies,
+                          MeterRegistry meterRegistry) {
         this.requestRepository = requestRepository;
-        this.bannerService = bannerService;
-        this.categoryRepository = categoryRepository;
+        this.bannerIndex = bannerIndex;
+        this.categoryCache = categoryCache;
+        this.impressionWriter = impressionWriter;
+        this.userAgentDictionary = userAgentDictionary;
+        this.deliveryCounters = deliveryCounters;
+        this.frequencyCaps = frequencyCaps;
+        this.selectionStrategies = selectionStrategies;
+        this.meterRegistry = meterRegistry;
+        this.categoryLookupTimer = stepTimer(meterRegistry, "category_lookup");
+        this.candidateFetchTimer = stepTimer(meterRegistry, "candidate_fetch");
+        this.dedupCheckTimer = stepTimer(meterRegistry, "dedup_check");
+        this.insertTimer = stepTimer(meterRegistry, "insert");
+    }
+
+    /**
+     * Timer of a banner selection step. In anti-join mode the dedup check is a part of the candidate fetch query,
+     * in frequency sketch mode it is the frequency cap check.
+     */
+    private static Timer stepTimer(MeterRegistry meterRegistry, String step) {
+        return Timer.builder("bannerads.bid.step")
+                .tag("step", step)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
     }
 
     /**
      * Selects next banner of a given category for given user agent and IP address
-     * and returns it's content.
+     * and returns it's content. Selection is done according to the configured {@link BannerSelectionMode}.
+     * Banners which reached their daily impression cap or budget are skipped, see {@link DeliveryCounters},
+     * as well as banners not targeted at the user agent family or IP address, see {@link TargetingIndex}.
+     * Banners are offered in the order of the {@link BannerSelectionStrategy} of the category,
+     * in anti-join mode always from the highest price.
      *
      * @param userAgent User agent string.
      * @param ipAddress IP address string.
      * @param categoryReqName Category request name to choose next banner of.
      *
      * @return Banner content.
-     * @throws BadRequestException If category with such request name does not exist.
+     * @throws BadRequestException If category with such request name does not exist or IP address is invalid.
      */
 
     public Optional<String> getNextBannerContent(String userAgent,
                                                  String ipAddress,
                                                  String categoryReqName) throws BadRequestException {
-        Optional<Category> foundCategory = categoryRepository.findByReqName(categoryReqName);
+        return findNextBanner(userAgent, ipAddress, categoryReqName).map(Banner::getContent);
+    }
+
+    /**
+     * Same as {@link #getNextBannerContent(String, String, String)}, but returns content
+     * pre-encoded for writing to a response.
+     *
+     * @param userAgent User agent string.
+     * @param ipAddress IP address string.
+     * @param categoryReqName Category request name to choose next banner of.
+     *
+     * @return Encoded banner content.
+     * @throws BadRequestException If category with such request name does not exist or IP address is invalid.
+     */
+    public Optional<EncodedContent> getNextEncodedBannerContent(String userAgent,
+                                                                String ipAddress,
+                                                                String categoryReqName)
+            throws BadRequestException {
+        return findNextBanner(userAgent, ipAddress, categoryReqName).map(bannerIndex::getEncodedContent);
+    }
+
+    private Optional<Banner> findNextBanner(String userAgent,
+                                            String ipAddress,
+                                            String categoryReqName) throws BadRequestException {
+        long start = System.nanoTime();
+        Optional<Category> foundCategory = categoryCache.findByReqName(categoryReqName);
+        categoryLookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         if (foundCategory.isEmpty()) {
             throw new BadRequestException("Category with such request name does not exist");
         }
         final Date yesterday = new Date(System.currentTimeMillis() - millisInDay);
-        BannerFetchParameters bannerFetchParameters = BannerFetchParameters.builder()
-                .pageSize(bannerPageSize)
-                .sortBy(BannerSortBy.PRICE)
-                .sortDirection(SortDirection.DESC)
-                .categoryId(foundCategory.get().getId())
-                .build();
-        long bannerPagesCount = bannerService.getBannerListPageCount(bannerFetchParameters);
-        for (int i = 0; i < bannerPagesCount; ++i) {
-            bannerFetchParameters.setPage(i);
-            List<Banner> nextBanners = bannerService.getBannerList(bannerFetchParameters);
-            for (Banner b : nextBanners) {
-                if (!requestRepository.existsByBannerAndIpAddressAndUserAgentAndDateAfter(
-                        b, ipAddress, userAgent, yesterday
-                )) {
-                    addRequest(userAgent, ipAddress, b.getId());
-                    return Optional.of(b.getContent());
+        IpAddress parsedIpAddress;
+        try {
+            parsedIpAddress = IpAddress.parse(ipAddress);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid IP address");
+        }
+        Viewer viewer = new Viewer(userAgent, userAgentDictionary.getId(userAgent),
+                userAgentDictionary.getFamily(userAgent), parsedIpAddress, ViewerHash.of(parsedIpAddress, userAgent));
+        Optional<Banner> nextBanner;
+        if (selectionMode == BannerSelectionMode.FREQUENCY_SKETCH) {
+            nextBanner = findNextBannerByFrequencySketch(viewer, foundCategory.get());
+        } else {
+            // impressions which are served but still in the write-behind queue
+            Set<Integer> pendingBannerIds = impressionWriter.getPendingBannerIds(viewer);
+            nextBanner = selectionMode == BannerSelectionMode.ANTI_JOIN
+                    ? findNextBannerByAntiJoin(viewer, foundCategory.get(), yesterday, pendingBannerIds)
+                    : findNextBannerByIndexScan(viewer, foundCategory.get(), yesterday, pendingBannerIds);
+        }
+        if (nextBanner.isPresent()) {
+            start = System.nanoTime();
+            impressionWriter.write(nextBanner.get().getId(), viewer);
+            insertTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } else {
+            meterRegistry.counter("bannerads.bid.exhausted", "category", categoryReqName).increment();
+        }
+        return nextBanner;
+    }
+
+    private Optional<Banner> findNextBannerByIndexScan(Viewer viewer,
+                                                       Category category,
+                                                       Date after,
+                                                       Set<Integer> pendingBannerIds) {
+        long start = System.nanoTime();
+        TargetingIndex targeting = bannerIndex.getCategoryTargeting(category.getId());
+        List<Banner> candidates = targeting.getBanners();
+        TargetingIndex.EligibleBanners eligible = eligibleFor(targeting, viewer);
+        candidateFetchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        start = System.nanoTime();
+        int first = firstCandidate(category, targeting);
+        try {
+            for (int i = 0; i < candidates.size(); ++i) {
+                int position = (first + i) % candidates.size();
+                if (!eligible.contains(position)) {
+                    continue;
+                }
+                Banner b = candidates.get(position);
+                if (!pendingBannerIds.contains(b.getId())
+                        && deliveryCounters.hasCapacity(b)
+                        && !requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                                b, viewer.getHash(), after, viewer.getIpAddress(), viewer.getUserAgentId()
+                        )
+                        && deliveryCounters.tryReserve(b)) {
+                    return Optional.of(b);
                 }
             }
+            return Optional.empty();
+        } finally {
+            dedupCheckTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
-        return Optional.empty();
     }
 
-    private void addRequest(String userAgent, String ipAddress, Integer bannerId) {
-        Request newRequest = new Request();
-        newRequest.setId(null);
-        Banner banner = new Banner();
-        banner.setId(bannerId);
-        newRequest.setBanner(banner);
-        newRequest.setUserAgent(userAgent);
-        newRequest.setIpAddress(ipAddress);
-        requestRepository.save(newRequest);
+    private int firstCandidate(Category category, TargetingIndex targeting) {
+        return targeting.getBanners().isEmpty()
+                ? 0
+                : selectionStrategies.forCategory(category).firstCandidate(category.getId(), targeting);
+    }
+
+    private static TargetingIndex.EligibleBanners eligibleFor(TargetingIndex targeting, Viewer viewer) {
+        return targeting.eligibleFor(viewer.getUserAgentFamily(), viewer.getIpAddress());
+    }
+
+    private Optional<Banner> findNextBannerByFrequencySketch(Viewer viewer, Category category) {
+        long start = System.nanoTime();
+        TargetingIndex targeting = bannerIndex.getCategoryTargeting(category.getId());
+        List<Banner> candidates = targeting.getBanners();
+        TargetingIndex.EligibleBanners eligible = eligibleFor(targeting, viewer);
+        candidateFetchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        start = System.nanoTime();
+        try {
+            if (!frequencyCaps.allowsCategory(viewer, category.getId())) {
+                return Optional.empty();
+            }
+            int first = firstCandidate(category, targeting);
+            for (int i = 0; i < candidates.size(); ++i) {
+                int position = (first + i) % candidates.size();
+                if (!eligible.contains(position)) {
+                    continue;
+                }
+                Banner b = candidates.get(position);
+                if (deliveryCounters.hasCapacity(b)
+                        && frequencyCaps.allowsBanner(viewer, b.getId())
+                        && deliveryCounters.tryReserve(b)) {
+                    frequencyCaps.record(viewer, b.getId(), category.getId());
+                    return Optional.of(b);
+                }
+            }
+            return Optional.empty();
+        } finally {
+            dedupCheckTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Optional<Banner> findNextBannerByAntiJoin(Viewer viewer,
+                                                      Category category,
+                                                      Date after,
+                                                      Set<Integer> pendingBannerIds) {
+        TargetingIndex.EligibleBanners eligible =
+                eligibleFor(bannerIndex.getCategoryTargeting(category.getId()), viewer);
+        // each pending, capped or not targeted banner may take one place in the result, so one more row is enough
+        // unless a banner reaches its cap in the meantime, then the query is repeated with a larger limit
+        int skipped = pendingBannerIds.size() + eligible.getExcludedCount();
+        int limit = skipped + deliveryCounters.getExhaustedCount(category.getId()) + 1;
+        while (true) {
+            long start = System.nanoTime();
+            List<Integer> found = requestRepository.findNotRequestedBannerIds(
+                    category.getId(), viewer.getIpAddress(), viewer.getUserAgentId(), viewer.getHash(), after,
+                    PageRequest.of(0, limit)
+            );
+            candidateFetchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            Optional<Banner> nextBanner = found.stream()
+                    .filter(id -> !pendingBannerIds.contains(id) && eligible.containsBanner(id))
+                    .map(bannerIndex::findBanner)
+                    .flatMap(Optional::stream)
+                    .filter(deliveryCounters::tryReserve)
+                    .findFirst();
+            int nextLimit = skipped + deliveryCounters.getExhaustedCount(category.getId()) + 1;
+            if (nextBanner.isPresent() || found.size() < limit || nextLimit <= limit) {
+                return nextBanner;
+            }
+            limit = nextLimit;
+        }
     }
 }
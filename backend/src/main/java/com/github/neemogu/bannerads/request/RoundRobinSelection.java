@@ -0,0 +1,27 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.banner.TargetingIndex;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offers banners of a category first in turn, regardless of their prices.
+ */
+@Component
+public class RoundRobinSelection implements BannerSelectionStrategy {
+    private final Map<Integer, AtomicInteger> nextOfCategory = new ConcurrentHashMap<>();
+
+    @Override
+    public SelectionStrategyType getType() {
+        return SelectionStrategyType.ROUND_ROBIN;
+    }
+
+    @Override
+    public int firstCandidate(Integer categoryId, TargetingIndex category) {
+        int next = nextOfCategory.computeIfAbsent(categoryId, id -> new AtomicInteger()).getAndIncrement();
+        return Math.floorMod(next, category.getBanners().size());
+    }
+}
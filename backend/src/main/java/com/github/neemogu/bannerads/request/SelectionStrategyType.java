@@ -0,0 +1,11 @@
+package com.github.neemogu.bannerads.request;
+
+/**
+ * Order in which banners of a category are offered to a viewer, see {@link BannerSelectionStrategy}.
+ * STRICT_PRICE - from the highest price to the lowest.
+ * PRICE_WEIGHTED - starting from a random banner chosen with probability proportional to its price.
+ * ROUND_ROBIN - starting from the next banner after the one the previous request started from.
+ */
+public enum SelectionStrategyType {
+    STRICT_PRICE, PRICE_WEIGHTED, ROUND_ROBIN
+}
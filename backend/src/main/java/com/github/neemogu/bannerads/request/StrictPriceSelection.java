@@ -0,0 +1,20 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.banner.TargetingIndex;
+import org.springframework.stereotype.Component;
+
+/**
+ * Always offers the most priced banner first.
+ */
+@Component
+public class StrictPriceSelection implements BannerSelectionStrategy {
+    @Override
+    public SelectionStrategyType getType() {
+        return SelectionStrategyType.STRICT_PRICE;
+    }
+
+    @Override
+    public int firstCandidate(Integer categoryId, TargetingIndex category) {
+        return 0;
+    }
+}
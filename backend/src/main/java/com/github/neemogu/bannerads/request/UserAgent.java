@@ -0,0 +1,27 @@
+package com.github.neemogu.bannerads.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "user_agent")
+public final class UserAgent {
+    /**
+     * Longest stored user agent, longer ones are truncated
+     */
+    public static final int maxLength = 768;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Integer id;
+
+    @Column(name = "agent", length = maxLength, unique = true, nullable = false)
+    private String agent;
+}
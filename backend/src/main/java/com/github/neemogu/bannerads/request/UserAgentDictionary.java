@@ -0,0 +1,90 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.banner.UserAgentFamily;
+import com.github.neemogu.bannerads.util.BoundedCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Maps user agent strings to ids of the user agent dictionary table, so that requests store
+ * a small integer instead of the whole string. There are few distinct user agents,
+ * so the mapping is served from a bounded in-process cache and the table is queried only on a miss.
+ * Families of user agents are cached the same way, so a user agent string is classified once.
+ */
+@Component
+public class UserAgentDictionary {
+    private final UserAgentRepository userAgentRepository;
+    private final BoundedCache<String, Integer> cache;
+    private final BoundedCache<String, UserAgentFamily> families;
+
+    @Autowired
+    public UserAgentDictionary(UserAgentRepository userAgentRepository,
+                               @Value("${bannerads.user-agents.cache-size:10000}") int cacheSize) {
+        this.userAgentRepository = userAgentRepository;
+        this.cache = new BoundedCache<>(cacheSize);
+        this.families = new BoundedCache<>(cacheSize);
+    }
+
+    /**
+     * Returns dictionary id of a user agent, adding it to the dictionary if it is not there yet.
+     * User agents longer than {@link UserAgent#maxLength} are truncated.
+     *
+     * @param userAgent User agent string.
+     * @return User agent id or null if user agent is null.
+     */
+    public Integer getId(String userAgent) {
+        if (userAgent == null) {
+            return null;
+        }
+        String agent = truncated(userAgent);
+        Integer id = cache.get(agent);
+        if (id == null) {
+            id = findOrInsert(agent);
+            cache.put(agent, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns family of a user agent, see {@link UserAgentFamily#of(String)}.
+     * User agents longer than {@link UserAgent#maxLength} are classified by the stored prefix.
+     *
+     * @param userAgent User agent string.
+     * @return User agent family, OTHER if user agent is null.
+     */
+    public UserAgentFamily getFamily(String userAgent) {
+        if (userAgent == null) {
+            return UserAgentFamily.OTHER;
+        }
+        String agent = truncated(userAgent);
+        UserAgentFamily family = families.get(agent);
+        if (family == null) {
+            family = UserAgentFamily.of(agent);
+            families.put(agent, family);
+        }
+        return family;
+    }
+
+    private static String truncated(String userAgent) {
+        return userAgent.length() > UserAgent.maxLength
+                ? userAgent.substring(0, UserAgent.maxLength)
+                : userAgent;
+    }
+
+    private Integer findOrInsert(String agent) {
+        Optional<UserAgent> found = userAgentRepository.findByAgent(agent);
+        if (found.isPresent()) {
+            return found.get().getId();
+        }
+        try {
+            return userAgentRepository.saveAndFlush(new UserAgent(null, agent)).getId();
+        } catch (DataIntegrityViolationException e) {
+            // inserted concurrently by another thread or instance
+            return userAgentRepository.findByAgent(agent).orElseThrow(() -> e).getId();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.neemogu.bannerads.request;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface UserAgentRepository extends JpaRepository<UserAgent, Integer> {
+    Optional<UserAgent> findByAgent(String agent);
+}
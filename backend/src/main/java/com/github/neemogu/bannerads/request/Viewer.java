@@ -0,0 +1,17 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.banner.UserAgentFamily;
+import com.github.neemogu.bannerads.util.IpAddress;
+import lombok.Value;
+
+/**
+ * Identity of a banner viewer: user agent string with its dictionary id and family, IP address and their hash.
+ */
+@Value
+public class Viewer {
+    String userAgent;
+    Integer userAgentId;
+    UserAgentFamily userAgentFamily;
+    IpAddress ipAddress;
+    long hash;
+}
@@ -0,0 +1,78 @@
+package com.github.neemogu.bannerads.request;
+
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.ViewerHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills viewer hashes of requests saved before the viewer_hash column was added (migration V3).
+ * Deduplication looks requests up by viewer hash, so without it impressions served shortly before
+ * the upgrade would not count and their banners would be served to the same viewers again.
+ * <p>
+ * The hash is computed from the stored IP address and the dictionary user agent, which is truncated
+ * to {@link UserAgent#maxLength}, so rows of longer user agents may keep not matching until they age out.
+ * Rows are updated by primary key ranges of a configured size, each range in its own batch.
+ * Runs once when the application is ready, later requests are always saved with a hash.
+ */
+@Component
+public class ViewerHashBackfill {
+    private static final Logger log = LoggerFactory.getLogger(ViewerHashBackfill.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+
+    @Autowired
+    public ViewerHashBackfill(JdbcTemplate jdbcTemplate,
+                              @Value("${bannerads.viewer-hash-backfill.chunk-size:1000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        long start = System.currentTimeMillis();
+        long updated = backfill();
+        if (updated > 0) {
+            log.info("Viewer hashes of {} requests filled in {} ms", updated, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Fills viewer hashes of all requests which have none.
+     *
+     * @return Number of updated requests.
+     */
+    public long backfill() {
+        long updated = 0;
+        int lastId = 0;
+        while (true) {
+            Integer firstId = jdbcTemplate.queryForObject(
+                    "select min(id) from request where id > ? and viewer_hash is null", Integer.class, lastId);
+            if (firstId == null) {
+                return updated;
+            }
+            List<Object[]> rows = new ArrayList<>();
+            jdbcTemplate.query("select r.id, r.ip_address, u.agent from request r " +
+                            "left join user_agent u on u.id = r.user_agent_id " +
+                            "where r.id >= ? and r.id < ? and r.viewer_hash is null",
+                    resultSet -> {
+                        IpAddress ipAddress = IpAddress.fromBytes(resultSet.getBytes(2));
+                        rows.add(new Object[]{ViewerHash.of(ipAddress, resultSet.getString(3)), resultSet.getInt(1)});
+                    },
+                    firstId, firstId + chunkSize);
+            jdbcTemplate.batchUpdate("update request set viewer_hash = ? where id = ? and viewer_hash is null", rows);
+            updated += rows.size();
+            lastId = firstId + chunkSize - 1;
+        }
+    }
+}
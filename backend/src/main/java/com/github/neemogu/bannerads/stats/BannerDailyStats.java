@@ -0,0 +1,37 @@
+package com.github.neemogu.bannerads.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Impressions of a banner in a day (UTC), maintained by {@link DailyRollupJob}.
+ * Revenue is the sum of banner prices at the time the impressions were rolled up.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(BannerDailyStatsId.class)
+@Table(name = "banner_daily_stats", indexes = {
+        @Index(name = "banner_daily_stats_category_date_idx", columnList = "category_id, date")
+})
+public final class BannerDailyStats {
+    @Id
+    @Column(name = "date")
+    private LocalDate date;
+    @Id
+    @Column(name = "banner_id")
+    private Integer bannerId;
+    @Column(name = "category_id", nullable = false)
+    private Integer categoryId;
+    @Column(name = "impressions", nullable = false)
+    private Long impressions;
+    @Column(name = "unique_viewers", nullable = false)
+    private Long uniqueViewers;
+    @Column(name = "revenue", nullable = false)
+    private Double revenue;
+}
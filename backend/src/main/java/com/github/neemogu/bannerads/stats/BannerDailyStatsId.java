@@ -0,0 +1,19 @@
+package com.github.neemogu.bannerads.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Primary key of {@link BannerDailyStats}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BannerDailyStatsId implements Serializable {
+    private LocalDate date;
+    private Integer bannerId;
+}
@@ -0,0 +1,50 @@
+package com.github.neemogu.bannerads.stats;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface BannerDailyStatsRepository extends JpaRepository<BannerDailyStats, BannerDailyStatsId> {
+    /**
+     * Returns daily stats in a date range, optionally of one banner or category, ordered by date and banner id.
+     */
+    @Query("select s from BannerDailyStats s where s.date >= :from and s.date <= :to " +
+            "and (:bannerId is null or s.bannerId = :bannerId) " +
+            "and (:categoryId is null or s.categoryId = :categoryId) " +
+            "order by s.date, s.bannerId")
+    List<BannerDailyStats> findStats(@Param("from") LocalDate from,
+                                     @Param("to") LocalDate to,
+                                     @Param("bannerId") Integer bannerId,
+                                     @Param("categoryId") Integer categoryId);
+
+    /**
+     * Returns daily revenue of banners in a date range, ordered by date and banner id.
+     */
+    @Query("select new com.github.neemogu.bannerads.stats.RevenueReportRow(" +
+            "s.date, s.categoryId, s.bannerId, s.impressions, s.revenue) " +
+            "from BannerDailyStats s where s.date >= :from and s.date <= :to " +
+            "and (:bannerId is null or s.bannerId = :bannerId) " +
+            "and (:categoryId is null or s.categoryId = :categoryId) " +
+            "order by s.date, s.bannerId")
+    List<RevenueReportRow> findRevenueByBanner(@Param("from") LocalDate from,
+                                               @Param("to") LocalDate to,
+                                               @Param("bannerId") Integer bannerId,
+                                               @Param("categoryId") Integer categoryId);
+
+    /**
+     * Returns daily revenue of categories in a date range, ordered by date and category id.
+     */
+    @Query("select new com.github.neemogu.bannerads.stats.RevenueReportRow(" +
+            "s.date, s.categoryId, sum(s.impressions), sum(s.revenue)) " +
+            "from BannerDailyStats s where s.date >= :from and s.date <= :to " +
+            "and (:bannerId is null or s.bannerId = :bannerId) " +
+            "and (:categoryId is null or s.categoryId = :categoryId) " +
+            "group by s.date, s.categoryId order by s.date, s.categoryId")
+    List<RevenueReportRow> findRevenueByCategory(@Param("from") LocalDate from,
+                                                 @Param("to") LocalDate to,
+                                                 @Param("bannerId") Integer bannerId,
+                                                 @Param("categoryId") Integer categoryId);
+}
@@ -0,0 +1,30 @@
+package com.github.neemogu.bannerads.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Viewer counted in {@link BannerDailyStats#getUniqueViewers()} of a banner and day (UTC),
+ * kept by {@link DailyRollupJob} while requests of the day may still be rolled up.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(BannerDailyViewerId.class)
+@Table(name = "banner_daily_viewer")
+public final class BannerDailyViewer {
+    @Id
+    @Column(name = "date")
+    private LocalDate date;
+    @Id
+    @Column(name = "banner_id")
+    private Integer bannerId;
+    @Id
+    @Column(name = "viewer_hash")
+    private Long viewerHash;
+}
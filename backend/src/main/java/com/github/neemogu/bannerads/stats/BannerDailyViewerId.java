@@ -0,0 +1,20 @@
+package com.github.neemogu.bannerads.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Primary key of {@link BannerDailyViewer}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BannerDailyViewerId implements Serializable {
+    private LocalDate date;
+    private Integer bannerId;
+    private Long viewerHash;
+}
@@ -0,0 +1,35 @@
+package com.github.neemogu.bannerads.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Impressions of a banner in an hour, maintained by {@link DailyRollupJob} together with {@link BannerDailyStats}.
+ * The hour start is a UTC date and time. Unique viewers are counted per day only.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(BannerHourlyStatsId.class)
+@Table(name = "banner_hourly_stats", indexes = {
+        @Index(name = "banner_hourly_stats_category_hour_idx", columnList = "category_id, hour_start")
+})
+public final class BannerHourlyStats {
+    @Id
+    @Column(name = "hour_start")
+    private LocalDateTime hourStart;
+    @Id
+    @Column(name = "banner_id")
+    private Integer bannerId;
+    @Column(name = "category_id", nullable = false)
+    private Integer categoryId;
+    @Column(name = "impressions", nullable = false)
+    private Long impressions;
+    @Column(name = "revenue", nullable = false)
+    private Double revenue;
+}
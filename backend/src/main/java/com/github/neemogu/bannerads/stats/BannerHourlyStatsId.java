@@ -0,0 +1,19 @@
+package com.github.neemogu.bannerads.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Primary key of {@link BannerHourlyStats}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BannerHourlyStatsId implements Serializable {
+    private LocalDateTime hourStart;
+    private Integer bannerId;
+}
@@ -0,0 +1,38 @@
+package com.github.neemogu.bannerads.stats;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface BannerHourlyStatsRepository extends JpaRepository<BannerHourlyStats, BannerHourlyStatsId> {
+    /**
+     * Returns hourly revenue of banners in a time range, ordered by hour and banner id.
+     */
+    @Query("select new com.github.neemogu.bannerads.stats.RevenueReportRow(" +
+            "s.hourStart, s.categoryId, s.bannerId, s.impressions, s.revenue) " +
+            "from BannerHourlyStats s where s.hourStart >= :from and s.hourStart < :to " +
+            "and (:bannerId is null or s.bannerId = :bannerId) " +
+            "and (:categoryId is null or s.categoryId = :categoryId) " +
+            "order by s.hourStart, s.bannerId")
+    List<RevenueReportRow> findRevenueByBanner(@Param("from") LocalDateTime from,
+                                               @Param("to") LocalDateTime to,
+                                               @Param("bannerId") Integer bannerId,
+                                               @Param("categoryId") Integer categoryId);
+
+    /**
+     * Returns hourly revenue of categories in a time range, ordered by hour and category id.
+     */
+    @Query("select new com.github.neemogu.bannerads.stats.RevenueReportRow(" +
+            "s.hourStart, s.categoryId, sum(s.impressions), sum(s.revenue)) " +
+            "from BannerHourlyStats s where s.hourStart >= :from and s.hourStart < :to " +
+            "and (:bannerId is null or s.bannerId = :bannerId) " +
+            "and (:categoryId is null or s.categoryId = :categoryId) " +
+            "group by s.hourStart, s.categoryId order by s.hourStart, s.categoryId")
+    List<RevenueReportRow> findRevenueByCategory(@Param("from") LocalDateTime from,
+                                                 @Param("to") LocalDateTime to,
+                                                 @Param("bannerId") Integer bannerId,
+                                                 @Param("categoryId") Integer categoryId);
+}
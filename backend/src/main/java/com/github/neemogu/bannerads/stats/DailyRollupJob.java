@@ -0,0 +1,294 @@
+package com.github.neemogu.bannerads.stats;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Incrementally aggregates the request table into {@link BannerDailyStats} and {@link BannerHourlyStats}.
+ * <p>
+ * Requests are read in id order after a watermark (the id of the last aggregated request),
+ * each chunk is added to the stats and the watermark is advanced in one transaction,
+ * so every request is counted once. Requests younger than the configured lag are left
+ * for the next run, as impressions are inserted by the write-behind queue some time after they are served.
+ * <p>
+ * A viewer is counted as unique for a banner and day if its hash is not yet among the {@link BannerDailyViewer}s
+ * of the banner and day. Only the viewers of a chunk are looked up, by primary key, so a chunk costs the same
+ * however many requests of the day are already aggregated. Counted viewers are kept apart from requests,
+ * which may be purged once aggregated, see {@link com.github.neemogu.bannerads.request.RequestRetentionJob}.
+ * After each run viewers are dropped for days before the day preceding the newest counted one.
+ */
+@Component
+public class DailyRollupJob {
+    static final String watermarkName = "banner_daily_stats";
+    private static final Logger log = LoggerFactory.getLogger(DailyRollupJob.class);
+    private static final int viewerLookupBatchSize = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int maxChunksPerRun;
+    private final long lagMillis;
+    private final Counter rolledUpCounter;
+    private final Timer runTimer;
+    private final AtomicLong lastRunRolledUp = new AtomicLong();
+
+    @Autowired
+    public DailyRollupJob(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${bannerads.rollup.enabled:true}") boolean enabled,
+                          @Value("${bannerads.rollup.chunk-size:10000}") int chunkSize,
+                          @Value("${bannerads.rollup.max-chunks-per-run:100}") int maxChunksPerRun,
+                          @Value("${bannerads.rollup.lag-ms:60000}") long lagMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.lagMillis = lagMillis;
+        this.rolledUpCounter = meterRegistry.counter("bannerads.rollup.rows");
+        this.runTimer = meterRegistry.timer("bannerads.rollup.run");
+        meterRegistry.gauge("bannerads.rollup.last.run.rows", lastRunRolledUp);
+    }
+
+    @Scheduled(initialDelayString = "${bannerads.rollup.interval-ms:60000}",
+            fixedDelayString = "${bannerads.rollup.interval-ms:60000}")
+    public void scheduledRollUp() {
+        if (enabled) {
+            rollUp();
+        }
+    }
+
+    /**
+     * Aggregates requests after the watermark in chunks.
+     *
+     * @return Number of aggregated requests.
+     */
+    public long rollUp() {
+        long start = System.nanoTime();
+        long rolledUp = 0;
+        try {
+            for (int chunk = 0; chunk < maxChunksPerRun; ++chunk) {
+                Integer rows = transactionTemplate.execute(status -> rollUpChunk());
+                if (rows == null || rows == 0) {
+                    break;
+                }
+                rolledUp += rows;
+                rolledUpCounter.increment(rows);
+            }
+            if (rolledUp > 0) {
+                pruneViewers();
+            }
+        } finally {
+            runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            lastRunRolledUp.set(rolledUp);
+            log.info("Daily rollup aggregated {} requests", rolledUp);
+        }
+        return rolledUp;
+    }
+
+    /**
+     * @return True if the rollup runs on schedule.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Id of the last aggregated request, 0 if nothing is aggregated yet.
+     */
+    public int getWatermark() {
+        List<Integer> found = jdbcTemplate.queryForList(
+                "select last_id from rollup_watermark where name = ?", Integer.class, watermarkName);
+        return found.isEmpty() ? 0 : found.get(0);
+    }
+
+    private int rollUpChunk() {
+        List<Integer> found = jdbcTemplate.queryForList(
+                "select last_id from rollup_watermark where name = ?", Integer.class, watermarkName);
+        if (found.isEmpty()) {
+            jdbcTemplate.update("insert into rollup_watermark (name, last_id) values (?, 0)", watermarkName);
+        }
+        int watermark = found.isEmpty() ? 0 : found.get(0);
+        long settled = System.currentTimeMillis() - lagMillis;
+
+        Map<List<Object>, DayStats> byBannerAndDate = new LinkedHashMap<>();
+        Map<List<Object>, HourStats> byBannerAndHour = new LinkedHashMap<>();
+        int[] lastId = {watermark};
+        int[] rows = {0};
+        boolean[] unsettled = {false};
+        jdbcTemplate.query(
+                "select r.id, r.banner_id, b.category_id, r.viewer_hash, r.date, b.price " +
+                        "from request r join banner b on b.id = r.banner_id " +
+                        "where r.id > ? order by r.id limit ?",
+                resultSet -> {
+                    Timestamp date = resultSet.getTimestamp(5);
+                    // requests with greater ids may still be in flight
+                    unsettled[0] |= date.getTime() >= settled;
+                    if (unsettled[0]) {
+                        return;
+                    }
+                    lastId[0] = resultSet.getInt(1);
+                    ++rows[0];
+                    LocalDateTime time = date.toInstant().atOffset(ZoneOffset.UTC).toLocalDateTime();
+                    LocalDate day = time.toLocalDate();
+                    LocalDateTime hour = time.truncatedTo(ChronoUnit.HOURS);
+                    int bannerId = resultSet.getInt(2);
+                    int categoryId = resultSet.getInt(3);
+                    double price = resultSet.getDouble(6);
+                    HourStats hourStats = byBannerAndHour.computeIfAbsent(Arrays.asList(hour, bannerId),
+                            key -> new HourStats(hour, bannerId));
+                    hourStats.categoryId = categoryId;
+                    ++hourStats.impressions;
+                    hourStats.revenue += price;
+                    DayStats stats = byBannerAndDate.computeIfAbsent(Arrays.asList(day, bannerId),
+                            key -> new DayStats(day, bannerId));
+                    stats.categoryId = categoryId;
+                    ++stats.impressions;
+                    stats.revenue += price;
+                    long viewerHash = resultSet.getLong(4);
+                    if (!resultSet.wasNull()) {
+                        stats.viewers.add(viewerHash);
+                    }
+                },
+                watermark, chunkSize
+        );
+        if (rows[0] == 0) {
+            return 0;
+        }
+        for (DayStats stats : byBannerAndDate.values()) {
+            add(stats);
+        }
+        for (HourStats stats : byBannerAndHour.values()) {
+            add(stats);
+        }
+        int advanced = jdbcTemplate.update("update rollup_watermark set last_id = ? where name = ? and last_id = ?",
+                lastId[0], watermarkName, watermark);
+        if (advanced == 0) {
+            throw new IllegalStateException("Rollup watermark was advanced concurrently");
+        }
+        return rows[0];
+    }
+
+    private void add(DayStats stats) {
+        java.sql.Date date = java.sql.Date.valueOf(stats.date);
+        if (!stats.viewers.isEmpty()) {
+            removeCountedViewers(stats, date);
+            List<Object[]> newViewers = new ArrayList<>(stats.viewers.size());
+            for (Long viewerHash : stats.viewers) {
+                newViewers.add(new Object[]{date, stats.bannerId, viewerHash});
+            }
+            jdbcTemplate.batchUpdate("insert into banner_daily_viewer (date, banner_id, viewer_hash) values (?, ?, ?)",
+                    newViewers);
+        }
+        int updated = jdbcTemplate.update(
+                "update banner_daily_stats set category_id = ?, impressions = impressions + ?, " +
+                        "unique_viewers = unique_viewers + ?, revenue = revenue + ? where date = ? and banner_id = ?",
+                stats.categoryId, stats.impressions, stats.viewers.size(), stats.revenue, date, stats.bannerId);
+        if (updated == 0) {
+            jdbcTemplate.update("insert into banner_daily_stats " +
+                            "(date, banner_id, category_id, impressions, unique_viewers, revenue) " +
+                            "values (?, ?, ?, ?, ?, ?)",
+                    date, stats.bannerId, stats.categoryId, stats.impressions, stats.viewers.size(), stats.revenue);
+        }
+    }
+
+    /**
+     * Removes viewers of a chunk which are already counted for the banner and day.
+     */
+    private void removeCountedViewers(DayStats stats, java.sql.Date date) {
+        List<Long> viewers = new ArrayList<>(stats.viewers);
+        for (int from = 0; from < viewers.size(); from += viewerLookupBatchSize) {
+            List<Long> batch = viewers.subList(from, Math.min(from + viewerLookupBatchSize, viewers.size()));
+            List<Object> args = new ArrayList<>(batch.size() + 2);
+            args.add(date);
+            args.add(stats.bannerId);
+            args.addAll(batch);
+            jdbcTemplate.query("select viewer_hash from banner_daily_viewer where date = ? and banner_id = ? " +
+                            "and viewer_hash in (" + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")",
+                    resultSet -> {
+                        stats.viewers.remove(resultSet.getLong(1));
+                    },
+                    args.toArray());
+        }
+    }
+
+    /**
+     * Drops counted viewers of days which no longer get requests, keeping the day before the newest one
+     * for requests written late around midnight.
+     */
+    private void pruneViewers() {
+        java.sql.Date newest = jdbcTemplate.queryForObject("select max(date) from banner_daily_viewer",
+                java.sql.Date.class);
+        if (newest == null) {
+            return;
+        }
+        java.sql.Date before = java.sql.Date.valueOf(newest.toLocalDate().minusDays(1));
+        for (int chunk = 0; chunk < maxChunksPerRun; ++chunk) {
+            if (jdbcTemplate.update("delete from banner_daily_viewer where date < ? limit ?", before, chunkSize)
+                    < chunkSize) {
+                break;
+            }
+        }
+    }
+
+    private void add(HourStats stats) {
+        Timestamp hour = Timestamp.valueOf(stats.hour);
+        int updated = jdbcTemplate.update(
+                "update banner_hourly_stats set category_id = ?, impressions = impressions + ?, " +
+                        "revenue = revenue + ? where hour_start = ? and banner_id = ?",
+                stats.categoryId, stats.impressions, stats.revenue, hour, stats.bannerId);
+        if (updated == 0) {
+            jdbcTemplate.update("insert into banner_hourly_stats " +
+                            "(hour_start, banner_id, category_id, impressions, revenue) values (?, ?, ?, ?, ?)",
+                    hour, stats.bannerId, stats.categoryId, stats.impressions, stats.revenue);
+        }
+    }
+
+    private static final class HourStats {
+        private final LocalDateTime hour;
+        private final int bannerId;
+        private int categoryId;
+        private long impressions;
+        private double revenue;
+
+        private HourStats(LocalDateTime hour, int bannerId) {
+            this.hour = hour;
+            this.bannerId = bannerId;
+        }
+    }
+
+    private static final class DayStats {
+        private final LocalDate date;
+        private final int bannerId;
+        private int categoryId;
+        private long impressions;
+        private double revenue;
+        private final Set<Long> viewers = new HashSet<>();
+
+        private DayStats(LocalDate date, int bannerId) {
+            this.date = date;
+            this.bannerId = bannerId;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.github.neemogu.bannerads.stats;
+
+/**
+ * Length of a period of a revenue report row, periods start at UTC hour or day boundaries.
+ */
+public enum ReportGranularity {
+    HOUR, DAY
+}
@@ -0,0 +1,8 @@
+package com.github.neemogu.bannerads.stats;
+
+/**
+ * Whether a revenue report has a row per banner or per category in each period.
+ */
+public enum ReportGrouping {
+    BANNER, CATEGORY
+}
@@ -0,0 +1,62 @@
+package com.github.neemogu.bannerads.stats;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Impressions and revenue of a banner or a whole category in an hour or a day.
+ */
+@Value
+public class RevenueReportRow {
+    Instant periodStart;
+    Integer categoryId;
+    /**
+     * Null if the report is grouped by category.
+     */
+    Integer bannerId;
+    long impressions;
+    double revenue;
+
+    public RevenueReportRow(Instant periodStart, Integer categoryId, Integer bannerId, long impressions,
+                            double revenue) {
+        this.periodStart = periodStart;
+        this.categoryId = categoryId;
+        this.bannerId = bannerId;
+        this.impressions = impressions;
+        this.revenue = revenue;
+    }
+
+    /**
+     * Constructor for JPQL constructor expressions over hourly stats grouped by banner.
+     */
+    public RevenueReportRow(LocalDateTime hourStart, Integer categoryId, Integer bannerId, Long impressions,
+                            Double revenue) {
+        this(hourStart.toInstant(ZoneOffset.UTC), categoryId, bannerId, impressions, revenue);
+    }
+
+    /**
+     * Constructor for JPQL constructor expressions over hourly stats grouped by category.
+     */
+    public RevenueReportRow(LocalDateTime hourStart, Integer categoryId, Long impressions, Double revenue) {
+        this(hourStart, categoryId, null, impressions, revenue);
+    }
+
+    /**
+     * Constructor for JPQL constructor expressions over daily stats grouped by banner.
+     */
+    public RevenueReportRow(LocalDate date, Integer categoryId, Integer bannerId, Long impressions,
+                            Double revenue) {
+        this(date.atStartOfDay(ZoneOffset.UTC).toInstant(), categoryId, bannerId, impressions, revenue);
+    }
+
+    /**
+     * Constructor for JPQL constructor expressions over daily stats grouped by category.
+     */
+    public RevenueReportRow(LocalDate date, Integer categoryId, Long impressions, Double revenue) {
+        this(date, categoryId, null, impressions, revenue);
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.neemogu.bannerads.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Id of the last request aggregated by a rollup.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "rollup_watermark")
+public final class RollupWatermark {
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+    @Column(name = "last_id", nullable = false)
+    private Integer lastId;
+}
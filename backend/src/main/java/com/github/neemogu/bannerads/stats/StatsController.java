@@ -0,0 +1,86 @@
+package com.github.neemogu.bannerads.stats;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+    private final StatsService service;
+
+    @Autowired
+    public StatsController(StatsService service) {
+        this.service = service;
+    }
+
+    /**
+     * Maximum number of days in one stats request
+     */
+    public final static int maxDays = 366;
+
+    /**
+     * Maximum number of days in one hourly report request
+     */
+    public final static int maxHourlyDays = 31;
+
+    /**
+     * Returns impressions, unique viewers and revenue of banners per day.
+     *
+     * @param from First day (UTC, ISO date), inclusive.
+     * @param to Last day (UTC, ISO date), inclusive.
+     * @param bannerId Banner id to return stats of.
+     * @param categoryId Category id to return stats of banners of.
+     * @return HTTP 400 if the date range is empty or too long.
+     * HTTP 200 with stats ordered by date and banner id if ok.
+     */
+    @GetMapping("/daily")
+    public ResponseEntity<List<BannerDailyStats>> getDailyStats(
+            @RequestParam(name = "from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "bannerId", required = false) Integer bannerId,
+            @RequestParam(name = "categoryId", required = false) Integer categoryId
+    ) {
+        if (from.isAfter(to) || ChronoUnit.DAYS.between(from, to) >= maxDays) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return ResponseEntity.ok(service.getDailyStats(from, to, bannerId, categoryId));
+    }
+
+    /**
+     * Returns impressions and revenue (banner price times impressions) per banner or category and period.
+     *
+     * @param from First day (UTC, ISO date), inclusive.
+     * @param to Last day (UTC, ISO date), inclusive.
+     * @param granularity Period of a row, hour or day.
+     * @param groupBy Whether a row is per banner or per category.
+     * @param bannerId Banner id to return revenue of.
+     * @param categoryId Category id to return revenue of.
+     * @return HTTP 400 if the date range is empty or too long for the granularity.
+     * HTTP 200 with rows ordered by period start and banner or category id if ok.
+     */
+    @GetMapping("/revenue")
+    public ResponseEntity<List<RevenueReportRow>> getRevenueReport(
+            @RequestParam(name = "from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "granularity", defaultValue = "DAY") ReportGranularity granularity,
+            @RequestParam(name = "groupBy", defaultValue = "BANNER") ReportGrouping groupBy,
+            @RequestParam(name = "bannerId", required = false) Integer bannerId,
+            @RequestParam(name = "categoryId", required = false) Integer categoryId
+    ) {
+        int limit = granularity == ReportGranularity.HOUR ? maxHourlyDays : maxDays;
+        if (from.isAfter(to) || ChronoUnit.DAYS.between(from, to) >= limit) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return ResponseEntity.ok(service.getRevenueReport(from, to, granularity, groupBy, bannerId, categoryId));
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.neemogu.bannerads.stats;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Service
+public class StatsService {
+    private final BannerDailyStatsRepository dailyStatsRepository;
+    private final BannerHourlyStatsRepository hourlyStatsRepository;
+
+    @Autowired
+    public StatsService(BannerDailyStatsRepository dailyStatsRepository,
+                        BannerHourlyStatsRepository hourlyStatsRepository) {
+        this.dailyStatsRepository = dailyStatsRepository;
+        this.hourlyStatsRepository = hourlyStatsRepository;
+    }
+
+    /**
+     * Returns daily impression stats of banners from the rollup table.
+     * Requests younger than the rollup lag and interval are not counted yet.
+     *
+     * @param from First day (UTC), inclusive.
+     * @param to Last day (UTC), inclusive.
+     * @param bannerId Banner id to return stats of, all banners if null.
+     * @param categoryId Category id to return stats of banners of, all categories if null.
+     * @return Stats ordered by date and banner id.
+     */
+    public List<BannerDailyStats> getDailyStats(LocalDate from, LocalDate to, Integer bannerId, Integer categoryId) {
+        return dailyStatsRepository.findStats(from, to, bannerId, categoryId);
+    }
+
+    /**
+     * Returns impressions and revenue of banners or categories per hour or day from the rollup tables,
+     * so the cost depends on the number of periods and banners reported, not on the number of requests.
+     *
+     * @param from First day (UTC), inclusive.
+     * @param to Last day (UTC), inclusive.
+     * @param granularity Period of a row.
+     * @param grouping Whether a row is per banner or per category.
+     * @param bannerId Banner id to return revenue of, all banners if null.
+     * @param categoryId Category id to return revenue of, all categories if null.
+     * @return Rows ordered by period start and banner or category id.
+     */
+    public List<RevenueReportRow> getRevenueReport(LocalDate from, LocalDate to,
+                                                   ReportGranularity granularity, ReportGrouping grouping,
+                                                   Integer bannerId, Integer categoryId) {
+        if (granularity == ReportGranularity.DAY) {
+            return grouping == ReportGrouping.BANNER
+                    ? dailyStatsRepository.findRevenueByBanner(from, to, bannerId, categoryId)
+                    : dailyStatsRepository.findRevenueByCategory(from, to, bannerId, categoryId);
+        }
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+        return grouping == ReportGrouping.BANNER
+                ? hourlyStatsRepository.findRevenueByBanner(start, end, bannerId, categoryId)
+                : hourlyStatsRepository.findRevenueByCategory(start, end, bannerId, categoryId);
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.neemogu.bannerads.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+/**
+ * Walker's alias table for drawing an index with probability proportional to its weight in constant time.
+ * Built in linear time (Vose's method): every slot holds a probability of its own index and an alias index
+ * taking the rest of the slot. Immutable, may be shared between threads.
+ */
+public final class AliasTable {
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights Not negative weights, at least one. If all of them are zero, indexes are drawn uniformly.
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("Alias table needs at least one weight");
+        }
+        double sum = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) {
+                throw new IllegalArgumentException("Weights must not be negative");
+            }
+            sum += weight;
+        }
+        probability = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; ++i) {
+            scaled[i] = sum > 0 ? weights[i] * n / sum : 1.0;
+            (scaled[i] < 1.0 ? small : large).push(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            (scaled[more] < 1.0 ? small : large).push(more);
+        }
+        // what is left is 1.0 up to rounding errors
+        while (!large.isEmpty()) {
+            probability[large.pop()] = 1.0;
+        }
+        while (!small.isEmpty()) {
+            probability[small.pop()] = 1.0;
+        }
+    }
+
+    /**
+     * @param random Source of randomness.
+     * @return Index drawn with probability proportional to its weight.
+     */
+    public int sample(Random random) {
+        int slot = random.nextInt(probability.length);
+        return random.nextDouble() < probability[slot] ? slot : alias[slot];
+    }
+
+    /**
+     * @return Number of weights.
+     */
+    public int size() {
+        return probability.length;
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.neemogu.bannerads.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe cache holding at most a fixed number of entries. Reads do not lock,
+ * when an insertion exceeds the capacity arbitrary entries are evicted.
+ * Suitable for small hot key sets, where any evicted entry is cheap to load again.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public final class BoundedCache<K, V> {
+    private final int capacity;
+    private final Map<K, V> map = new ConcurrentHashMap<>();
+
+    public BoundedCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param key Key to look up.
+     * @return Cached value or null if it is not cached.
+     */
+    public V get(K key) {
+        return map.get(key);
+    }
+
+    /**
+     * Caches a value, evicting other entries if the cache is full.
+     *
+     * @param key Key, not null.
+     * @param value Value, not null.
+     */
+    public void put(K key, V value) {
+        map.put(key, value);
+        if (map.size() > capacity) {
+            Iterator<K> keys = map.keySet().iterator();
+            while (map.size() > capacity && keys.hasNext()) {
+                K evicted = keys.next();
+                if (!evicted.equals(key)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    public void remove(K key) {
+        map.remove(key);
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+}
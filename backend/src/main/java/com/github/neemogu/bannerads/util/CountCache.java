@@ -0,0 +1,68 @@
+package com.github.neemogu.bannerads.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of row counts of filtered listings, invalidated as a whole on every write to the listed table.
+ * A count loaded concurrently with an invalidation is not cached, so that it can not outlive the write.
+ *
+ * @param <K> Filter type.
+ */
+public final class CountCache<K> {
+    private final BoundedCache<K, Long> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    public CountCache(int capacity) {
+        this.cache = new BoundedCache<>(capacity);
+    }
+
+    /**
+     * Returns a cached count or loads and caches it.
+     *
+     * @param filter Listing filter.
+     * @param loader Counts rows satisfying the filter.
+     * @return Number of rows.
+     */
+    public long get(K filter, LongSupplier loader) {
+        Long cached = cache.get(filter);
+        if (cached != null) {
+            return cached;
+        }
+        long loadGeneration = generation.get();
+        long count = loader.getAsLong();
+        put(filter, count, loadGeneration);
+        return count;
+    }
+
+    /**
+     * Caches a count computed elsewhere, e.g. along with a page of the listing.
+     *
+     * @param filter Listing filter.
+     * @param count Number of rows.
+     * @param loadGeneration Value of {@link #getGeneration()} taken before the count was queried.
+     */
+    public void put(K filter, long count, long loadGeneration) {
+        if (generation.get() == loadGeneration) {
+            cache.put(filter, count);
+            if (generation.get() != loadGeneration) {
+                cache.remove(filter);
+            }
+        }
+    }
+
+    /**
+     * @return Current generation, incremented by every invalidation.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Removes all cached counts.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.neemogu.bannerads.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch: approximate counts of long keys in fixed memory (depth rows of width counters).
+ * <p>
+ * A key is counted in one counter of every row, chosen by a row-specific hash, and its estimate is the
+ * minimum of these counters. Estimates are never lower than the true count. With width w and depth d,
+ * after n additions an estimate exceeds the true count by more than (e / w) * n with probability
+ * at most e^-d, i.e. epsilon = e / w and delta = e^-d.
+ * <p>
+ * Counters are atomic, additions and estimates may run concurrently without locks.
+ */
+public final class CountMinSketch {
+    private static final long seedBase = 0x9e3779b97f4a7c15L;
+
+    private final int width;
+    private final int depth;
+    private final AtomicIntegerArray counters;
+
+    /**
+     * @param width Number of counters in a row.
+     * @param depth Number of rows.
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("Sketch width and depth must be positive");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicIntegerArray(Math.multiplyExact(width, depth));
+    }
+
+    /**
+     * Counts a key once.
+     *
+     * @param key Key.
+     * @return Estimated count of the key including this addition.
+     */
+    public int add(long key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; ++row) {
+            estimate = Math.min(estimate, counters.incrementAndGet(indexOf(key, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * @param key Key.
+     * @return Estimated count of the key, never lower than the true count.
+     */
+    public int estimate(long key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; ++row) {
+            estimate = Math.min(estimate, counters.get(indexOf(key, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Resets all counters. Additions running concurrently may be partly kept.
+     */
+    public void clear() {
+        for (int i = 0; i < counters.length(); ++i) {
+            counters.set(i, 0);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return Memory taken by the counters in bytes.
+     */
+    public long getSizeInBytes() {
+        return (long) counters.length() * Integer.BYTES;
+    }
+
+    private int indexOf(long key, int row) {
+        return row * width + (int) Long.remainderUnsigned(mix(key + seedBase * (row + 1)), width);
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads close keys (e.g. consecutive ids) over the row.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.neemogu.bannerads.util;
+
+/**
+ * IPv4 or IPv6 address held as a 128-bit number in two longs. IPv4 addresses are stored
+ * as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d), so both families are compared numerically
+ * in one address space. Immutable.
+ */
+public final class IpAddress implements Comparable<IpAddress> {
+    private static final long ipv4MappedPrefix = 0xffff00000000L;
+
+    private final long high;
+    private final long low;
+
+    public IpAddress(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Parses a textual IPv4 or IPv6 address without allocating intermediate objects.
+     * IPv6 addresses may use "::" compression, an embedded IPv4 suffix and a zone id, which is ignored.
+     *
+     * @param address Address string, for example "192.168.0.1" or "fe80::1%eth0".
+     * @return Parsed address.
+     * @throws IllegalArgumentException If the string is not a valid IP address.
+     */
+    public static IpAddress parse(String address) {
+        if (address == null) {
+            throw new IllegalArgumentException("IP address is null");
+        }
+        int end = address.indexOf('%');
+        if (end < 0) {
+            end = address.length();
+        }
+        if (address.indexOf(':') < 0) {
+            long ipv4 = end == address.length() ? parseIpv4(address, 0, end) : -1;
+            if (ipv4 < 0) {
+                throw invalid(address);
+            }
+            return new IpAddress(0, ipv4MappedPrefix | ipv4);
+        }
+        return parseIpv6(address, end);
+    }
+
+    /**
+     * Restores an address from its binary form returned by {@link #toBytes()}.
+     *
+     * @param bytes 4 bytes of IPv4 or 16 bytes of IPv6 address in network order.
+     * @return Address, null if bytes are null.
+     * @throws IllegalArgumentException If bytes length is not 4 or 16.
+     */
+    public static IpAddress fromBytes(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 4) {
+            return new IpAddress(0, ipv4MappedPrefix | (readLong(bytes, 0, 4) & 0xffffffffL));
+        }
+        if (bytes.length == 16) {
+            return new IpAddress(readLong(bytes, 0, 8), readLong(bytes, 8, 8));
+        }
+        throw new IllegalArgumentException("IP address must be 4 or 16 bytes long");
+    }
+
+    /**
+     * @return Network order bytes: 4 for IPv4 addresses, 16 for IPv6 ones.
+     */
+    public byte[] toBytes() {
+        if (isIpv4()) {
+            byte[] bytes = new byte[4];
+            writeLong(bytes, 0, 4, low);
+            return bytes;
+        }
+        byte[] bytes = new byte[16];
+        writeLong(bytes, 0, 8, high);
+        writeLong(bytes, 8, 8, low);
+        return bytes;
+    }
+
+    /**
+     * @return Whether it is an IPv4 (IPv4-mapped) address.
+     */
+    public boolean isIpv4() {
+        return high == 0 && (low >>> 32) == 0xffffL;
+    }
+
+    /**
+     * @return Upper 64 bits of the address.
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return Lower 64 bits of the address.
+     */
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public int compareTo(IpAddress other) {
+        int result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpAddress)) {
+            return false;
+        }
+        IpAddress other = (IpAddress) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+
+    /**
+     * @return Dotted decimal form for IPv4 addresses, RFC 5952 form for IPv6 ones.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(39);
+        if (isIpv4()) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                builder.append((low >>> shift) & 0xff);
+                if (shift > 0) {
+                    builder.append('.');
+                }
+            }
+            return builder.toString();
+        }
+        // longest run of at least two zero groups is replaced with "::"
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (group(i) != 0) {
+                ++i;
+                continue;
+            }
+            int start = i;
+            while (i < 8 && group(i) == 0) {
+                ++i;
+            }
+            if (i - start > bestLength) {
+                bestStart = start;
+                bestLength = i - start;
+            }
+        }
+        for (int i = 0; i < 8; ++i) {
+            if (i == bestStart) {
+                builder.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (i > 0 && i != bestStart + bestLength) {
+                builder.append(':');
+            }
+            builder.append(Integer.toHexString(group(i)));
+        }
+        return builder.toString();
+    }
+
+    private int group(int index) {
+        long half = index < 4 ? high : low;
+        return (int) (half >>> (16 * (3 - index % 4))) & 0xffff;
+    }
+
+    /**
+     * @return IPv4 address as a non-negative number, -1 if the string is not a valid IPv4 address.
+     */
+    private static long parseIpv4(String s, int from, int to) {
+        long result = 0;
+        int octets = 0;
+        int i = from;
+        while (true) {
+            int value = 0;
+            int digits = 0;
+            while (i < to && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                value = value * 10 + (s.charAt(i) - '0');
+                ++i;
+                if (++digits > 3) {
+                    return -1;
+                }
+            }
+            if (digits == 0 || value > 255) {
+                return -1;
+            }
+            result = (result << 8) | value;
+            ++octets;
+            if (i == to) {
+                break;
+            }
+            if (s.charAt(i) != '.' || octets == 4) {
+                return -1;
+            }
+            ++i;
+        }
+        return octets == 4 ? result : -1;
+    }
+
+    private static IpAddress parseIpv6(String s, int end) {
+        int gap = s.indexOf("::");
+        if (gap >= end) {
+            gap = -1;
+        }
+        if (gap >= 0) {
+            int secondGap = s.indexOf("::", gap + 1);
+            if (secondGap >= 0 && secondGap < end) {
+                throw invalid(s);
+            }
+        }
+        int groupsBefore = countGroups(s, 0, gap < 0 ? end : gap);
+        int groupsAfter = gap < 0 ? 0 : countGroups(s, gap + 2, end);
+        if (gap < 0 ? groupsBefore != 8 : groupsBefore + groupsAfter > 7) {
+            throw invalid(s);
+        }
+        long high = 0;
+        long low = 0;
+        int index = 0;
+        int i = 0;
+        int segmentEnd = gap < 0 ? end : gap;
+        for (int segment = 0; segment < 2; ++segment) {
+            if (segment == 1) {
+                if (gap < 0) {
+                    break;
+                }
+                i = gap + 2;
+                segmentEnd = end;
+                index = 8 - groupsAfter;
+            }
+            while (i < segmentEnd) {
+                int tokenEnd = i;
+                boolean dotted = false;
+                while (tokenEnd < segmentEnd && s.charAt(tokenEnd) != ':') {
+                    dotted |= s.charAt(tokenEnd) == '.';
+                    ++tokenEnd;
+                }
+                if (dotted) {
+                    // embedded IPv4 address may only be the last two groups
+                    long ipv4 = tokenEnd == end && index == 6 ? parseIpv4(s, i, tokenEnd) : -1;
+                    if (ipv4 < 0) {
+                        throw invalid(s);
+                    }
+                    low |= ipv4;
+                    index += 2;
+                } else {
+                    int group = parseGroup(s, i, tokenEnd);
+                    if (group < 0) {
+                        throw invalid(s);
+                    }
+                    if (index < 4) {
+                        high |= (long) group << (16 * (3 - index));
+                    } else {
+                        low |= (long) group << (16 * (7 - index));
+                    }
+                    ++index;
+                }
+                if (tokenEnd + 1 == segmentEnd) {
+                    // trailing single colon
+                    throw invalid(s);
+                }
+                i = tokenEnd + 1;
+            }
+        }
+        return new IpAddress(high, low);
+    }
+
+    /**
+     * Counts 16-bit groups in a colon separated part of an IPv6 address, embedded IPv4 address takes two.
+     */
+    private static int countGroups(String s, int from, int to) {
+        if (from == to) {
+            return 0;
+        }
+        int groups = 1;
+        for (int i = from; i < to; ++i) {
+            char c = s.charAt(i);
+            if (c == ':') {
+                ++groups;
+            } else if (c == '.') {
+                // counted once per address, the format is checked while parsing
+                groups += s.indexOf('.', from) == i ? 1 : 0;
+            }
+        }
+        return groups;
+    }
+
+    private static int parseGroup(String s, int from, int to) {
+        if (from == to || to - from > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; ++i) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static long readLong(byte[] bytes, int offset, int length) {
+        long result = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, int length, long value) {
+        for (int i = offset + length - 1; i >= offset; --i) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static IllegalArgumentException invalid(String address) {
+        return new IllegalArgumentException("Invalid IP address: " + address);
+    }
+}
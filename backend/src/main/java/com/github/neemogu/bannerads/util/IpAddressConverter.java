@@ -0,0 +1,20 @@
+package com.github.neemogu.bannerads.util;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * Stores {@link IpAddress} as VARBINARY(16): 4 bytes for IPv4 and 16 bytes for IPv6 addresses.
+ */
+@Converter
+public class IpAddressConverter implements AttributeConverter<IpAddress, byte[]> {
+    @Override
+    public byte[] convertToDatabaseColumn(IpAddress address) {
+        return address == null ? null : address.toBytes();
+    }
+
+    @Override
+    public IpAddress convertToEntityAttribute(byte[] bytes) {
+        return IpAddress.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.neemogu.bannerads.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inclusive range of {@link IpAddress}es. IPv4 ranges are ranges of IPv4-mapped addresses,
+ * so an IPv4 range never contains an IPv6 address. Immutable.
+ */
+public final class IpRange {
+    private static final int ipv4MappedPrefixLength = 96;
+
+    private final IpAddress first;
+    private final IpAddress last;
+
+    public IpRange(IpAddress first, IpAddress last) {
+        if (first.compareTo(last) > 0) {
+            throw new IllegalArgumentException("First address of a range must not be greater than the last one");
+        }
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Parses a range given as a single address ("10.0.0.1"), a CIDR block ("10.0.0.0/8", "2001:db8::/32")
+     * or two addresses of the same family separated by a hyphen ("10.0.0.1-10.0.0.9").
+     *
+     * @param range Range string.
+     * @return Parsed range.
+     * @throws IllegalArgumentException If the string is not a valid range.
+     */
+    public static IpRange parse(String range) {
+        String trimmed = range.trim();
+        int slash = trimmed.indexOf('/');
+        if (slash >= 0) {
+            IpAddress address = IpAddress.parse(trimmed.substring(0, slash).trim());
+            int prefixLength;
+            try {
+                prefixLength = Integer.parseInt(trimmed.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw invalid(range);
+            }
+            if (address.isIpv4()) {
+                prefixLength += ipv4MappedPrefixLength;
+            }
+            if (prefixLength < (address.isIpv4() ? ipv4MappedPrefixLength : 0) || prefixLength > 128) {
+                throw invalid(range);
+            }
+            long highMask = mask(prefixLength);
+            long lowMask = mask(prefixLength - 64);
+            return new IpRange(new IpAddress(address.getHigh() & highMask, address.getLow() & lowMask),
+                    new IpAddress(address.getHigh() | ~highMask, address.getLow() | ~lowMask));
+        }
+        int hyphen = trimmed.indexOf('-');
+        if (hyphen >= 0) {
+            IpAddress first = IpAddress.parse(trimmed.substring(0, hyphen).trim());
+            IpAddress last = IpAddress.parse(trimmed.substring(hyphen + 1).trim());
+            if (first.isIpv4() != last.isIpv4() || first.compareTo(last) > 0) {
+                throw invalid(range);
+            }
+            return new IpRange(first, last);
+        }
+        IpAddress address = IpAddress.parse(trimmed);
+        return new IpRange(address, address);
+    }
+
+    /**
+     * Parses comma separated ranges, see {@link #parse(String)}.
+     *
+     * @param ranges Comma separated ranges, blank entries are ignored.
+     * @return Parsed ranges in the given order, empty if the string is null or blank.
+     * @throws IllegalArgumentException If any of the ranges is not valid.
+     */
+    public static List<IpRange> parseList(String ranges) {
+        List<IpRange> result = new ArrayList<>();
+        if (ranges == null) {
+            return result;
+        }
+        for (String range : ranges.split(",")) {
+            if (!range.isBlank()) {
+                result.add(parse(range));
+            }
+        }
+        return result;
+    }
+
+    public IpAddress getFirst() {
+        return first;
+    }
+
+    public IpAddress getLast() {
+        return last;
+    }
+
+    /**
+     * @param address IP address.
+     * @return Whether the address is in the range.
+     */
+    public boolean contains(IpAddress address) {
+        return first.compareTo(address) <= 0 && address.compareTo(last) <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return first + "-" + last;
+    }
+
+    /**
+     * @return Mask of the upper bits of a 64-bit half, all bits if bits is 64 or more, none if it is 0 or less.
+     */
+    private static long mask(int bits) {
+        if (bits <= 0) {
+            return 0;
+        }
+        return bits >= 64 ? -1L : -1L << (64 - bits);
+    }
+
+    private static IllegalArgumentException invalid(String range) {
+        return new IllegalArgumentException("Invalid IP range: " + range);
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.neemogu.bannerads.util;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Page of a listing together with the total number of rows and pages of the listing.
+ *
+ * @param <T> Row type.
+ */
+@Value
+public class ListPage<T> {
+    List<T> items;
+    long total;
+    long pageCount;
+
+    /**
+     * @param items Rows of the page.
+     * @param total Number of rows of the whole listing.
+     * @param pageSize Size of a page.
+     * @param <T> Row type.
+     * @return Page with the number of pages computed from the total.
+     */
+    public static <T> ListPage<T> of(List<T> items, long total, int pageSize) {
+        return new ListPage<>(items, total, total / pageSize + (total % pageSize == 0 ? 0 : 1));
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.neemogu.bannerads.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Position in a keyset (seek) paginated listing: the sort key and the id of the last returned row.
+ * The next page starts right after this row, so its cost does not depend on how deep the page is
+ * and rows inserted before the position do not shift the following pages.
+ * <p>
+ * A cursor is passed to clients as an opaque URL-safe token. The token also records the order it was
+ * taken in, so that it is not applied to a listing sorted differently.
+ */
+public final class PageCursor {
+    /**
+     * Response header with the token of the next page of a listing.
+     */
+    public static final String nextPageHeader = "X-Next-Cursor";
+
+    private static final char separator = '\n';
+
+    private final String order;
+    private final String sortKey;
+    private final int id;
+
+    /**
+     * @param order Order of the listing, e.g. sort field and direction.
+     * @param sortKey Sort key of the last returned row, null if the listing is ordered by id only.
+     * @param id Id of the last returned row.
+     */
+    public PageCursor(String order, String sortKey, int id) {
+        this.order = Objects.requireNonNull(order);
+        this.sortKey = sortKey;
+        this.id = id;
+    }
+
+    /**
+     * Decodes a token returned by {@link #encode()}.
+     *
+     * @param token Cursor token.
+     * @return Optional - cursor if the token is valid else empty.
+     */
+    public static Optional<PageCursor> decode(String token) {
+        String text;
+        try {
+            text = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        int orderEnd = text.indexOf(separator);
+        if (orderEnd < 0) {
+            return Optional.empty();
+        }
+        int idEnd = text.indexOf(separator, orderEnd + 1);
+        String id = idEnd < 0 ? text.substring(orderEnd + 1) : text.substring(orderEnd + 1, idEnd);
+        try {
+            return Optional.of(new PageCursor(
+                    text.substring(0, orderEnd),
+                    idEnd < 0 ? null : text.substring(idEnd + 1),
+                    Integer.parseInt(id)
+            ));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return Opaque URL-safe token.
+     */
+    public String encode() {
+        StringBuilder text = new StringBuilder().append(order).append(separator).append(id);
+        if (sortKey != null) {
+            text.append(separator).append(sortKey);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getOrder() {
+        return order;
+    }
+
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PageCursor)) {
+            return false;
+        }
+        PageCursor other = (PageCursor) o;
+        return id == other.id && order.equals(other.order) && Objects.equals(sortKey, other.sortKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(order, sortKey, id);
+    }
+}
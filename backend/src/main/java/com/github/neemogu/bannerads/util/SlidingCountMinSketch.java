@@ -0,0 +1,136 @@
+package com.github.neemogu.bannerads.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate counts of long keys over a sliding time window in fixed memory.
+ * <p>
+ * The window is divided into time slices, each counted by its own {@link CountMinSketch}; a ring
+ * of sketches holds the current slice, the whole slices before it and a spare sketch for the next slice.
+ * A count covers at least the last window and at most one slice more, so an addition expires between
+ * window and window + window / slices after it is made.
+ * <p>
+ * The spare sketch held an expired slice and must be cleared before it is reused, which takes a pass over
+ * width * depth counters. {@link #clearNext(long)} does it ahead of time, so that additions and estimates
+ * starting a new slice only relabel the sketch and never wait for a lock. If it has not run during the
+ * previous slice, the first access of the new slice clears the sketch itself, blocking other accesses
+ * of this slice meanwhile.
+ * <p>
+ * An estimate is never lower than the true count in the covered period and exceeds it by more than
+ * (e / width) * n with probability at most (slices + 1) * e^-depth, where n is the number of additions in the
+ * covered period. The memory is (slices + 2) * width * depth * 4 bytes regardless of the number of keys.
+ */
+public final class SlidingCountMinSketch {
+    private final long sliceMillis;
+    private final CountMinSketch[] sketches;
+    private final AtomicLongArray sliceOfSketch;
+    // slice a sketch was last cleared for, ahead of time or on the first access
+    private final AtomicLongArray clearedForSlice;
+
+    /**
+     * @param windowMillis Window length in milliseconds.
+     * @param slices Number of slices in the window, more slices make expiration more precise.
+     * @param width Number of counters in a row of a slice sketch.
+     * @param depth Number of rows of a slice sketch.
+     */
+    public SlidingCountMinSketch(long windowMillis, int slices, int width, int depth) {
+        if (windowMillis < slices || slices < 1) {
+            throw new IllegalArgumentException("Window must be divisible into at least one slice");
+        }
+        this.sliceMillis = windowMillis / slices;
+        this.sketches = new CountMinSketch[slices + 2];
+        this.sliceOfSketch = new AtomicLongArray(sketches.length);
+        this.clearedForSlice = new AtomicLongArray(sketches.length);
+        for (int i = 0; i < sketches.length; ++i) {
+            sketches[i] = new CountMinSketch(width, depth);
+            sliceOfSketch.set(i, -1);
+            clearedForSlice.set(i, -1);
+        }
+    }
+
+    /**
+     * Counts a key once.
+     *
+     * @param key Key.
+     * @param nowMillis Current time in milliseconds.
+     * @return Estimated count of the key in the window including this addition.
+     */
+    public int add(long key, long nowMillis) {
+        long slice = nowMillis / sliceMillis;
+        int current = sketchOf(slice);
+        return sketches[current].add(key) + estimateBefore(key, slice, current);
+    }
+
+    /**
+     * @param key Key.
+     * @param nowMillis Current time in milliseconds.
+     * @return Estimated count of the key in the window, never lower than the true count.
+     */
+    public int estimate(long key, long nowMillis) {
+        long slice = nowMillis / sliceMillis;
+        int current = sketchOf(slice);
+        return sketches[current].estimate(key) + estimateBefore(key, slice, current);
+    }
+
+    /**
+     * Clears the sketch of the slice following the current one, which holds a slice out of the window.
+     * Meant to be called from a background thread at least once per slice.
+     *
+     * @param nowMillis Current time in milliseconds.
+     */
+    public void clearNext(long nowMillis) {
+        long next = nowMillis / sliceMillis + 1;
+        int index = (int) (next % sketches.length);
+        synchronized (sketches[index]) {
+            if (sliceOfSketch.get(index) < next && clearedForSlice.get(index) != next) {
+                sketches[index].clear();
+                clearedForSlice.set(index, next);
+            }
+        }
+    }
+
+    /**
+     * @return Memory taken by the counters in bytes.
+     */
+    public long getSizeInBytes() {
+        return sketches.length * sketches[0].getSizeInBytes();
+    }
+
+    private int estimateBefore(long key, long slice, int current) {
+        int estimate = 0;
+        for (int i = 0; i < sketches.length; ++i) {
+            long sketchSlice = sliceOfSketch.get(i);
+            // sketches of slices out of the window are ignored until they are reused
+            if (i != current && sketchSlice >= slice - sketches.length + 2 && sketchSlice < slice) {
+                estimate += sketches[i].estimate(key);
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the ring position of a slice. The first access of a slice takes the sketch over
+     * if it was cleared ahead of time, otherwise clears it under the lock of the sketch.
+     */
+    private int sketchOf(long slice) {
+        int index = (int) (slice % sketches.length);
+        long sketchSlice = sliceOfSketch.get(index);
+        if (sketchSlice >= slice) {
+            return index;
+        }
+        if (clearedForSlice.get(index) == slice) {
+            sliceOfSketch.compareAndSet(index, sketchSlice, slice);
+            return index;
+        }
+        synchronized (sketches[index]) {
+            if (sliceOfSketch.get(index) < slice) {
+                if (clearedForSlice.get(index) != slice) {
+                    sketches[index].clear();
+                    clearedForSlice.set(index, slice);
+                }
+                sliceOfSketch.set(index, slice);
+            }
+        }
+        return index;
+    }
+}
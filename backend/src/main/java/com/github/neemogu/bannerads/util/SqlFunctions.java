@@ -0,0 +1,30 @@
+package com.github.neemogu.bannerads.util;
+
+import org.hibernate.boot.spi.MetadataBuilderContributor;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * SQL functions registered in Hibernate in addition to the dialect ones,
+ * to be called from Criteria queries with {@code CriteriaBuilder.function}.
+ */
+public final class SqlFunctions {
+    /**
+     * Number of rows of the whole result set ({@code count(*) over ()}), a window function
+     * available in MySQL 8 and H2. Calculated before limit and offset are applied.
+     */
+    public static final String countOver = "count_over";
+
+    private SqlFunctions() {
+    }
+
+    /**
+     * @return Contributor registering the functions, set as {@code hibernate.metadata_builder_contributor}.
+     */
+    public static MetadataBuilderContributor contributor() {
+        return builder -> builder.applySqlFunction(
+                countOver,
+                new SQLFunctionTemplate(StandardBasicTypes.LONG, "count(*) over ()")
+        );
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.neemogu.bannerads.util;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * In-memory case-insensitive index of objects by name for substring and prefix search.
+ * <p>
+ * Every name is split into all its substrings of up to three characters (n-grams), each n-gram
+ * has a posting set of ids of the objects whose names contain it. A substring query looks up
+ * the rarest of its n-grams and checks only the objects in that posting set, so the cost depends
+ * on the number of candidates instead of the number of indexed objects. Prefix queries walk
+ * a sorted map of names.
+ * <p>
+ * Reads take a shared lock and may run concurrently, writes are exclusive.
+ *
+ * @param <T> Indexed object type.
+ */
+public final class TrigramIndex<T> {
+    private static final int maxGramLength = 3;
+
+    private final Function<T, Integer> idOf;
+    private final Function<T, String> nameOf;
+    private final Map<Integer, T> objects = new HashMap<>();
+    private final Map<Integer, String> keys = new HashMap<>();
+    private final Map<Long, Set<Integer>> postings = new HashMap<>();
+    private final NavigableMap<String, NavigableSet<Integer>> byKey = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param idOf Returns an id of an object.
+     * @param nameOf Returns a name of an object to index.
+     */
+    public TrigramIndex(Function<T, Integer> idOf, Function<T, String> nameOf) {
+        this.idOf = idOf;
+        this.nameOf = nameOf;
+    }
+
+    /**
+     * Adds an object or replaces a previous object with the same id.
+     *
+     * @param object Object with not null id and name.
+     */
+    public void put(T object) {
+        lock.writeLock().lock();
+        try {
+            Integer id = idOf.apply(object);
+            removeUnlocked(id);
+            String key = keyOf(nameOf.apply(object));
+            objects.put(id, object);
+            keys.put(id, key);
+            for (long gram : gramsOf(key, true)) {
+                postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+            }
+            byKey.computeIfAbsent(key, k -> new TreeSet<>()).add(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an object. Does nothing if there is no object with such id.
+     *
+     * @param id Object id.
+     */
+    public void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces all indexed objects.
+     *
+     * @param replacement New objects.
+     */
+    public void replaceAll(Collection<T> replacement) {
+        lock.writeLock().lock();
+        try {
+            objects.clear();
+            keys.clear();
+            postings.clear();
+            byKey.clear();
+            replacement.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns objects whose names contain a string ignoring case.
+     *
+     * @param substring String to search, all objects are returned if it is empty.
+     * @return Objects found in no particular order.
+     */
+    public List<T> search(String substring) {
+        String query = keyOf(substring);
+        lock.readLock().lock();
+        try {
+            if (query.isEmpty()) {
+                return new ArrayList<>(objects.values());
+            }
+            Set<Integer> candidates = null;
+            for (long gram : gramsOf(query, false)) {
+                Set<Integer> posting = postings.get(gram);
+                if (posting == null) {
+                    return new ArrayList<>();
+                }
+                if (candidates == null || posting.size() < candidates.size()) {
+                    candidates = posting;
+                }
+            }
+            List<T> result = new ArrayList<>();
+            if (candidates == null) {
+                return result;
+            }
+            boolean exact = query.length() <= maxGramLength;
+            for (Integer id : candidates) {
+                if (exact || keys.get(id).contains(query)) {
+                    result.add(objects.get(id));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns objects whose names start with a prefix ignoring case, ordered by name and id.
+     *
+     * @param prefix Name prefix.
+     * @param limit Maximum number of objects to return.
+     * @return Objects found.
+     */
+    public List<T> complete(String prefix, int limit) {
+        String query = keyOf(prefix);
+        List<T> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, NavigableSet<Integer>> entry : byKey.tailMap(query, true).entrySet()) {
+                if (!entry.getKey().startsWith(query)) {
+                    break;
+                }
+                for (Integer id : entry.getValue()) {
+                    if (result.size() >= limit) {
+                        return result;
+                    }
+                    result.add(objects.get(id));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of indexed objects.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return objects.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeUnlocked(Integer id) {
+        String key = keys.remove(id);
+        if (key == null) {
+            return;
+        }
+        objects.remove(id);
+        for (long gram : gramsOf(key, true)) {
+            Set<Integer> posting = postings.get(gram);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+        NavigableSet<Integer> ids = byKey.get(key);
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            byKey.remove(key);
+        }
+    }
+
+    private static String keyOf(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns n-grams of a string packed into longs: the length in the highest bits, then the characters.
+     * All n-grams up to the maximum length are indexed, a query only needs the longest ones
+     * (or the whole query if it is shorter).
+     */
+    private static Set<Long> gramsOf(String key, boolean all) {
+        Set<Long> grams = new HashSet<>();
+        int minLength = all ? 1 : Math.min(maxGramLength, key.length());
+        for (int length = minLength; length <= Math.min(maxGramLength, key.length()); ++length) {
+            for (int start = 0; start + length <= key.length(); ++start) {
+                long gram = length;
+                for (int i = start; i < start + length; ++i) {
+                    gram = (gram << 16) | key.charAt(i);
+                }
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+}
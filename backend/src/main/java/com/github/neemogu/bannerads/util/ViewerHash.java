@@ -0,0 +1,51 @@
+package com.github.neemogu.bannerads.util;
+
+/**
+ * 64-bit FNV-1a hash of a viewer identity (IP address and user agent),
+ * stored with requests to look them up by a fixed-width indexed key.
+ */
+public final class ViewerHash {
+    private static final long offsetBasis = 0xcbf29ce484222325L;
+    private static final long prime = 0x100000001b3L;
+
+    private ViewerHash() {
+    }
+
+    /**
+     * Computes a viewer hash without allocating. Null values are hashed differently from empty strings.
+     *
+     * @param ipAddress IP address.
+     * @param userAgent User agent string.
+     * @return 64-bit hash.
+     */
+    public static long of(IpAddress ipAddress, String userAgent) {
+        long hash = offsetBasis;
+        if (ipAddress == null) {
+            hash = (hash ^ 0xfe) * prime;
+        } else {
+            hash = append(hash, ipAddress.getHigh());
+            hash = append(hash, ipAddress.getLow());
+        }
+        hash = (hash ^ 0xff) * prime;
+        return append(hash, userAgent);
+    }
+
+    private static long append(long hash, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            hash = (hash ^ ((value >>> shift) & 0xff)) * prime;
+        }
+        return hash;
+    }
+
+    private static long append(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 0xfe) * prime;
+        }
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * prime;
+            hash = (hash ^ (c >>> 8)) * prime;
+        }
+        return hash;
+    }
+}
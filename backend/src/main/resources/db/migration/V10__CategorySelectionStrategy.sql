@@ -0,0 +1,2 @@
+-- STRICT_PRICE, PRICE_WEIGHTED or ROUND_ROBIN, the configured default if null
+ALTER TABLE category ADD COLUMN selection_strategy varchar(32) NULL;
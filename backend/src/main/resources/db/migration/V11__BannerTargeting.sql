@@ -0,0 +1,3 @@
+-- comma separated user agent families and IP ranges a banner is shown to, shown to all if null
+ALTER TABLE banner ADD COLUMN target_user_agents varchar(255) NULL;
+ALTER TABLE banner ADD COLUMN target_ip_ranges text NULL;
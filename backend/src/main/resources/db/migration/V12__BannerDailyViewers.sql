@@ -0,0 +1,15 @@
+-- viewer hashes already counted in banner_daily_stats.unique_viewers, per banner and day (UTC)
+CREATE TABLE IF NOT EXISTS banner_daily_viewer (
+    date date NOT NULL ,
+    banner_id int NOT NULL ,
+    viewer_hash bigint NOT NULL ,
+    PRIMARY KEY (date, banner_id, viewer_hash)
+);
+
+-- viewers of the days still being rolled up, earlier days are final
+INSERT IGNORE INTO banner_daily_viewer (date, banner_id, viewer_hash)
+SELECT DISTINCT DATE_ADD('1970-01-01', INTERVAL UNIX_TIMESTAMP(r.date) DIV 86400 DAY), r.banner_id, r.viewer_hash
+FROM request r
+WHERE r.viewer_hash IS NOT NULL
+  AND r.date >= UTC_DATE() - INTERVAL 1 DAY
+  AND r.id <= (SELECT COALESCE(MAX(w.last_id), 0) FROM rollup_watermark w WHERE w.name = 'banner_daily_stats');
@@ -0,0 +1,3 @@
+ALTER TABLE request ADD COLUMN viewer_hash bigint;
+
+CREATE INDEX request_banner_viewer_date_idx ON request (banner_id, viewer_hash, date);
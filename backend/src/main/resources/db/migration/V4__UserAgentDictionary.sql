@@ -0,0 +1,16 @@
+CREATE TABLE IF NOT EXISTS user_agent (
+    id int PRIMARY KEY AUTO_INCREMENT,
+    agent varchar(768) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin UNIQUE NOT NULL
+);
+
+INSERT INTO user_agent (agent)
+SELECT DISTINCT LEFT(user_agent, 768) FROM request WHERE user_agent IS NOT NULL;
+
+ALTER TABLE request ADD COLUMN user_agent_id int;
+
+UPDATE request r JOIN user_agent u ON u.agent = LEFT(r.user_agent, 768)
+SET r.user_agent_id = u.id;
+
+ALTER TABLE request ADD CONSTRAINT request_user_agent_fk FOREIGN KEY (user_agent_id) REFERENCES user_agent(id);
+
+ALTER TABLE request DROP COLUMN user_agent;
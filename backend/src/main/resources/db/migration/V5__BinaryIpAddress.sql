@@ -0,0 +1,7 @@
+ALTER TABLE request ADD COLUMN ip_address_bin varbinary(16);
+
+UPDATE request SET ip_address_bin = INET6_ATON(ip_address);
+
+ALTER TABLE request DROP COLUMN ip_address;
+
+ALTER TABLE request RENAME COLUMN ip_address_bin TO ip_address;
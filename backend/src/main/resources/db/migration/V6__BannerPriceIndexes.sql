@@ -0,0 +1,5 @@
+-- banners of a category by price: bid candidates and admin listings filtered by category
+CREATE INDEX banner_category_price_idx ON banner (category_id, deleted, price DESC, id);
+
+-- all banners by price: admin listings without a category filter
+CREATE INDEX banner_price_idx ON banner (deleted, price DESC, id);
@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS banner_daily_stats (
+    date date NOT NULL ,
+    banner_id int NOT NULL ,
+    category_id int NOT NULL ,
+    impressions bigint NOT NULL ,
+    unique_viewers bigint NOT NULL ,
+    revenue dec(16,2) NOT NULL ,
+    PRIMARY KEY (date, banner_id)
+);
+
+CREATE INDEX banner_daily_stats_category_date_idx ON banner_daily_stats (category_id, date);
+
+-- last request id aggregated by each rollup
+CREATE TABLE IF NOT EXISTS rollup_watermark (
+    name varchar(64) PRIMARY KEY ,
+    last_id int NOT NULL
+);
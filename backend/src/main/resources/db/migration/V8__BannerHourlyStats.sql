@@ -0,0 +1,18 @@
+CREATE TABLE IF NOT EXISTS banner_hourly_stats (
+    hour_start datetime NOT NULL ,
+    banner_id int NOT NULL ,
+    category_id int NOT NULL ,
+    impressions bigint NOT NULL ,
+    revenue dec(16,2) NOT NULL ,
+    PRIMARY KEY (hour_start, banner_id)
+);
+
+CREATE INDEX banner_hourly_stats_category_hour_idx ON banner_hourly_stats (category_id, hour_start);
+
+-- hours (UTC) of requests already aggregated into banner_daily_stats, later ones are added by the rollup job
+INSERT INTO banner_hourly_stats (hour_start, banner_id, category_id, impressions, revenue)
+SELECT DATE_ADD('1970-01-01 00:00:00', INTERVAL UNIX_TIMESTAMP(r.date) DIV 3600 HOUR) AS hour_start,
+       r.banner_id, b.category_id, COUNT(*), SUM(b.price)
+FROM request r JOIN banner b ON b.id = r.banner_id
+WHERE r.id <= (SELECT COALESCE(MAX(w.last_id), 0) FROM rollup_watermark w WHERE w.name = 'banner_daily_stats')
+GROUP BY hour_start, r.banner_id, b.category_id;
@@ -0,0 +1,13 @@
+ALTER TABLE banner ADD COLUMN daily_impression_cap bigint NULL;
+ALTER TABLE banner ADD COLUMN daily_budget dec(12,2) NULL;
+ALTER TABLE banner ADD CONSTRAINT banner_daily_impression_cap_positive_value CHECK ( daily_impression_cap > 0 );
+ALTER TABLE banner ADD CONSTRAINT banner_daily_budget_positive_value CHECK ( daily_budget >= 0.0 );
+
+-- impressions and spending of capped banners per day (UTC), added up by every instance
+CREATE TABLE IF NOT EXISTS banner_delivery_counter (
+    date date NOT NULL ,
+    banner_id int NOT NULL ,
+    impressions bigint NOT NULL ,
+    spent dec(16,2) NOT NULL ,
+    PRIMARY KEY (date, banner_id)
+);
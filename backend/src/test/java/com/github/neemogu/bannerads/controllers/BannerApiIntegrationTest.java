@@ -0,0 +1,84 @@
+package com.github.neemogu.bannerads.controllers;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerIndex;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.banner.BannerService;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class BannerApiIntegrationTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private BannerIndex bannerIndex;
+    @Autowired
+    private BannerService bannerService;
+
+    private Category music;
+    private Category technology;
+
+    @BeforeEach
+    public void initDB() {
+        music = categoryRepository.save(new Category(null, "Music", "music", false));
+        technology = categoryRepository.save(new Category(null, "Technology", "tech", false));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bannerRepository.deleteAll();
+        categoryRepository.deleteAll();
+        // banners are changed bypassing the service
+        bannerIndex.rebuild();
+        bannerService.invalidateCounts();
+    }
+
+    @Test
+    public void givenBannerSavedWithCategoryIdOnly_whenSearchByName_thenCategoryIsComplete() throws Exception {
+        // the admin frontend sends the category id only
+        mockMvc.perform(post("/banners")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"Deep Purple\", \"price\": 2.5, \"category\": {\"id\": " + music.getId() + "}, " +
+                        "\"content\": \"DP\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/banners/list").param("searchName", "purple"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Deep Purple"))
+                .andExpect(jsonPath("$[0].category.name").value("Music"))
+                .andExpect(jsonPath("$[0].category.reqName").value("music"));
+
+        Banner saved = bannerRepository.findByName("Deep Purple").orElseThrow();
+        mockMvc.perform(put("/banners")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": " + saved.getId() + ", \"name\": \"Deep Purple\", \"price\": 2.5, " +
+                        "\"category\": {\"id\": " + technology.getId() + "}, \"content\": \"DP\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/banners/list").param("searchName", "purple"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].category.name").value("Technology"))
+                .andExpect(jsonPath("$[0].category.reqName").value("tech"));
+    }
+}
@@ -2,10 +2,15 @@ package com.github.neemogu.bannerads.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerSummary;
 import com.github.neemogu.bannerads.banner.BannerController;
 import com.github.neemogu.bannerads.banner.BannerFetchParameters;
 import com.github.neemogu.bannerads.banner.BannerService;
+import com.github.neemogu.bannerads.banner.BannerSortBy;
 import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.util.ListPage;
+import com.github.neemogu.bannerads.util.PageCursor;
+import com.github.neemogu.bannerads.util.SortDirection;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -25,11 +30,13 @@ import java.util.TreeMap;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -46,6 +53,7 @@ public class BannerControllerTest {
     private Banner b2;
     private Category category;
     private List<Banner> banners;
+    private List<BannerSummary> summaries;
 
     @BeforeEach
     public void init() {
@@ -53,6 +61,7 @@ public class BannerControllerTest {
         b1 = new Banner(1, "The Beatles", 5.55, category, "btls", false);
         b2 = new Banner(2, "Les Paul", 10.99, category, "lespaul", false);
         banners = List.of(b1, b2);
+        summaries = List.of(BannerSummary.of(b1), BannerSummary.of(b2));
     }
 
     @Test
@@ -67,7 +76,7 @@ public class BannerControllerTest {
 
     @Test
     public void whenGetBannersList_thenReturnHTTPOkWithBannersList() throws Exception {
-        when(service.getBannerList(any())).thenReturn(banners);
+        when(service.getBannerList(any())).thenReturn(summaries);
         String searchName = "les";
         int pageSize = BannerController.maxPageSize / 2;
         int page = 1;
@@ -78,7 +87,7 @@ public class BannerControllerTest {
                 .andExpect(status().isOk())
                 .andReturn();
         assertThat(result.getResponse().getContentAsString())
-                .isEqualToIgnoringWhitespace(objectMapper.writeValueAsString(banners));
+                .isEqualToIgnoringWhitespace(objectMapper.writeValueAsString(summaries));
 
         ArgumentCaptor<BannerFetchParameters> parametersCaptor = ArgumentCaptor.forClass(BannerFetchParameters.class);
         verify(service, times(1)).getBannerList(parametersCaptor.capture());
@@ -202,4 +211,92 @@ public class BannerControllerTest {
                 .andExpect(content().string("OK"));
         verify(service, times(2)).saveBanner(any());
     }
+
+    @Test
+    public void givenFullPage_whenGetBannersList_thenReturnNextPageCursor() throws Exception {
+        PageCursor cursor = new PageCursor("PRICE,DESC", "5.55", b1.getId());
+        PageCursor next = new PageCursor("PRICE,DESC", "10.99", b2.getId());
+        when(service.decodeCursor(cursor.encode(), BannerSortBy.PRICE, SortDirection.DESC))
+                .thenReturn(Optional.of(cursor));
+        when(service.getBannerList(any())).thenReturn(summaries);
+        when(service.getCursorAfter(eq(summaries.get(1)), any())).thenReturn(next);
+        mockMvc.perform(get("/banners/list")
+                .param("pageSize", "2")
+                .param("sortBy", "PRICE")
+                .param("sortDirection", "DESC")
+                .param("cursor", cursor.encode()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(PageCursor.nextPageHeader, next.encode()));
+
+        ArgumentCaptor<BannerFetchParameters> parametersCaptor = ArgumentCaptor.forClass(BannerFetchParameters.class);
+        verify(service, times(1)).getBannerList(parametersCaptor.capture());
+        assertThat(parametersCaptor.getValue().getAfter()).isEqualTo(cursor);
+        assertThat(parametersCaptor.getValue().getSortBy()).isEqualTo(BannerSortBy.PRICE);
+    }
+
+    @Test
+    public void givenLastPage_whenGetBannersList_thenReturnNoCursor() throws Exception {
+        when(service.getBannerList(any())).thenReturn(summaries);
+        mockMvc.perform(get("/banners/list")
+                .param("pageSize", "3"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(PageCursor.nextPageHeader));
+    }
+
+    @Test
+    public void givenInvalidCursor_whenGetBannersList_thenReturnHTTPBadRequest() throws Exception {
+        when(service.decodeCursor(any(), any(), any())).thenReturn(Optional.empty());
+        mockMvc.perform(get("/banners/list")
+                .param("cursor", "invalid"))
+                .andExpect(status().isBadRequest());
+        verify(service, times(0)).getBannerList(any());
+    }
+
+    @Test
+    public void whenGetBannersPage_thenReturnHTTPOkWithBannersAndTotal() throws Exception {
+        ListPage<BannerSummary> page = ListPage.of(summaries, 5, 3);
+        when(service.getBannerPage(any())).thenReturn(page);
+        MvcResult result = mockMvc.perform(get("/banners/page")
+                .param("searchName", "les")
+                .param("pageSize", "3"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString())
+                .isEqualToIgnoringWhitespace(objectMapper.writeValueAsString(page));
+        assertThat(page.getPageCount()).isEqualTo(2);
+
+        ArgumentCaptor<BannerFetchParameters> parametersCaptor = ArgumentCaptor.forClass(BannerFetchParameters.class);
+        verify(service, times(1)).getBannerPage(parametersCaptor.capture());
+        assertThat(parametersCaptor.getValue().getSearchName()).isEqualTo("les");
+        verify(service, times(0)).getBannerListPageCount(any());
+    }
+
+    @Test
+    public void givenTooMuchPageSize_whenGetBannersPage_thenReturnHTTPBadRequest() throws Exception {
+        mockMvc.perform(get("/banners/page")
+                .param("pageSize", String.valueOf(BannerController.maxPageSize + 1)))
+                .andExpect(status().isBadRequest());
+        verify(service, times(0)).getBannerPage(any());
+    }
+
+    @Test
+    public void whenGetNames_thenReturnHTTPOkWithCompletedNames() throws Exception {
+        when(service.completeName("mu", 5)).thenReturn(List.of("Music", "Musicals"));
+        MvcResult result = mockMvc.perform(get("/banners/names")
+                .param("prefix", "mu")
+                .param("limit", "5"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString())
+                .isEqualTo(objectMapper.writeValueAsString(List.of("Music", "Musicals")));
+    }
+
+    @Test
+    public void givenTooMuchLimit_whenGetNames_thenReturnHTTPBadRequest() throws Exception {
+        mockMvc.perform(get("/banners/names")
+                .param("prefix", "mu")
+                .param("limit", String.valueOf(BannerController.maxSuggestions + 1)))
+                .andExpect(status().isBadRequest());
+        verify(service, times(0)).completeName(any(), anyInt());
+    }
 }
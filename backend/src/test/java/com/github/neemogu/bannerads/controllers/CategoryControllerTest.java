@@ -5,6 +5,8 @@ import com.github.neemogu.bannerads.category.Category;
 import com.github.neemogu.bannerads.category.CategoryController;
 import com.github.neemogu.bannerads.category.CategoryFetchParameters;
 import com.github.neemogu.bannerads.category.CategoryService;
+import com.github.neemogu.bannerads.util.ListPage;
+import com.github.neemogu.bannerads.util.PageCursor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -26,6 +28,7 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -207,4 +210,59 @@ public class CategoryControllerTest {
                 .andExpect(content().string("OK"));
         verify(service, times(2)).saveCategory(any());
     }
+
+    @Test
+    public void givenFullPage_whenGetCategoriesList_thenReturnNextPageCursor() throws Exception {
+        PageCursor next = new PageCursor("id", null, 2);
+        when(service.getCategoryList(any())).thenReturn(categories);
+        when(service.getCursorAfter(categories.get(categories.size() - 1))).thenReturn(next);
+        mockMvc.perform(get("/categories/list")
+                .param("pageSize", String.valueOf(categories.size())))
+                .andExpect(status().isOk())
+                .andExpect(header().string(PageCursor.nextPageHeader, next.encode()));
+    }
+
+    @Test
+    public void givenInvalidCursor_whenGetCategoriesList_thenReturnHTTPBadRequest() throws Exception {
+        when(service.decodeCursor("invalid")).thenReturn(Optional.empty());
+        mockMvc.perform(get("/categories/list")
+                .param("cursor", "invalid"))
+                .andExpect(status().isBadRequest());
+        verify(service, times(0)).getCategoryList(any());
+    }
+
+    @Test
+    public void whenGetCategoriesPage_thenReturnHTTPOkWithCategoriesAndTotal() throws Exception {
+        ListPage<Category> page = ListPage.of(categories, 7, 3);
+        when(service.getCategoryPage(any())).thenReturn(page);
+        MvcResult result = mockMvc.perform(get("/categories/page")
+                .param("pageSize", "3"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString())
+                .isEqualToIgnoringWhitespace(objectMapper.writeValueAsString(page));
+        assertThat(page.getPageCount()).isEqualTo(3);
+        verify(service, times(0)).getCategoryListPageCount(any());
+    }
+
+    @Test
+    public void whenGetNames_thenReturnHTTPOkWithCompletedNames() throws Exception {
+        when(service.completeName("mu", 5)).thenReturn(List.of("Music", "Musicals"));
+        MvcResult result = mockMvc.perform(get("/categories/names")
+                .param("prefix", "mu")
+                .param("limit", "5"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString())
+                .isEqualTo(objectMapper.writeValueAsString(List.of("Music", "Musicals")));
+    }
+
+    @Test
+    public void givenTooMuchLimit_whenGetNames_thenReturnHTTPBadRequest() throws Exception {
+        mockMvc.perform(get("/categories/names")
+                .param("prefix", "mu")
+                .param("limit", String.valueOf(CategoryController.maxSuggestions + 1)))
+                .andExpect(status().isBadRequest());
+        verify(service, times(0)).completeName(any(), anyInt());
+    }
 }
@@ -0,0 +1,80 @@
+package com.github.neemogu.bannerads.controllers;
+
+import com.github.neemogu.bannerads.request.ImpressionExportController;
+import com.github.neemogu.bannerads.request.ImpressionExportFilter;
+import com.github.neemogu.bannerads.request.ImpressionExportFormat;
+import com.github.neemogu.bannerads.request.ImpressionExporter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(controllers = ImpressionExportController.class)
+public class ImpressionExportControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private ImpressionExporter exporter;
+
+    @Test
+    public void givenFilters_whenExport_thenStreamExportedCsv() throws Exception {
+        when(exporter.export(any(), eq(ImpressionExportFormat.CSV), any())).thenAnswer(invocation -> {
+            invocation.getArgument(2, OutputStream.class).write("id\n1\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+        MvcResult result = mockMvc.perform(get("/impressions/export")
+                .param("format", "CSV")
+                .param("from", "2021-09-01T00:00:00Z")
+                .param("to", "2021-09-02T00:00:00Z")
+                .param("categoryId", "3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/csv;charset=UTF-8"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"impressions.csv\""))
+                .andExpect(content().string("id\n1\n"));
+
+        ArgumentCaptor<ImpressionExportFilter> filterCaptor = ArgumentCaptor.forClass(ImpressionExportFilter.class);
+        verify(exporter, times(1)).export(filterCaptor.capture(), eq(ImpressionExportFormat.CSV), any());
+        assertThat(filterCaptor.getValue().getFrom().toInstant()).isEqualTo(Instant.parse("2021-09-01T00:00:00Z"));
+        assertThat(filterCaptor.getValue().getTo().toInstant()).isEqualTo(Instant.parse("2021-09-02T00:00:00Z"));
+        assertThat(filterCaptor.getValue().getCategoryId()).isEqualTo(3);
+        assertThat(filterCaptor.getValue().getBannerId()).isNull();
+    }
+
+    @Test
+    public void givenEmptyTimeRange_whenExport_thenReturnHTTPBadRequest() throws Exception {
+        mockMvc.perform(get("/impressions/export")
+                .param("from", "2021-09-02T00:00:00Z")
+                .param("to", "2021-09-01T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(exporter);
+    }
+
+    @Test
+    public void givenInvalidDate_whenExport_thenReturnHTTPBadRequest() throws Exception {
+        mockMvc.perform(get("/impressions/export")
+                .param("from", "yesterday"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(exporter);
+    }
+}
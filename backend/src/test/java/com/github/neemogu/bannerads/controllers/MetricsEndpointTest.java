@@ -0,0 +1,36 @@
+package com.github.neemogu.bannerads.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "management.endpoints.web.exposure.include=health,metrics,prometheus")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class MetricsEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void whenRequestsAreServed_thenTheirTimersArePublishedOnPrometheusEndpoint() throws Exception {
+        mockMvc.perform(get("/bid").param("category", "not-existing"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket{")))
+                .andExpect(content().string(containsString("uri=\"/bid\"")))
+                .andExpect(content().string(containsString("bannerads_bid_step_seconds_bucket{")))
+                .andExpect(content().string(containsString("step=\"category_lookup\"")));
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.neemogu.bannerads.controllers;
 
+import com.github.neemogu.bannerads.banner.EncodedContent;
 import com.github.neemogu.bannerads.exceptions.BadRequestException;
 import com.github.neemogu.bannerads.request.RequestController;
 import com.github.neemogu.bannerads.request.RequestService;
@@ -11,13 +12,20 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -30,29 +38,65 @@ public class RequestControllerTest {
 
     @Test
     public void whenServiceThrowsBadRequestException_shouldReturnHTTPBadRequest() throws Exception {
-        when(requestService.getNextBannerContent(any(), any(), eq("music"))).thenThrow(BadRequestException.class);
+        when(requestService.getNextEncodedBannerContent(any(), any(), eq("music"))).thenThrow(BadRequestException.class);
         mockMvc.perform(get("/bid")
                 .param("category", "music"))
                 .andExpect(status().isBadRequest());
-        verify(requestService, times(1)).getNextBannerContent(any(), any(), eq("music"));
+        verify(requestService, times(1)).getNextEncodedBannerContent(any(), any(), eq("music"));
     }
 
     @Test
     public void whenServiceReturnsOk_shouldReturnHTTPOkWithBannerContent() throws Exception {
-        when(requestService.getNextBannerContent(any(), any(), eq("music"))).thenReturn(Optional.of("CONTENT"));
+        when(requestService.getNextEncodedBannerContent(any(), any(), eq("music"))).thenReturn(Optional.of(EncodedContent.of("CONTENT", true)));
         mockMvc.perform(get("/bid")
                 .param("category", "music"))
                 .andExpect(status().isOk())
                 .andExpect(content().string("CONTENT"));
-        verify(requestService, times(1)).getNextBannerContent(any(), any(), eq("music"));
+        verify(requestService, times(1)).getNextEncodedBannerContent(any(), any(), eq("music"));
     }
 
     @Test
     public void whenServiceReturnsNoContent_shouldReturnHTTPNoContent() throws Exception {
-        when(requestService.getNextBannerContent(any(), any(), eq("music"))).thenReturn(Optional.empty());
+        when(requestService.getNextEncodedBannerContent(any(), any(), eq("music"))).thenReturn(Optional.empty());
         mockMvc.perform(get("/bid")
                 .param("category", "music"))
                 .andExpect(status().isNoContent());
-        verify(requestService, times(1)).getNextBannerContent(any(), any(), eq("music"));
+        verify(requestService, times(1)).getNextEncodedBannerContent(any(), any(), eq("music"));
+    }
+
+    @Test
+    public void givenClientAcceptingGzip_whenServiceReturnsOk_shouldReturnGzippedBannerContent() throws Exception {
+        String text = "<div class=\"banner\">Ünïcödé banner</div>".repeat(100);
+        when(requestService.getNextEncodedBannerContent(any(), any(), eq("music")))
+                .thenReturn(Optional.of(EncodedContent.of(text, true)));
+        byte[] body = mockMvc.perform(get("/bid")
+                .param("category", "music")
+                .header("Accept-Encoding", "deflate;q=0.5, gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().stringValues("Vary", hasItem("Accept-Encoding")))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(gunzip(body), text);
+    }
+
+    @Test
+    public void givenClientRejectingCompression_whenServiceReturnsOk_shouldReturnPlainUtf8BannerContent()
+            throws Exception {
+        String text = "Ünïcödé banner ".repeat(100);
+        when(requestService.getNextEncodedBannerContent(any(), any(), eq("music")))
+                .thenReturn(Optional.of(EncodedContent.of(text, true)));
+        mockMvc.perform(get("/bid")
+                .param("category", "music")
+                .header("Accept-Encoding", "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().contentType("text/plain;charset=UTF-8"))
+                .andExpect(content().bytes(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
     }
 }
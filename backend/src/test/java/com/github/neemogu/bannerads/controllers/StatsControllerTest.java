@@ -0,0 +1,114 @@
+package com.github.neemogu.bannerads.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.neemogu.bannerads.stats.BannerDailyStats;
+import com.github.neemogu.bannerads.stats.ReportGranularity;
+import com.github.neemogu.bannerads.stats.ReportGrouping;
+import com.github.neemogu.bannerads.stats.RevenueReportRow;
+import com.github.neemogu.bannerads.stats.StatsController;
+import com.github.neemogu.bannerads.stats.StatsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(controllers = StatsController.class)
+public class StatsControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @MockBean
+    private StatsService service;
+
+    @Test
+    public void whenGetDailyStats_thenReturnHTTPOkWithStats() throws Exception {
+        LocalDate day = LocalDate.of(2021, 9, 1);
+        List<BannerDailyStats> stats = List.of(new BannerDailyStats(day, 1, 2, 10L, 7L, 35.5));
+        when(service.getDailyStats(day, day.plusDays(1), null, 2)).thenReturn(stats);
+        MvcResult result = mockMvc.perform(get("/stats/daily")
+                .param("from", "2021-09-01")
+                .param("to", "2021-09-02")
+                .param("categoryId", "2"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString())
+                .isEqualToIgnoringWhitespace(objectMapper.writeValueAsString(stats));
+        assertThat(result.getResponse().getContentAsString()).contains("\"date\":\"2021-09-01\"");
+        verify(service, times(1)).getDailyStats(eq(day), eq(day.plusDays(1)), isNull(), eq(2));
+    }
+
+    @Test
+    public void givenEmptyOrTooLongRange_whenGetDailyStats_thenReturnHTTPBadRequest() throws Exception {
+        mockMvc.perform(get("/stats/daily")
+                .param("from", "2021-09-02")
+                .param("to", "2021-09-01"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/stats/daily")
+                .param("from", "2020-01-01")
+                .param("to", "2021-09-01"))
+                .andExpect(status().isBadRequest());
+        verify(service, times(0)).getDailyStats(any(), any(), any(), any());
+    }
+
+    @Test
+    public void whenGetRevenueReport_thenReturnHTTPOkWithRows() throws Exception {
+        LocalDate day = LocalDate.of(2021, 9, 1);
+        List<RevenueReportRow> rows = List.of(
+                new RevenueReportRow(Instant.parse("2021-09-01T10:00:00Z"), 2, null, 10, 35.5));
+        when(service.getRevenueReport(day, day, ReportGranularity.HOUR, ReportGrouping.CATEGORY, null, null))
+                .thenReturn(rows);
+        MvcResult result = mockMvc.perform(get("/stats/revenue")
+                .param("from", "2021-09-01")
+                .param("to", "2021-09-01")
+                .param("granularity", "HOUR")
+                .param("groupBy", "CATEGORY"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString())
+                .isEqualToIgnoringWhitespace(objectMapper.writeValueAsString(rows));
+    }
+
+    @Test
+    public void givenDefaults_whenGetRevenueReport_thenDailyRevenuePerBannerIsReturned() throws Exception {
+        LocalDate day = LocalDate.of(2021, 9, 1);
+        mockMvc.perform(get("/stats/revenue")
+                .param("from", "2021-09-01")
+                .param("to", "2021-09-30")
+                .param("bannerId", "1"))
+                .andExpect(status().isOk());
+        verify(service, times(1)).getRevenueReport(day, day.plusDays(29),
+                ReportGranularity.DAY, ReportGrouping.BANNER, 1, null);
+    }
+
+    @Test
+    public void givenTooLongHourlyRange_whenGetRevenueReport_thenReturnHTTPBadRequest() throws Exception {
+        mockMvc.perform(get("/stats/revenue")
+                .param("from", "2021-09-01")
+                .param("to", "2021-10-15")
+                .param("granularity", "HOUR"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/stats/revenue")
+                .param("from", "2021-09-02")
+                .param("to", "2021-09-01"))
+                .andExpect(status().isBadRequest());
+        verify(service, times(0)).getRevenueReport(any(), any(), any(), any(), any(), any());
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerIndex;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.banner.TargetingIndex;
+import com.github.neemogu.bannerads.banner.UserAgentFamily;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.util.IpAddress;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BannerIndexTest {
+    @Mock
+    private BannerRepository repository;
+    @InjectMocks
+    private BannerIndex index;
+
+    private Category category1;
+    private Category category2;
+    private Banner b1;
+    private Banner b2;
+    private Banner b3;
+
+    @BeforeEach
+    public void init() {
+        category1 = new Category(1, "Music", "music", false);
+        category2 = new Category(2, "Art", "art", false);
+        b1 = new Banner(1, "ban1", 2.99, category1, "BANNER_1", false);
+        b2 = new Banner(2, "ban2", 4.49, category1, "BANNER_2", false);
+        b3 = new Banner(3, "ban3", 1.99, category2, "BANNER_3", false);
+        when(repository.findAllByDeletedFalse()).thenReturn(List.of(b1, b2, b3));
+        index.rebuild();
+    }
+
+    private List<Integer> ids(Integer categoryId) {
+        return index.getCategoryBanners(categoryId).stream().map(Banner::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void whenRebuild_thenBannersAreGroupedByCategoryAndOrderedByPriceDescending() {
+        assertEquals(ids(category1.getId()), List.of(2, 1));
+        assertEquals(ids(category2.getId()), List.of(3));
+        assertTrue(index.getCategoryBanners(42).isEmpty());
+    }
+
+    @Test
+    public void givenNewBanner_whenPut_thenItIsInsertedByPrice() {
+        index.put(new Banner(4, "ban4", 3.49, category1, "BANNER_4", false));
+        assertEquals(ids(category1.getId()), List.of(2, 4, 1));
+    }
+
+    @Test
+    public void givenBannerMovedToAnotherCategory_whenPut_thenItIsRemovedFromPreviousCategory() {
+        index.put(new Banner(b2.getId(), b2.getName(), b2.getPrice(), category2, b2.getContent(), false));
+        assertEquals(ids(category1.getId()), List.of(1));
+        assertEquals(ids(category2.getId()), List.of(2, 3));
+    }
+
+    @Test
+    public void givenIndexSnapshot_whenBannerChanged_thenSnapshotTakenBeforeIsNotModified() {
+        List<Banner> before = index.getCategoryBanners(category1.getId());
+        index.remove(b2.getId());
+        b1.setPrice(100.0);
+        assertEquals(before.size(), 2);
+        assertEquals(ids(category1.getId()), List.of(1));
+        assertEquals(index.getCategoryBanners(category1.getId()).get(0).getPrice(), 2.99);
+    }
+
+    @Test
+    public void givenDeletedCategory_whenUpdateCategory_thenItsBannersAreRemoved() {
+        index.updateCategory(new Category(category2.getId(), "Arts", "arts", false));
+        assertEquals(index.getCategoryBanners(category2.getId()).get(0).getCategory().getReqName(), "arts");
+
+        index.updateCategory(new Category(category2.getId(), "Arts", "arts", true));
+        assertTrue(index.getCategoryBanners(category2.getId()).isEmpty());
+    }
+
+    @Test
+    public void givenTargetedBanner_whenPutOrRemove_thenTargetingOfCategoryIsRecompiled() {
+        IpAddress address = IpAddress.parse("10.0.0.1");
+        index.put(new Banner(4, "ban4", 3.49, category1, "BANNER_4", false, null, null, "CHROME", null));
+        TargetingIndex targeting = index.getCategoryTargeting(category1.getId());
+        assertSame(targeting.getBanners(), index.getCategoryBanners(category1.getId()));
+        assertFalse(targeting.eligibleFor(UserAgentFamily.FIREFOX, address).containsBanner(4));
+        assertTrue(targeting.eligibleFor(UserAgentFamily.FIREFOX, address).containsBanner(1));
+
+        index.put(new Banner(4, "ban4", 3.49, category1, "BANNER_4", false, null, null, "FIREFOX", null));
+        targeting = index.getCategoryTargeting(category1.getId());
+        assertTrue(targeting.eligibleFor(UserAgentFamily.FIREFOX, address).containsBanner(4));
+        assertFalse(targeting.eligibleFor(UserAgentFamily.CHROME, address).containsBanner(4));
+
+        index.remove(4);
+        assertSame(index.getCategoryTargeting(category1.getId()).eligibleFor(UserAgentFamily.CHROME, address),
+                TargetingIndex.EligibleBanners.all());
+        assertTrue(index.getCategoryTargeting(42).getBanners().isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.BannerFetchParameters;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.banner.BannerService;
+import com.github.neemogu.bannerads.banner.BannerSortBy;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.util.QueryCounter;
+import com.github.neemogu.bannerads.util.QueryCountingConfiguration;
+import com.github.neemogu.bannerads.util.SortDirection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@Import(QueryCountingConfiguration.class)
+public class BannerQueryPlanIntegrationTest {
+    private static final int bannersCount = 400;
+
+    @Autowired
+    private BannerService service;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Category category;
+
+    @BeforeEach
+    public void initDB() {
+        category = categoryRepository.save(new Category(null, "Music", "music", false));
+        Category other = categoryRepository.save(new Category(null, "Art", "art", false));
+        for (int i = 0; i < bannersCount; ++i) {
+            jdbcTemplate.update("insert into banner (name, price, category_id, content, deleted) values (?, ?, ?, ?, ?)",
+                    "ban" + i, i % 97, i % 8 == 0 ? category.getId() : other.getId(), "BANNER_" + i, i % 5 == 0);
+        }
+        // the planner chooses indexes by selectivity, which is unknown until statistics are collected
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bannerRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private String explain(BannerFetchParameters parameters) {
+        List<String> statements = QueryCounter.statementsOf(() -> service.getBannerList(parameters));
+        assertEquals(statements.size(), 1);
+        String sql = statements.get(0);
+        Object[] arguments = new Object[(int) sql.chars().filter(c -> c == '?').count()];
+        // limit and offset
+        Arrays.fill(arguments, parameters.getPageSize());
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, arguments);
+    }
+
+    @Test
+    public void givenCategory_bannersByPriceShouldBeScannedWithCategoryPriceIndex() {
+        String plan = explain(BannerFetchParameters.builder()
+                .categoryId(category.getId())
+                .sortBy(BannerSortBy.PRICE)
+                .sortDirection(SortDirection.DESC)
+                .build());
+        assertTrue(plan.contains("BANNER_CATEGORY_PRICE_IDX"), plan);
+    }
+
+    @Test
+    public void givenNoCategory_bannersByPriceShouldBeScannedWithPriceIndex() {
+        String plan = explain(BannerFetchParameters.builder()
+                .sortBy(BannerSortBy.PRICE)
+                .sortDirection(SortDirection.DESC)
+                .page(1)
+                .build());
+        assertTrue(plan.contains("BANNER_PRICE_IDX"), plan);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.TargetingIndex;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.request.BannerSelectionStrategies;
+import com.github.neemogu.bannerads.request.PriceWeightedSelection;
+import com.github.neemogu.bannerads.request.RoundRobinSelection;
+import com.github.neemogu.bannerads.request.SelectionStrategyType;
+import com.github.neemogu.bannerads.request.StrictPriceSelection;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BannerSelectionStrategyTest {
+    private final Category category = new Category(1, "Music", "music", false);
+    private final List<Banner> banners = List.of(
+            new Banner(1, "ban1", 3.0, category, "BANNER_1", false),
+            new Banner(2, "ban2", 1.0, category, "BANNER_2", false),
+            new Banner(3, "ban3", 0.0, category, "BANNER_3", false)
+    );
+    private final TargetingIndex compiled = new TargetingIndex(banners);
+
+    @Test
+    public void givenStrictPrice_thenMostPricedBannerIsFirst() {
+        assertEquals(new StrictPriceSelection().firstCandidate(1, compiled), 0);
+    }
+
+    @Test
+    public void givenRoundRobin_thenBannersOfEachCategoryAreFirstInTurn() {
+        RoundRobinSelection strategy = new RoundRobinSelection();
+        assertEquals(strategy.firstCandidate(1, compiled), 0);
+        assertEquals(strategy.firstCandidate(1, compiled), 1);
+        assertEquals(strategy.firstCandidate(2, compiled), 0);
+        assertEquals(strategy.firstCandidate(1, compiled), 2);
+        assertEquals(strategy.firstCandidate(1, compiled), 0);
+        assertEquals(strategy.firstCandidate(1, new TargetingIndex(banners.subList(0, 1))), 0);
+    }
+
+    @Test
+    public void givenPriceWeighted_thenBannersAreFirstProportionallyToPrice() {
+        PriceWeightedSelection strategy = new PriceWeightedSelection();
+        int times = 20000;
+        int[] counts = new int[banners.size()];
+        for (int i = 0; i < times; ++i) {
+            ++counts[strategy.firstCandidate(1, compiled)];
+        }
+        assertEquals(counts[0] / (double) times, 0.75, 0.02);
+        assertEquals(counts[2], 0);
+    }
+
+    @Test
+    public void givenPriceWeighted_whenBannersChange_thenTableOfNewListIsUsed() {
+        PriceWeightedSelection strategy = new PriceWeightedSelection();
+        assertEquals(strategy.firstCandidate(1, new TargetingIndex(banners.subList(0, 1))), 0);
+        TargetingIndex changed = new TargetingIndex(List.of(banners.get(2), banners.get(1)));
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(strategy.firstCandidate(1, changed), 1);
+        }
+        assertNull(new TargetingIndex(List.of()).getPriceTable());
+    }
+
+    @Test
+    public void whenResolveStrategyOfCategory_thenConfiguredOrDefaultOneIsReturned() {
+        BannerSelectionStrategies strategies = new BannerSelectionStrategies(
+                List.of(new StrictPriceSelection(), new RoundRobinSelection()), SelectionStrategyType.ROUND_ROBIN);
+        assertEquals(strategies.forCategory(category).getType(), SelectionStrategyType.ROUND_ROBIN);
+        Category strict = new Category(2, "Art", "art", false, SelectionStrategyType.STRICT_PRICE);
+        assertEquals(strategies.forCategory(strict).getType(), SelectionStrategyType.STRICT_PRICE);
+        Category weighted = new Category(3, "Tech", "tech", false, SelectionStrategyType.PRICE_WEIGHTED);
+        assertEquals(strategies.forCategory(weighted).getType(), SelectionStrategyType.ROUND_ROBIN);
+        assertThrows(IllegalArgumentException.class, () -> new BannerSelectionStrategies(
+                List.of(new StrictPriceSelection()), SelectionStrategyType.ROUND_ROBIN));
+    }
+}
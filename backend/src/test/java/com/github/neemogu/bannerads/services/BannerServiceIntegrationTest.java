@@ -3,6 +3,10 @@ package com.github.neemogu.bannerads.services;
 import com.github.neemogu.bannerads.banner.*;
 import com.github.neemogu.bannerads.category.Category;
 import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.util.ListPage;
+import com.github.neemogu.bannerads.util.PageCursor;
+import com.github.neemogu.bannerads.util.QueryCounter;
+import com.github.neemogu.bannerads.util.QueryCountingConfiguration;
 import com.github.neemogu.bannerads.util.SortDirection;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,16 +14,21 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static com.github.neemogu.bannerads.util.QueryCounter.assertStatementBudget;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
+@Import(QueryCountingConfiguration.class)
 public class BannerServiceIntegrationTest {
     @Autowired
     private BannerService service;
@@ -27,6 +36,8 @@ public class BannerServiceIntegrationTest {
     private BannerRepository bannerRepository;
     @Autowired
     private CategoryRepository categoryRepository;
+    @Autowired
+    private BannerIndex bannerIndex;
 
     private Category category1;
     private Category category2;
@@ -47,12 +58,16 @@ public class BannerServiceIntegrationTest {
         Banner banner5 = new Banner(null, "SpaceX", 8.29, category2, "SX", false);
         Banner banner6 = new Banner(null, "BleSs", 10.99, category2, "BS", false);
         bannerRepository.saveAll(List.of(banner1, banner2, banner3, banner4, banner5, banner6));
+        // banners are saved bypassing the service
+        bannerIndex.rebuild();
     }
 
     @AfterEach
     public void tearDown() {
         bannerRepository.deleteAll();
         categoryRepository.deleteAll();
+        // banners are changed bypassing the service
+        service.invalidateCounts();
     }
 
     @Test
@@ -68,11 +83,11 @@ public class BannerServiceIntegrationTest {
         BannerFetchParameters parameters1 = BannerFetchParameters.builder().pageSize(3).page(0).build();
         BannerFetchParameters parameters2 = BannerFetchParameters.builder().pageSize(3).page(1).build();
 
-        List<String> res1 = service.getBannerList(parameters1).stream().map(Banner::getName).collect(Collectors.toList());
+        List<String> res1 = service.getBannerList(parameters1).stream().map(BannerSummary::getName).collect(Collectors.toList());
         assertEquals(res1.size(), 3);
         assertTrue(res1.containsAll(List.of("The Beatles", "Les Paul", "SpaceX")));
 
-        List<String> res2 = service.getBannerList(parameters2).stream().map(Banner::getName).collect(Collectors.toList());
+        List<String> res2 = service.getBannerList(parameters2).stream().map(BannerSummary::getName).collect(Collectors.toList());
         assertEquals(res2.size(), 1);
         assertTrue(res2.contains("BleSs"));
     }
@@ -83,8 +98,8 @@ public class BannerServiceIntegrationTest {
                 .sortBy(BannerSortBy.NAME).sortDirection(SortDirection.ASC).build();
         BannerFetchParameters parameters2 = BannerFetchParameters.builder().pageSize(6).page(0)
                 .sortBy(BannerSortBy.NAME).sortDirection(SortDirection.DESC).build();
-        List<String> res1 = service.getBannerList(parameters1).stream().map(Banner::getName).collect(Collectors.toList());
-        List<String> res2 = service.getBannerList(parameters2).stream().map(Banner::getName).collect(Collectors.toList());
+        List<String> res1 = service.getBannerList(parameters1).stream().map(BannerSummary::getName).collect(Collectors.toList());
+        List<String> res2 = service.getBannerList(parameters2).stream().map(BannerSummary::getName).collect(Collectors.toList());
 
         assertEquals(res1.size(), 4);
         assertEquals(res2.size(), 4);
@@ -106,8 +121,8 @@ public class BannerServiceIntegrationTest {
                 .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.ASC).build();
         BannerFetchParameters parameters2 = BannerFetchParameters.builder().pageSize(6).page(0)
                 .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC).build();
-        List<String> res1 = service.getBannerList(parameters1).stream().map(Banner::getName).collect(Collectors.toList());
-        List<String> res2 = service.getBannerList(parameters2).stream().map(Banner::getName).collect(Collectors.toList());
+        List<String> res1 = service.getBannerList(parameters1).stream().map(BannerSummary::getName).collect(Collectors.toList());
+        List<String> res2 = service.getBannerList(parameters2).stream().map(BannerSummary::getName).collect(Collectors.toList());
 
         assertEquals(res1.size(), 4);
         assertEquals(res2.size(), 4);
@@ -131,7 +146,7 @@ public class BannerServiceIntegrationTest {
                 .searchName("Les").build();
 
         List<String> result = service.getBannerList(parameters1)
-                .stream().map(Banner::getName).collect(Collectors.toList());
+                .stream().map(BannerSummary::getName).collect(Collectors.toList());
         assertEquals(result.size(), 3);
         assertTrue(result.containsAll(List.of("Les Paul", "BleSs", "The Beatles")));
 
@@ -146,7 +161,7 @@ public class BannerServiceIntegrationTest {
                 .categoryId(category1.getId()).build();
 
         List<String> result = service.getBannerList(parameters1)
-                .stream().map(Banner::getName).collect(Collectors.toList());
+                .stream().map(BannerSummary::getName).collect(Collectors.toList());
         assertEquals(result.size(), 2);
         assertTrue(result.containsAll(List.of("Les Paul", "The Beatles")));
 
@@ -160,7 +175,7 @@ public class BannerServiceIntegrationTest {
                 .sortDirection(SortDirection.ASC).build();
         BannerFetchParameters parameters2 = BannerFetchParameters.builder().pageSize(1)
                 .categoryId(category2.getId()).searchName("spa").build();
-        List<String> result = service.getBannerList(parameters1).stream().map(Banner::getName).collect(Collectors.toList());
+        List<String> result = service.getBannerList(parameters1).stream().map(BannerSummary::getName).collect(Collectors.toList());
 
         assertEquals(result.size(), 2);
         assertEquals(result.get(0), "Les Paul");
@@ -168,4 +183,159 @@ public class BannerServiceIntegrationTest {
 
         assertEquals(service.getBannerListPageCount(parameters2), 1);
     }
+
+    @Test
+    public void listingBannersOfDifferentCategoriesShouldTakeOneStatement() {
+        BannerFetchParameters parameters = BannerFetchParameters.builder().pageSize(6).page(0)
+                .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC).build();
+        assertStatementBudget(1, () -> assertEquals(service.getBannerList(parameters).stream()
+                .map(b -> b.getCategory().getName()).distinct().count(), 2));
+        assertStatementBudget(1, () -> service.getBannerListPageCount(parameters));
+    }
+
+    @Test
+    public void listingsShouldNotSelectBannerContent() {
+        BannerFetchParameters parameters = BannerFetchParameters.builder().build();
+        List<String> statements = new ArrayList<>(QueryCounter.statementsOf(() -> service.getBannerList(parameters)));
+        statements.addAll(QueryCounter.statementsOf(() -> service.getBannerPage(parameters)));
+        assertEquals(statements.size(), 2);
+        statements.forEach(sql -> assertFalse(sql.contains("content"), sql));
+        assertEquals(service.getSpecificBanner(service.getBannerList(parameters).get(0).getId())
+                .map(Banner::getContent).orElse(null), "BB");
+    }
+
+    @Test
+    public void listingsOfOneShapeShouldBindValuesToTheSameStatement() {
+        BannerFetchParameters.BannerFetchParametersBuilder parameters = BannerFetchParameters.builder()
+                .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC);
+        List<String> firstCategory = QueryCounter.statementsOf(() -> service.getBannerList(
+                parameters.categoryId(category1.getId()).build()));
+        List<String> secondCategory = QueryCounter.statementsOf(() -> service.getBannerList(
+                parameters.categoryId(category2.getId()).build()));
+        assertEquals(secondCategory, firstCategory);
+    }
+
+    @Test
+    public void savingBannersShouldStayWithinStatementBudget() {
+        Banner banner = new Banner(null, "Queen", 4.99, category1, "QN", false);
+        // category check, name check, insert
+        assertStatementBudget(3, () -> assertTrue(service.saveBanner(banner).isEmpty()));
+        banner.setPrice(5.99);
+        // category check, id check, name check, merge selects of the banner and its category, update
+        assertStatementBudget(6, () -> assertTrue(service.saveBanner(banner).isEmpty()));
+    }
+
+    @Test
+    public void givenCursor_shouldContinueAfterItRegardlessOfBannersInsertedBefore() {
+        BannerFetchParameters first = BannerFetchParameters.builder().pageSize(2)
+                .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC).build();
+        List<BannerSummary> page1 = service.getBannerList(first);
+        assertEquals(page1.stream().map(BannerSummary::getName).collect(Collectors.toList()), List.of("Les Paul", "BleSs"));
+
+        bannerRepository.save(new Banner(null, "Queen", 11.99, category1, "QN", false));
+        PageCursor cursor = service.getCursorAfter(page1.get(1), first);
+        BannerFetchParameters next = BannerFetchParameters.builder().pageSize(2)
+                .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC)
+                .after(service.decodeCursor(cursor.encode(), BannerSortBy.PRICE, SortDirection.DESC).orElseThrow())
+                .build();
+        List<String> page2 = service.getBannerList(next).stream().map(BannerSummary::getName).collect(Collectors.toList());
+        assertEquals(page2, List.of("SpaceX", "The Beatles"));
+    }
+
+    @Test
+    public void givenCursorOfEqualSortKey_shouldContinueWithGreaterIds() {
+        BannerFetchParameters parameters = BannerFetchParameters.builder().pageSize(1)
+                .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC).build();
+        List<String> names = new ArrayList<>();
+        List<BannerSummary> page = service.getBannerList(parameters);
+        while (!page.isEmpty()) {
+            names.add(page.get(0).getName());
+            parameters = BannerFetchParameters.builder().pageSize(1)
+                    .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC)
+                    .after(service.getCursorAfter(page.get(0), parameters)).build();
+            page = service.getBannerList(parameters);
+        }
+        assertEquals(names, List.of("Les Paul", "BleSs", "SpaceX", "The Beatles"));
+    }
+
+    @Test
+    public void givenCursorOfAnotherOrder_whenDecodeCursor_thenReturnEmpty() {
+        BannerSummary banner = service.getBannerList(BannerFetchParameters.builder().build()).get(0);
+        BannerFetchParameters byName = BannerFetchParameters.builder()
+                .sortBy(BannerSortBy.NAME).sortDirection(SortDirection.ASC).build();
+        String token = service.getCursorAfter(banner, byName).encode();
+        assertTrue(service.decodeCursor(token, BannerSortBy.NAME, SortDirection.ASC).isPresent());
+        assertTrue(service.decodeCursor(token, BannerSortBy.PRICE, SortDirection.ASC).isEmpty());
+        assertTrue(service.decodeCursor(token, BannerSortBy.NAME, SortDirection.DESC).isEmpty());
+        assertTrue(service.decodeCursor("not a cursor", BannerSortBy.NAME, SortDirection.ASC).isEmpty());
+    }
+
+    @Test
+    public void givenWindowCount_whenGetBannerPage_thenPageAndTotalAreSelectedByOneStatement() {
+        BannerFetchParameters parameters = BannerFetchParameters.builder().pageSize(3).page(0)
+                .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC).build();
+        assertStatementBudget(1, () -> {
+            ListPage<BannerSummary> page = service.getBannerPage(parameters);
+            assertEquals(page.getItems().stream().map(BannerSummary::getName).collect(Collectors.toList()),
+                    List.of("Les Paul", "BleSs", "SpaceX"));
+            assertEquals(page.getTotal(), 4);
+            assertEquals(page.getPageCount(), 2);
+        });
+        // the total is cached along with the page
+        assertStatementBudget(0, () -> assertEquals(service.getBannerListPageCount(parameters), 2));
+    }
+
+    @Test
+    public void givenPageAfterTheLast_whenGetBannerPage_thenTotalIsCountedSeparately() {
+        BannerFetchParameters parameters = BannerFetchParameters.builder().pageSize(3).page(5)
+                .categoryId(category2.getId()).build();
+        ListPage<BannerSummary> page = service.getBannerPage(parameters);
+        assertTrue(page.getItems().isEmpty());
+        assertEquals(page.getTotal(), 2);
+        assertEquals(page.getPageCount(), 1);
+    }
+
+    @Test
+    public void givenCachedCount_whenBannerSaved_thenCountIsInvalidated() {
+        BannerFetchParameters parameters = BannerFetchParameters.builder().pageSize(2).searchName("l").build();
+        assertEquals(service.getBannerPage(parameters).getTotal(), 3);
+        assertTrue(service.saveBanner(new Banner(null, "Queen Live", 4.99, category1, "QN", false)).isEmpty());
+        assertEquals(service.getBannerListPageCount(parameters), 2);
+
+        BannerFetchParameters next = BannerFetchParameters.builder().pageSize(2).searchName("l")
+                .after(service.getCursorAfter(service.getBannerList(parameters).get(1), parameters)).build();
+        assertStatementBudget(1, () -> assertEquals(service.getBannerPage(next).getTotal(), 4));
+    }
+
+    @Test
+    public void givenSearchName_shouldFilterSortAndPageBannersWithoutQueryingDatabase() {
+        BannerFetchParameters parameters = BannerFetchParameters.builder().pageSize(2).searchName("LE")
+                .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.ASC).build();
+        assertStatementBudget(0, () -> {
+            ListPage<BannerSummary> page = service.getBannerPage(parameters);
+            assertEquals(page.getItems().stream().map(BannerSummary::getName).collect(Collectors.toList()),
+                    List.of("The Beatles", "Les Paul"));
+            assertEquals(page.getTotal(), 3);
+
+            BannerFetchParameters next = BannerFetchParameters.builder().pageSize(2).searchName("LE")
+                    .sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.ASC)
+                    .after(service.getCursorAfter(page.getItems().get(1), parameters)).build();
+            assertEquals(service.getBannerList(next).stream().map(BannerSummary::getName).collect(Collectors.toList()),
+                    List.of("BleSs"));
+        });
+    }
+
+    @Test
+    public void givenBannerRenamedAndDeleted_shouldSearchAndCompleteCurrentNames() {
+        BannerSummary banner = service.getBannerList(BannerFetchParameters.builder().searchName("spacex").build()).get(0);
+        Banner renamed = new Banner(banner.getId(), "Blue Origin", banner.getPrice(), banner.getCategory(),
+                "SX", false);
+        assertTrue(service.saveBanner(renamed).isEmpty());
+
+        assertTrue(service.getBannerList(BannerFetchParameters.builder().searchName("spacex").build()).isEmpty());
+        assertStatementBudget(0, () -> assertEquals(service.completeName("bl", 10), List.of("BleSs", "Blue Origin")));
+
+        service.deleteBanner(banner.getId());
+        assertEquals(service.completeName("bl", 10), List.of("BleSs"));
+    }
 }
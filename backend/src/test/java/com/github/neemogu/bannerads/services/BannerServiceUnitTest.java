@@ -1,6 +1,7 @@
 package com.github.neemogu.bannerads.services;
 
 import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerIndex;
 import com.github.neemogu.bannerads.banner.BannerRepository;
 import com.github.neemogu.bannerads.banner.BannerService;
 import com.github.neemogu.bannerads.category.Category;
@@ -27,6 +28,8 @@ public class BannerServiceUnitTest {
     private BannerRepository repository;
     @Mock
     private CategoryRepository categoryRepository;
+    @Mock
+    private BannerIndex bannerIndex;
     @InjectMocks
     private BannerService service;
 
@@ -45,7 +48,7 @@ public class BannerServiceUnitTest {
 
     @Test
     public void givenBannerWithNotExistingCategory_whenSaveBanner_thenReturnNonEmptyOptional() {
-        when(categoryRepository.existsByIdAndDeletedFalse(category.getId())).thenReturn(false);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.empty());
 
         assertFalse(service.saveBanner(banner1).isEmpty());
     }
@@ -54,12 +57,27 @@ public class BannerServiceUnitTest {
     public void givenBannerWithNullIdAndUniqueName_whenSaveBanner_thenReturnEmptyOptional() {
         Banner toSave = new Banner(null, banner1.getName(), banner1.getPrice(),
                 banner1.getCategory(), banner1.getContent(), false);
-        when(categoryRepository.existsByIdAndDeletedFalse(category.getId())).thenReturn(true);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.of(category));
         when(repository.save(any(Banner.class))).thenReturn(banner1);
         when(repository.findByName(banner1.getName())).thenReturn(Optional.empty());
 
         assertEquals(service.saveBanner(toSave), Optional.empty());
         verify(repository, times(1)).save(toSave);
+        verify(bannerIndex, times(1)).put(toSave);
+    }
+
+    @Test
+    public void givenBannerWithInvalidTargeting_whenSaveBanner_thenReturnErrorAndNotSave() {
+        Banner toSave = new Banner(null, banner1.getName(), banner1.getPrice(),
+                banner1.getCategory(), banner1.getContent(), false);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.of(category));
+
+        toSave.setTargetUserAgents("CHROME,NETSCAPE");
+        assertTrue(service.saveBanner(toSave).isPresent());
+        toSave.setTargetUserAgents("chrome, firefox");
+        toSave.setTargetIpRanges("10.0.0.0/8, 300.0.0.1");
+        assertTrue(service.saveBanner(toSave).isPresent());
+        verify(repository, never()).save(any(Banner.class));
     }
 
     @Test
@@ -68,7 +86,7 @@ public class BannerServiceUnitTest {
                 banner3.getCategory(), banner3.getContent(), false);
         Banner saved = new Banner(4, banner3.getName(), banner3.getPrice(),
                 banner3.getCategory(), banner3.getContent(), false);
-        when(categoryRepository.existsByIdAndDeletedFalse(category.getId())).thenReturn(true);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.of(category));
         when(repository.save(toSave)).thenReturn(saved);
         when(repository.findByName(banner3.getName())).thenReturn(Optional.of(banner3));
 
@@ -82,16 +100,17 @@ public class BannerServiceUnitTest {
         Banner toSave = new Banner(null, banner2.getName(), banner2.getPrice(),
                 banner2.getCategory(), banner2.getContent(), false);
 
-        when(categoryRepository.existsByIdAndDeletedFalse(category.getId())).thenReturn(true);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.of(category));
         when(repository.findByName(banner2.getName())).thenReturn(Optional.of(banner2));
 
         assertFalse(service.saveBanner(toSave).isEmpty());
         verify(repository, times(0)).save(any());
+        verify(bannerIndex, times(0)).put(any());
     }
 
     @Test
     public void givenBannerWithNotExistingNotNullId_whenSaveBanner_thenReturnNonEmptyOptional() {
-        when(categoryRepository.existsByIdAndDeletedFalse(category.getId())).thenReturn(true);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.of(category));
         when(repository.existsByIdAndDeletedFalse(banner1.getId())).thenReturn(false);
         when(repository.existsByIdAndDeletedFalse(banner3.getId())).thenReturn(false);
 
@@ -106,7 +125,7 @@ public class BannerServiceUnitTest {
         Banner toSave = new Banner(banner1.getId(), banner1.getName(), banner1.getPrice(),
                 banner1.getCategory(), banner1.getContent(), false);
 
-        when(categoryRepository.existsByIdAndDeletedFalse(category.getId())).thenReturn(true);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.of(category));
         when(repository.save(any(Banner.class))).thenReturn(toSave);
         when(repository.existsByIdAndDeletedFalse(banner1.getId())).thenReturn(true);
         when(repository.findByNameAndIdIsNot(banner1.getName(), banner1.getId())).thenReturn(Optional.empty());
@@ -120,7 +139,7 @@ public class BannerServiceUnitTest {
         Banner toSave = new Banner(banner1.getId(), banner3.getName(), banner1.getPrice(),
                 banner1.getCategory(), banner1.getContent(), false);
 
-        when(categoryRepository.existsByIdAndDeletedFalse(category.getId())).thenReturn(true);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.of(category));
         when(repository.save(any(Banner.class))).thenReturn(toSave);
         when(repository.existsByIdAndDeletedFalse(banner1.getId())).thenReturn(true);
         when(repository.findByNameAndIdIsNot(banner3.getName(), banner1.getId())).thenReturn(Optional.of(banner3));
@@ -135,7 +154,7 @@ public class BannerServiceUnitTest {
         Banner toSave = new Banner(banner1.getId(), banner2.getName(), banner1.getPrice(),
                 banner1.getCategory(), banner1.getContent(), false);
 
-        when(categoryRepository.existsByIdAndDeletedFalse(category.getId())).thenReturn(true);
+        when(categoryRepository.findByIdAndDeletedFalse(category.getId())).thenReturn(Optional.of(category));
         when(repository.existsByIdAndDeletedFalse(banner1.getId())).thenReturn(true);
         when(repository.findByNameAndIdIsNot(banner2.getName(), banner1.getId())).thenReturn(Optional.of(banner2));
 
@@ -158,6 +177,7 @@ public class BannerServiceUnitTest {
         service.deleteBanner(banner1.getId());
         verify(repository, times(1)).save(any());
         assertTrue(banner1.getDeleted());
+        verify(bannerIndex, times(1)).remove(banner1.getId());
     }
 
     @Test
@@ -0,0 +1,69 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryCache;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CategoryCacheTest {
+    @Mock
+    private CategoryRepository repository;
+
+    private CategoryCache cache;
+    private final Category category = new Category(1, "Music", "music", false);
+
+    @BeforeEach
+    public void init() {
+        cache = new CategoryCache(repository, new SimpleMeterRegistry(), 10);
+    }
+
+    @Test
+    public void givenExistingCategory_whenFindTwice_thenRepositoryIsQueriedOnce() {
+        when(repository.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+
+        assertEquals(cache.findByReqName(category.getReqName()), Optional.of(category));
+        assertEquals(cache.findByReqName(category.getReqName()), Optional.of(category));
+        verify(repository, times(1)).findByReqName(category.getReqName());
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitCount(), 1);
+    }
+
+    @Test
+    public void givenNotExistingCategory_whenFindTwice_thenMissIsCached() {
+        when(repository.findByReqName("unknown")).thenReturn(Optional.empty());
+
+        assertTrue(cache.findByReqName("unknown").isEmpty());
+        assertTrue(cache.findByReqName("unknown").isEmpty());
+        verify(repository, times(1)).findByReqName("unknown");
+        assertEquals(cache.getHitCount(), 1);
+    }
+
+    @Test
+    public void givenCachedCategory_whenInvalidate_thenItIsLoadedAgain() {
+        Category renamed = new Category(1, "Music", "songs", false);
+        when(repository.findByReqName(category.getReqName()))
+                .thenReturn(Optional.of(category))
+                .thenReturn(Optional.empty());
+        when(repository.findByReqName(renamed.getReqName()))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(renamed));
+
+        assertTrue(cache.findByReqName(category.getReqName()).isPresent());
+        assertTrue(cache.findByReqName(renamed.getReqName()).isEmpty());
+        cache.invalidate();
+        assertTrue(cache.findByReqName(category.getReqName()).isEmpty());
+        assertEquals(cache.findByReqName(renamed.getReqName()), Optional.of(renamed));
+        assertEquals(cache.getMissCount(), 4);
+    }
+}
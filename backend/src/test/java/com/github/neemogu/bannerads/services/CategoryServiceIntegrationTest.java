@@ -4,22 +4,27 @@ import com.github.neemogu.bannerads.category.Category;
 import com.github.neemogu.bannerads.category.CategoryFetchParameters;
 import com.github.neemogu.bannerads.category.CategoryRepository;
 import com.github.neemogu.bannerads.category.CategoryService;
+import com.github.neemogu.bannerads.util.ListPage;
+import com.github.neemogu.bannerads.util.QueryCountingConfiguration;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static com.github.neemogu.bannerads.util.QueryCounter.assertStatementBudget;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
+@Import(QueryCountingConfiguration.class)
 public class CategoryServiceIntegrationTest {
     @Autowired
     private CategoryRepository repository;
@@ -33,11 +38,15 @@ public class CategoryServiceIntegrationTest {
         Category cat3 = new Category(null, "Martial", "martial", false);
         Category cat4 = new Category(null, "Artistic", "artistic", true);
         repository.saveAll(List.of(cat1, cat2, cat3, cat4));
+        // categories are saved bypassing the service
+        service.rebuildNameIndex();
     }
 
     @AfterEach
     public void tearDown() {
         repository.deleteAll();
+        // categories are changed bypassing the service
+        service.invalidateCounts();
     }
 
     @Test
@@ -75,4 +84,63 @@ public class CategoryServiceIntegrationTest {
         parameters = CategoryFetchParameters.builder().pageSize(1).searchName(searchName).build();
         assertEquals(service.getCategoryListPageCount(parameters), 2);
     }
+
+    @Test
+    public void listingAndSavingCategoriesShouldStayWithinStatementBudget() {
+        CategoryFetchParameters parameters = CategoryFetchParameters.builder().pageSize(2).page(0).build();
+        assertStatementBudget(1, () -> service.getCategoryList(parameters));
+        assertStatementBudget(1, () -> service.getCategoryListPageCount(parameters));
+
+        Category category = new Category(null, "Cinema", "cinema", false);
+        // name check, request name check, insert
+        assertStatementBudget(3, () -> assertTrue(service.saveCategory(category).isEmpty()));
+        // find, banners check, merge select, update
+        assertStatementBudget(4, () -> assertTrue(service.deleteCategory(category.getId()).isEmpty()));
+    }
+
+    @Test
+    public void givenCursor_shouldContinueAfterItRegardlessOfCategoriesDeletedBefore() {
+        CategoryFetchParameters parameters = CategoryFetchParameters.builder().pageSize(2).build();
+        List<Category> page1 = service.getCategoryList(parameters);
+        assertEquals(page1.stream().map(Category::getName).collect(Collectors.toList()), List.of("Music", "Art"));
+
+        service.deleteCategory(page1.get(0).getId());
+        String token = service.getCursorAfter(page1.get(1)).encode();
+        parameters = CategoryFetchParameters.builder().pageSize(2)
+                .after(service.decodeCursor(token).orElseThrow()).build();
+        List<String> page2 = service.getCategoryList(parameters)
+                .stream().map(Category::getName).collect(Collectors.toList());
+        assertEquals(page2, List.of("Martial"));
+        assertTrue(service.decodeCursor("bm90IGEgY3Vyc29y").isEmpty());
+    }
+
+    @Test
+    public void givenWindowCount_whenGetCategoryPage_thenPageAndTotalAreSelectedByOneStatement() {
+        CategoryFetchParameters parameters = CategoryFetchParameters.builder().pageSize(2).page(1).build();
+        assertStatementBudget(1, () -> {
+            ListPage<Category> page = service.getCategoryPage(parameters);
+            assertEquals(page.getItems().stream().map(Category::getName).collect(Collectors.toList()),
+                    List.of("Martial"));
+            assertEquals(page.getTotal(), 3);
+            assertEquals(page.getPageCount(), 2);
+        });
+        assertStatementBudget(0, () -> assertEquals(service.getCategoryListPageCount(parameters), 2));
+
+        assertTrue(service.saveCategory(new Category(null, "Cinema", "cinema", false)).isEmpty());
+        assertEquals(service.getCategoryPage(parameters).getTotal(), 4);
+    }
+
+    @Test
+    public void givenSearchName_shouldSearchAndCompleteCategoriesWithoutQueryingDatabase() {
+        CategoryFetchParameters parameters = CategoryFetchParameters.builder().pageSize(1).searchName("aRt").build();
+        assertStatementBudget(0, () -> {
+            ListPage<Category> page = service.getCategoryPage(parameters);
+            assertEquals(page.getItems().get(0).getName(), "Art");
+            assertEquals(page.getTotal(), 2);
+            assertEquals(service.completeName("m", 10), List.of("Martial", "Music"));
+        });
+        assertTrue(service.saveCategory(new Category(null, "Mart", "mart", false)).isEmpty());
+        assertEquals(service.getCategoryListPageCount(parameters), 3);
+        assertEquals(service.completeName("MAR", 1), List.of("Mart"));
+    }
 }
@@ -1,8 +1,10 @@
 package com.github.neemogu.bannerads.services;
 
 import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerIndex;
 import com.github.neemogu.bannerads.banner.BannerRepository;
 import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryCache;
 import com.github.neemogu.bannerads.category.CategoryRepository;
 import com.github.neemogu.bannerads.category.CategoryService;
 import org.junit.jupiter.api.BeforeEach;
@@ -27,6 +29,10 @@ public class CategoryServiceUnitTest {
     private CategoryRepository repository;
     @Mock
     private BannerRepository bannerRepository;
+    @Mock
+    private BannerIndex bannerIndex;
+    @Mock
+    private CategoryCache categoryCache;
     @InjectMocks
     private CategoryService service;
 
@@ -50,6 +56,8 @@ public class CategoryServiceUnitTest {
 
         assertEquals(service.saveCategory(toSave), Optional.empty());
         verify(repository, times(1)).save(toSave);
+        verify(bannerIndex, times(1)).updateCategory(toSave);
+        verify(categoryCache, times(1)).invalidate();
     }
 
     @Test
@@ -163,6 +171,8 @@ public class CategoryServiceUnitTest {
         assertTrue(service.deleteCategory(category1.getId()).isEmpty());
         verify(repository, times(1)).save(any());
         assertTrue(category1.getDeleted());
+        verify(bannerIndex, times(1)).removeCategory(category1.getId());
+        verify(categoryCache, times(1)).invalidate();
     }
 
     @Test
@@ -0,0 +1,248 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.request.RequestRepository;
+import com.github.neemogu.bannerads.request.RequestRetentionJob;
+import com.github.neemogu.bannerads.stats.BannerDailyStats;
+import com.github.neemogu.bannerads.stats.BannerDailyStatsRepository;
+import com.github.neemogu.bannerads.stats.DailyRollupJob;
+import com.github.neemogu.bannerads.stats.ReportGranularity;
+import com.github.neemogu.bannerads.stats.ReportGrouping;
+import com.github.neemogu.bannerads.stats.RevenueReportRow;
+import com.github.neemogu.bannerads.stats.StatsService;
+import com.github.neemogu.bannerads.util.IpAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {
+        "bannerads.rollup.enabled=true",
+        "bannerads.rollup.interval-ms=3600000",
+        "bannerads.rollup.lag-ms=0",
+        "bannerads.rollup.chunk-size=3",
+        "bannerads.retention.pause-ms=0"
+})
+public class DailyRollupJobIntegrationTest {
+    // noon two days ago, UTC
+    private static final Instant dayStart = Instant.now().truncatedTo(ChronoUnit.DAYS).minus(2, ChronoUnit.DAYS);
+    private static final Instant noon = dayStart.plus(12, ChronoUnit.HOURS);
+    private static final LocalDate day = LocalDate.ofInstant(dayStart, ZoneOffset.UTC);
+
+    @Autowired
+    private DailyRollupJob job;
+    @Autowired
+    private RequestRetentionJob retentionJob;
+    @Autowired
+    private StatsService statsService;
+    @Autowired
+    private BannerDailyStatsRepository statsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private RequestRepository requestRepository;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Banner music;
+    private Banner tech;
+
+    @BeforeEach
+    public void initDB() {
+        Category musicCategory = categoryRepository.save(new Category(null, "Music", "music", false));
+        Category techCategory = categoryRepository.save(new Category(null, "Technology", "tech", false));
+        music = bannerRepository.save(new Banner(null, "ban1", 1.5, musicCategory, "BANNER_1", false));
+        tech = bannerRepository.save(new Banner(null, "ban2", 2.0, techCategory, "BANNER_2", false));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from banner_daily_stats");
+        jdbcTemplate.update("delete from banner_hourly_stats");
+        jdbcTemplate.update("delete from banner_daily_viewer");
+        jdbcTemplate.update("delete from rollup_watermark");
+        requestRepository.deleteAll();
+        bannerRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private void insertRequest(Banner banner, long viewerHash, Instant date) {
+        jdbcTemplate.update("insert into request (banner_id, ip_address, viewer_hash, date) values (?, ?, ?, ?)",
+                banner.getId(), IpAddress.parse("10.0.0.1").toBytes(), viewerHash, Timestamp.from(date));
+    }
+
+    private BannerDailyStats stats(Banner banner, LocalDate date) {
+        List<BannerDailyStats> found = statsService.getDailyStats(date, date, banner.getId(), null);
+        assertEquals(found.size(), 1);
+        return found.get(0);
+    }
+
+    @Test
+    public void givenRequestsOfTwoDays_whenRollUp_thenStatsArePerBannerAndDay() {
+        insertRequest(music, 1, noon);
+        insertRequest(music, 2, noon.plusSeconds(1));
+        insertRequest(music, 1, noon.plusSeconds(2));
+        insertRequest(tech, 1, noon.plusSeconds(3));
+        insertRequest(music, 1, noon.plus(1, ChronoUnit.DAYS));
+
+        assertEquals(job.rollUp(), 5);
+        assertEquals(job.getWatermark(), jdbcTemplate.queryForObject("select max(id) from request", Integer.class));
+
+        BannerDailyStats musicStats = stats(music, day);
+        assertEquals(musicStats.getCategoryId(), music.getCategory().getId());
+        assertEquals(musicStats.getImpressions(), 3);
+        assertEquals(musicStats.getUniqueViewers(), 2);
+        assertEquals(musicStats.getRevenue(), 4.5, 1e-9);
+        assertEquals(stats(tech, day).getImpressions(), 1);
+        assertEquals(stats(music, day.plusDays(1)).getUniqueViewers(), 1);
+        assertEquals(statsService.getDailyStats(day, day.plusDays(1), null, tech.getCategory().getId()).size(), 1);
+        assertEquals(statsService.getDailyStats(day, day.plusDays(1), null, null).size(), 3);
+    }
+
+    @Test
+    public void givenNewRequests_whenRollUpAgain_thenOnlyTheyAreAddedAndViewersAreNotCountedTwice() {
+        insertRequest(music, 1, noon);
+        insertRequest(music, 2, noon.plusSeconds(1));
+        assertEquals(job.rollUp(), 2);
+        assertEquals(job.rollUp(), 0);
+
+        insertRequest(music, 2, noon.plusSeconds(2));
+        insertRequest(music, 3, noon.plusSeconds(3));
+        assertEquals(job.rollUp(), 2);
+
+        BannerDailyStats musicStats = stats(music, day);
+        assertEquals(musicStats.getImpressions(), 4);
+        assertEquals(musicStats.getUniqueViewers(), 3);
+        assertEquals(statsRepository.count(), 1);
+    }
+
+    @Test
+    public void givenDayRolledUpInSeveralChunksAndPurged_whenRollUp_thenViewersAreCountedOnce()
+            throws InterruptedException {
+        // chunks of 3 requests: viewers 1 and 2 repeat across chunks, 3 and 4 are new in later ones
+        long[] viewers = {1, 2, 1, 2, 3, 1, 2, 4, 3, 1};
+        for (int i = 0; i < viewers.length; ++i) {
+            insertRequest(music, viewers[i], noon.plusSeconds(i));
+        }
+        assertEquals(job.rollUp(), viewers.length);
+        assertEquals(stats(music, day).getImpressions(), viewers.length);
+        assertEquals(stats(music, day).getUniqueViewers(), 4);
+
+        // counted viewers do not depend on the purged requests
+        assertEquals(retentionJob.purge(), viewers.length);
+        insertRequest(music, 2, noon.plusSeconds(100));
+        insertRequest(music, 5, noon.plusSeconds(101));
+        assertEquals(job.rollUp(), 2);
+        assertEquals(stats(music, day).getUniqueViewers(), 5);
+    }
+
+    @Test
+    public void givenViewersOfOldDays_whenRollUp_thenOnlyTheNewestTwoDaysAreKept() {
+        insertRequest(music, 1, noon.minus(2, ChronoUnit.DAYS));
+        insertRequest(music, 1, noon.minus(1, ChronoUnit.DAYS));
+        insertRequest(music, 1, noon);
+        job.rollUp();
+
+        assertEquals(jdbcTemplate.queryForList("select distinct date from banner_daily_viewer order by date",
+                java.sql.Date.class), List.of(java.sql.Date.valueOf(day.minusDays(1)), java.sql.Date.valueOf(day)));
+        assertEquals(stats(music, day.minusDays(2)).getUniqueViewers(), 1);
+    }
+
+    @Test
+    public void givenRequestsWithinLag_whenRollUp_thenTheyAndFollowingOnesAreLeftForNextRun() {
+        insertRequest(music, 1, noon);
+        insertRequest(music, 2, Instant.now().plusSeconds(60));
+        insertRequest(music, 3, noon.plusSeconds(1));
+
+        assertEquals(job.rollUp(), 1);
+        assertEquals(stats(music, day).getImpressions(), 1);
+    }
+
+    @Test
+    public void givenRollupEnabled_whenPurge_thenOnlyAggregatedRequestsAreRemoved() throws InterruptedException {
+        insertRequest(music, 1, noon);
+        insertRequest(music, 2, noon.plusSeconds(1));
+        job.rollUp();
+        insertRequest(music, 3, noon.plusSeconds(2));
+
+        assertEquals(retentionJob.purge(), 2);
+        assertEquals(requestRepository.count(), 1);
+        job.rollUp();
+        assertEquals(retentionJob.purge(), 1);
+        assertEquals(stats(music, day).getImpressions(), 3);
+    }
+
+    @Test
+    public void givenRequestsOfTwoHours_whenRollUp_thenHourlyRevenueIsReportedPerBannerAndCategory() {
+        insertRequest(music, 1, noon);
+        insertRequest(tech, 1, noon.plusSeconds(1));
+        insertRequest(music, 2, noon.plusSeconds(2));
+        insertRequest(music, 2, noon.plus(1, ChronoUnit.HOURS));
+        job.rollUp();
+
+        List<RevenueReportRow> byBanner = statsService.getRevenueReport(day, day,
+                ReportGranularity.HOUR, ReportGrouping.BANNER, music.getId(), null);
+        assertEquals(byBanner.size(), 2);
+        assertEquals(byBanner.get(0).getPeriodStart(), noon);
+        assertEquals(byBanner.get(0).getBannerId(), music.getId());
+        assertEquals(byBanner.get(0).getImpressions(), 2);
+        assertEquals(byBanner.get(0).getRevenue(), 3.0, 1e-9);
+        assertEquals(byBanner.get(1).getPeriodStart(), noon.plus(1, ChronoUnit.HOURS));
+        assertEquals(byBanner.get(1).getImpressions(), 1);
+
+        List<RevenueReportRow> byCategory = statsService.getRevenueReport(day, day,
+                ReportGranularity.HOUR, ReportGrouping.CATEGORY, null, null);
+        assertEquals(byCategory.size(), 3);
+        assertNull(byCategory.get(0).getBannerId());
+        assertEquals(byCategory.get(0).getCategoryId(), music.getCategory().getId());
+        assertEquals(byCategory.get(1).getCategoryId(), tech.getCategory().getId());
+        assertEquals(byCategory.get(1).getRevenue(), 2.0, 1e-9);
+        assertEquals(statsService.getRevenueReport(day.plusDays(1), day.plusDays(1),
+                ReportGranularity.HOUR, ReportGrouping.CATEGORY, null, null).size(), 0);
+    }
+
+    @Test
+    public void givenRequestsOfTwoBanners_whenRollUp_thenDailyRevenueIsReportedPerCategory() {
+        Banner cheapMusic = bannerRepository.save(new Banner(null, "ban3", 0.5, music.getCategory(), "BANNER_3",
+                false));
+        insertRequest(music, 1, noon);
+        insertRequest(cheapMusic, 1, noon.plus(3, ChronoUnit.HOURS));
+        insertRequest(tech, 1, noon.plus(1, ChronoUnit.DAYS));
+        job.rollUp();
+
+        List<RevenueReportRow> byCategory = statsService.getRevenueReport(day, day.plusDays(1),
+                ReportGranularity.DAY, ReportGrouping.CATEGORY, null, null);
+        assertEquals(byCategory.size(), 2);
+        assertEquals(byCategory.get(0).getPeriodStart(), dayStart);
+        assertEquals(byCategory.get(0).getCategoryId(), music.getCategory().getId());
+        assertEquals(byCategory.get(0).getImpressions(), 2);
+        assertEquals(byCategory.get(0).getRevenue(), 2.0, 1e-9);
+        assertEquals(byCategory.get(1).getPeriodStart(), dayStart.plus(1, ChronoUnit.DAYS));
+
+        List<RevenueReportRow> byBanner = statsService.getRevenueReport(day, day.plusDays(1),
+                ReportGranularity.DAY, ReportGrouping.BANNER, null, music.getCategory().getId());
+        assertEquals(byBanner.size(), 2);
+        assertEquals(byBanner.get(1).getBannerId(), cheapMusic.getId());
+        assertEquals(byBanner.get(1).getRevenue(), 0.5, 1e-9);
+    }
+}
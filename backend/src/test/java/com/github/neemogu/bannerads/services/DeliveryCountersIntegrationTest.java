@@ -0,0 +1,203 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.request.DeliveryCounters;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "bannerads.caps.flush-interval-ms=3600000")
+public class DeliveryCountersIntegrationTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Banner banner;
+
+    @BeforeEach
+    public void initDB() {
+        Category category = categoryRepository.save(new Category(null, "Music", "music", false));
+        banner = bannerRepository.save(new Banner(null, "ban1", 1.5, category, "BANNER_1", false, 3L, null));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from banner_delivery_counter");
+        jdbcTemplate.update("delete from banner_daily_stats");
+        bannerRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    // a new instance is what an application sees after a restart
+    private DeliveryCounters newCounters() {
+        DeliveryCounters counters = new DeliveryCounters(jdbcTemplate, new SimpleMeterRegistry());
+        counters.load();
+        return counters;
+    }
+
+    @Test
+    public void givenImpressionCap_whenReserved_thenCapIsNotExceeded() {
+        DeliveryCounters counters = newCounters();
+        assertTrue(counters.tryReserve(banner));
+        assertTrue(counters.tryReserve(banner));
+        assertTrue(counters.hasCapacity(banner));
+        assertTrue(counters.tryReserve(banner));
+        assertFalse(counters.hasCapacity(banner));
+        assertFalse(counters.tryReserve(banner));
+        assertEquals(counters.getImpressions(banner.getId()), 3);
+        assertEquals(counters.getExhaustedCount(), 1);
+        assertEquals(counters.getExhaustedCount(banner.getCategory().getId()), 1);
+        assertEquals(counters.getExhaustedCount(banner.getCategory().getId() + 1), 0);
+    }
+
+    @Test
+    public void givenFlushedCounters_whenRestarted_thenCountingContinuesFromPersistedTotals() {
+        DeliveryCounters counters = newCounters();
+        counters.tryReserve(banner);
+        counters.tryReserve(banner);
+        counters.flush();
+        counters.flush();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "select impressions, spent from banner_delivery_counter where banner_id = ?", banner.getId());
+        assertEquals(((Number) row.get("impressions")).longValue(), 2);
+        assertEquals(((Number) row.get("spent")).doubleValue(), 3.0, 1e-9);
+
+        DeliveryCounters restarted = newCounters();
+        assertEquals(restarted.getImpressions(banner.getId()), 2);
+        assertTrue(restarted.tryReserve(banner));
+        assertFalse(restarted.tryReserve(banner));
+    }
+
+    @Test
+    public void givenTwoInstances_whenFlushed_thenTheySeeEachOthersImpressions() {
+        DeliveryCounters first = newCounters();
+        DeliveryCounters second = newCounters();
+        first.tryReserve(banner);
+        second.tryReserve(banner);
+        first.flush();
+        second.flush();
+        assertEquals(second.getImpressions(banner.getId()), 2);
+        first.flush();
+        assertEquals(first.getImpressions(banner.getId()), 2);
+        assertTrue(first.tryReserve(banner));
+        assertFalse(first.tryReserve(banner));
+    }
+
+    @Test
+    public void givenBudget_whenReserved_thenSpendingDoesNotExceedIt() {
+        banner.setDailyImpressionCap(null);
+        banner.setDailyBudget(4.0);
+        DeliveryCounters counters = newCounters();
+        assertTrue(counters.tryReserve(banner));
+        assertTrue(counters.tryReserve(banner));
+        assertFalse(counters.tryReserve(banner));
+        assertEquals(counters.getImpressions(banner.getId()), 2);
+    }
+
+    @Test
+    public void givenRolledUpImpressions_whenFlushed_thenCountersAreRaisedToThem() {
+        DeliveryCounters counters = newCounters();
+        counters.tryReserve(banner);
+        jdbcTemplate.update("insert into banner_daily_stats " +
+                        "(date, banner_id, category_id, impressions, unique_viewers, revenue) values (?, ?, ?, ?, ?, ?)",
+                java.sql.Date.valueOf(LocalDate.now(ZoneOffset.UTC)), banner.getId(), banner.getCategory().getId(),
+                3, 3, 4.5);
+        counters.flush();
+        assertEquals(counters.getImpressions(banner.getId()), 3);
+        assertFalse(counters.tryReserve(banner));
+
+        counters.flush();
+        assertEquals(newCounters().getImpressions(banner.getId()), 3);
+    }
+
+    @Test
+    public void givenTwoInstancesRaisedToRolledUpImpressions_whenFlushedAgain_thenRaiseIsNotWrittenBack() {
+        banner.setDailyImpressionCap(10L);
+        DeliveryCounters first = newCounters();
+        DeliveryCounters second = newCounters();
+        first.tryReserve(banner);
+        second.tryReserve(banner);
+        jdbcTemplate.update("insert into banner_daily_stats " +
+                        "(date, banner_id, category_id, impressions, unique_viewers, revenue) values (?, ?, ?, ?, ?, ?)",
+                java.sql.Date.valueOf(LocalDate.now(ZoneOffset.UTC)), banner.getId(), banner.getCategory().getId(),
+                5, 5, 7.5);
+        for (int i = 0; i < 2; ++i) {
+            first.flush();
+            second.flush();
+        }
+        assertEquals(first.getImpressions(banner.getId()), 5);
+        assertEquals(second.getImpressions(banner.getId()), 5);
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "select impressions, spent from banner_delivery_counter where banner_id = ?", banner.getId());
+        assertEquals(((Number) row.get("impressions")).longValue(), 2);
+        assertEquals(((Number) row.get("spent")).doubleValue(), 3.0, 1e-9);
+
+        // only reservations made after the raise are written
+        assertTrue(first.tryReserve(banner));
+        first.flush();
+        assertEquals(jdbcTemplate.queryForObject(
+                "select impressions from banner_delivery_counter where banner_id = ?", Long.class, banner.getId()), 3);
+        // rolled up impressions include the persisted ones, so the larger of the totals is still counted
+        assertEquals(first.getImpressions(banner.getId()), 5);
+    }
+
+    @Test
+    public void givenManyInstances_whenFlushedConcurrently_thenAllIncrementsArePersisted() throws Exception {
+        int instances = 8;
+        banner.setDailyImpressionCap(100L);
+        List<DeliveryCounters> counters = new ArrayList<>();
+        for (int i = 0; i < instances; ++i) {
+            DeliveryCounters instance = newCounters();
+            instance.tryReserve(banner);
+            counters.add(instance);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(instances);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> flushes = new ArrayList<>();
+            for (DeliveryCounters instance : counters) {
+                flushes.add(executor.submit(() -> {
+                    start.await();
+                    instance.flush();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> flush : flushes) {
+                // a failed flush is rethrown here
+                flush.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(jdbcTemplate.queryForObject(
+                "select impressions from banner_delivery_counter where banner_id = ?", Long.class, banner.getId()),
+                instances);
+    }
+}
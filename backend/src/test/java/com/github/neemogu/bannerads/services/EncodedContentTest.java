@@ -0,0 +1,46 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.ContentEncoding;
+import com.github.neemogu.bannerads.banner.EncodedContent;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EncodedContentTest {
+    private final String text = "<p>Banner content</p>".repeat(50);
+
+    @Test
+    public void givenAcceptEncodingHeaders_whenNegotiate_thenPreferGzipAndRespectZeroQuality() {
+        EncodedContent content = EncodedContent.of(text, true);
+        assertEquals(content.negotiate(null), ContentEncoding.IDENTITY);
+        assertEquals(content.negotiate("gzip, deflate, br"), ContentEncoding.GZIP);
+        assertEquals(content.negotiate("deflate, GZIP;q=0.1"), ContentEncoding.GZIP);
+        assertEquals(content.negotiate("gzip;q=0, deflate"), ContentEncoding.DEFLATE);
+        assertEquals(content.negotiate("gzip; q=0.0 , deflate;q=0"), ContentEncoding.IDENTITY);
+        assertEquals(content.negotiate("br"), ContentEncoding.IDENTITY);
+    }
+
+    @Test
+    public void givenCompressibleContent_whenEncoded_thenDeflateVariantInflatesToUtf8Bytes() throws IOException {
+        EncodedContent content = EncodedContent.of(text, true);
+        byte[] identity = content.getBytes(ContentEncoding.IDENTITY);
+        byte[] deflate = content.getBytes(ContentEncoding.DEFLATE);
+        assertArrayEquals(identity, text.getBytes(StandardCharsets.UTF_8));
+        assertTrue(deflate.length < identity.length);
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(deflate))) {
+            assertArrayEquals(in.readAllBytes(), identity);
+        }
+    }
+
+    @Test
+    public void givenShortContentOrDisabledCompression_whenNegotiate_thenIdentityIsUsed() {
+        assertEquals(EncodedContent.of("short", true).negotiate("gzip, deflate"), ContentEncoding.IDENTITY);
+        assertEquals(EncodedContent.of(text, false).negotiate("gzip, deflate"), ContentEncoding.IDENTITY);
+        assertSame(EncodedContent.of(text, false).getText(), text);
+    }
+}
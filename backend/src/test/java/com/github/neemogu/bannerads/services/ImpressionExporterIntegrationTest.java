@@ -0,0 +1,169 @@
+package com.github.neemogu.bannerads.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.request.ImpressionExportFilter;
+import com.github.neemogu.bannerads.request.ImpressionExportFormat;
+import com.github.neemogu.bannerads.request.ImpressionExporter;
+import com.github.neemogu.bannerads.request.RequestRepository;
+import com.github.neemogu.bannerads.request.UserAgentDictionary;
+import com.github.neemogu.bannerads.util.IpAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.sql.DataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "bannerads.export.fetch-size=2")
+public class ImpressionExporterIntegrationTest {
+    private static final Instant start = Instant.parse("2021-09-01T10:00:00Z");
+    private static final String userAgent = "Mozilla/5.0 (X11; Linux x86_64), \"quoted\"";
+
+    @Autowired
+    private ImpressionExporter exporter;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private RequestRepository requestRepository;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private UserAgentDictionary userAgentDictionary;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Banner music;
+    private Banner tech;
+
+    @BeforeEach
+    public void initDB() {
+        Category musicCategory = categoryRepository.save(new Category(null, "Music", "music", false));
+        Category techCategory = categoryRepository.save(new Category(null, "Technology", "tech", false));
+        music = bannerRepository.save(new Banner(null, "ban1", 4.49, musicCategory, "BANNER_1", false));
+        tech = bannerRepository.save(new Banner(null, "ban2", 2.49, techCategory, "BANNER_2", false));
+        Integer userAgentId = userAgentDictionary.getId(userAgent);
+        // one impression a minute, alternating banners
+        for (int i = 0; i < 5; ++i) {
+            jdbcTemplate.update(
+                    "insert into request (banner_id, user_agent_id, ip_address, date) values (?, ?, ?, ?)",
+                    i % 2 == 0 ? music.getId() : tech.getId(), i == 4 ? null : userAgentId,
+                    IpAddress.parse(i == 3 ? "2001:db8::1" : "192.168.0." + i).toBytes(),
+                    Timestamp.from(start.plusSeconds(60L * i)));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        requestRepository.deleteAll();
+        bannerRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private String export(ImpressionExportFilter filter, ImpressionExportFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(filter, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private List<JsonNode> exportJson(ImpressionExportFilter filter) throws IOException {
+        List<JsonNode> rows = new ArrayList<>();
+        for (String line : export(filter, ImpressionExportFormat.NDJSON).split("\n")) {
+            if (!line.isEmpty()) {
+                rows.add(objectMapper.readTree(line));
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void givenNoFilter_shouldExportAllImpressionsAsJsonLines() throws IOException {
+        String text = export(ImpressionExportFilter.builder().build(), ImpressionExportFormat.NDJSON);
+        assertEquals(text.chars().filter(c -> c == '\n').count(), 5);
+
+        List<JsonNode> rows = exportJson(ImpressionExportFilter.builder().build());
+        assertEquals(rows.get(0).get("date").asText(), "2021-09-01T10:00:00Z");
+        assertEquals(rows.get(0).get("bannerId").asInt(), (int) music.getId());
+        assertEquals(rows.get(0).get("categoryId").asInt(), (int) music.getCategory().getId());
+        assertEquals(rows.get(0).get("userAgent").asText(), userAgent);
+        assertEquals(rows.get(0).get("ipAddress").asText(), "192.168.0.0");
+        assertEquals(rows.get(3).get("ipAddress").asText(), "2001:db8::1");
+        assertTrue(rows.get(4).get("userAgent").isNull());
+    }
+
+    @Test
+    public void givenFilters_shouldExportMatchingImpressionsOnly() throws IOException {
+        assertEquals(exportJson(ImpressionExportFilter.builder().bannerId(tech.getId()).build()).size(), 2);
+        assertEquals(exportJson(ImpressionExportFilter.builder()
+                .categoryId(music.getCategory().getId()).build()).size(), 3);
+        List<JsonNode> range = exportJson(ImpressionExportFilter.builder()
+                .from(Date.from(start.plusSeconds(60)))
+                .to(Date.from(start.plusSeconds(180)))
+                .build());
+        assertEquals(range.size(), 2);
+        assertEquals(range.get(0).get("date").asText(), "2021-09-01T10:01:00Z");
+        assertEquals(range.get(1).get("date").asText(), "2021-09-01T10:02:00Z");
+    }
+
+    @Test
+    public void givenCsvFormat_shouldQuoteFieldsWithSeparators() throws IOException {
+        String[] lines = export(ImpressionExportFilter.builder().bannerId(tech.getId()).build(),
+                ImpressionExportFormat.CSV).split("\n");
+        assertEquals(lines.length, 3);
+        assertEquals(lines[0], "id,date,bannerId,categoryId,userAgent,ipAddress");
+        assertEquals(lines[1].substring(lines[1].indexOf(',')),
+                ",2021-09-01T10:01:00Z," + tech.getId() + "," + tech.getCategory().getId() +
+                        ",\"Mozilla/5.0 (X11; Linux x86_64), \"\"quoted\"\"\",192.168.0.1");
+        assertEquals(lines[2].substring(lines[2].indexOf(',')),
+                ",2021-09-01T10:03:00Z," + tech.getId() + "," + tech.getCategory().getId() +
+                        ",\"Mozilla/5.0 (X11; Linux x86_64), \"\"quoted\"\"\",2001:db8::1");
+    }
+
+    @Test
+    public void givenMySql_whenExport_thenRowsAreStreamedWithoutCursorFetch() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(metaData.getDatabaseProductName()).thenReturn("MySQL");
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        ImpressionExporter mySqlExporter = new ImpressionExporter(new JdbcTemplate(dataSource));
+        mySqlExporter.export(ImpressionExportFilter.builder().build(), ImpressionExportFormat.CSV,
+                new ByteArrayOutputStream());
+        verify(statement).setFetchSize(Integer.MIN_VALUE);
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.UserAgentFamily;
+import com.github.neemogu.bannerads.request.ImpressionOverflowPolicy;
+import com.github.neemogu.bannerads.request.ImpressionWriter;
+import com.github.neemogu.bannerads.request.Viewer;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.ViewerHash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collection;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ImpressionWriterTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private final IpAddress ip = IpAddress.parse("192.168.0.100");
+    private final Viewer viewer = new Viewer("Google Chrome", 1, UserAgentFamily.CHROME, ip,
+            ViewerHash.of(ip, "Google Chrome"));
+
+    // background thread is not started, so impressions stay in the queue until flush
+    private ImpressionWriter writer(int capacity, ImpressionOverflowPolicy policy) {
+        return new ImpressionWriter(jdbcTemplate, new SimpleMeterRegistry(),
+                true, capacity, 2, 100, policy);
+    }
+
+    @Test
+    public void givenWriteBehind_whenWrite_thenImpressionIsPendingUntilFlush() throws InterruptedException {
+        ImpressionWriter writer = writer(10, ImpressionOverflowPolicy.DROP);
+        writer.write(1, viewer);
+        writer.write(2, viewer);
+        writer.write(3, viewer);
+
+        assertEquals(writer.getQueueDepth(), 3);
+        assertEquals(writer.getPendingBannerIds(viewer), Set.of(1, 2, 3));
+        assertTrue(writer.getPendingBannerIds(
+                new Viewer("Curl", 2, UserAgentFamily.OTHER, ip, ViewerHash.of(ip, "Curl"))).isEmpty());
+        verifyNoInteractions(jdbcTemplate);
+
+        writer.flush();
+        assertEquals(writer.getQueueDepth(), 0);
+        assertTrue(writer.getPendingBannerIds(viewer).isEmpty());
+        // batch size is 2
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyCollection(), eq(2), any());
+    }
+
+    @Test
+    public void givenFullQueueAndDropPolicy_whenWrite_thenImpressionIsDropped() {
+        ImpressionWriter writer = writer(1, ImpressionOverflowPolicy.DROP);
+        writer.write(1, viewer);
+        writer.write(2, viewer);
+
+        assertEquals(writer.getQueueDepth(), 1);
+        assertEquals(writer.getDroppedCount(), 1);
+        assertEquals(writer.getPendingBannerIds(viewer), Set.of(1));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void givenFullQueueAndWriteThroughPolicy_whenWrite_thenImpressionIsWrittenSynchronously() {
+        ImpressionWriter writer = writer(1, ImpressionOverflowPolicy.WRITE_THROUGH);
+        writer.write(1, viewer);
+        writer.write(2, viewer);
+
+        assertEquals(writer.getQueueDepth(), 1);
+        assertEquals(writer.getDroppedCount(), 0);
+        assertEquals(writer.getPendingBannerIds(viewer), Set.of(1));
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), argThat((Collection<?> c) -> c.size() == 1),
+                eq(2), any());
+    }
+
+    @Test
+    public void givenWriteBehindDisabled_whenWrite_thenImpressionIsWrittenSynchronously() {
+        ImpressionWriter writer = new ImpressionWriter(jdbcTemplate, new SimpleMeterRegistry(),
+                false, 10, 2, 100, ImpressionOverflowPolicy.DROP);
+        writer.write(1, viewer);
+
+        assertEquals(writer.getQueueDepth(), 0);
+        assertTrue(writer.getPendingBannerIds(viewer).isEmpty());
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyCollection(), eq(2), any());
+    }
+
+    @Test
+    public void givenBatchFailsWithNotDataAccessException_whenWriteAgain_thenBackgroundThreadKeepsWriting()
+            throws InterruptedException {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ImpressionWriter writer = new ImpressionWriter(jdbcTemplate, meterRegistry,
+                true, 10, 2, 10, ImpressionOverflowPolicy.DROP);
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), eq(2), any()))
+                .thenThrow(new IllegalArgumentException("Bad viewer"))
+                .thenReturn(new int[][] {{1}});
+        writer.start();
+        try {
+            writer.write(1, viewer);
+            verify(jdbcTemplate, timeout(5000).times(1)).batchUpdate(anyString(), anyCollection(), eq(2), any());
+            writer.write(2, viewer);
+            verify(jdbcTemplate, timeout(5000).times(2)).batchUpdate(anyString(), anyCollection(), eq(2), any());
+        } finally {
+            writer.stop();
+        }
+        assertEquals(meterRegistry.counter("bannerads.impressions.failed").count(), 1.0);
+        assertEquals(meterRegistry.counter("bannerads.impressions.written").count(), 1.0);
+        assertTrue(writer.getPendingBannerIds(viewer).isEmpty());
+    }
+}
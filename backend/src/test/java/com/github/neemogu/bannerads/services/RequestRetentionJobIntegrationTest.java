@@ -0,0 +1,83 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.request.RequestRepository;
+import com.github.neemogu.bannerads.request.RequestRetentionJob;
+import com.github.neemogu.bannerads.util.IpAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {
+        "bannerads.retention.chunk-size=3",
+        "bannerads.retention.pause-ms=0"
+})
+public class RequestRetentionJobIntegrationTest {
+    private static final long millisInHour = 3600000L;
+
+    @Autowired
+    private RequestRetentionJob job;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private RequestRepository requestRepository;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Banner banner;
+
+    @BeforeEach
+    public void initDB() {
+        Category category = categoryRepository.save(new Category(null, "Music", "music", false));
+        banner = bannerRepository.save(new Banner(null, "ban1", 4.49, category, "BANNER_1", false));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        requestRepository.deleteAll();
+        bannerRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private void insertRequests(int count, long hoursAgo) {
+        Timestamp date = new Timestamp(System.currentTimeMillis() - hoursAgo * millisInHour);
+        for (int i = 0; i < count; ++i) {
+            jdbcTemplate.update("insert into request (banner_id, ip_address, date) values (?, ?, ?)",
+                    banner.getId(), IpAddress.parse("10.0.0." + i).toBytes(), date);
+        }
+    }
+
+    @Test
+    public void givenRequestsOlderThanDedupWindow_whenPurge_thenOnlyTheyAreRemovedInChunks()
+            throws InterruptedException {
+        insertRequests(8, 48);
+        insertRequests(4, 1);
+
+        assertEquals(job.purge(), 8);
+        assertEquals(job.getLastRunRemoved(), 8);
+        assertEquals(requestRepository.count(), 4);
+
+        assertEquals(job.purge(), 0);
+        assertEquals(requestRepository.count(), 4);
+    }
+
+    @Test
+    public void givenEmptyRequestTable_whenPurge_thenNothingIsRemoved() throws InterruptedException {
+        assertEquals(job.purge(), 0);
+    }
+}
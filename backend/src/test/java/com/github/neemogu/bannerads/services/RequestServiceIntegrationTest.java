@@ -0,0 +1,199 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerIndex;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryCache;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.exceptions.BadRequestException;
+import com.github.neemogu.bannerads.request.DeliveryCounters;
+import com.github.neemogu.bannerads.request.ImpressionWriter;
+import com.github.neemogu.bannerads.request.Request;
+import com.github.neemogu.bannerads.request.RequestRepository;
+import com.github.neemogu.bannerads.request.RequestService;
+import com.github.neemogu.bannerads.request.UserAgentDictionary;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.QueryCounter;
+import com.github.neemogu.bannerads.util.QueryCountingConfiguration;
+import com.github.neemogu.bannerads.util.ViewerHash;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.github.neemogu.bannerads.util.QueryCounter.assertStatementBudget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "bannerads.bid.selection-mode=ANTI_JOIN")
+@Import(QueryCountingConfiguration.class)
+public class RequestServiceIntegrationTest {
+    private static final int bannersCount = 40;
+
+    @Autowired
+    private RequestService service;
+    @Autowired
+    private RequestRepository requestRepository;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private ImpressionWriter impressionWriter;
+    @Autowired
+    private UserAgentDictionary userAgentDictionary;
+    @Autowired
+    private CategoryCache categoryCache;
+    @Autowired
+    private BannerIndex bannerIndex;
+    @Autowired
+    private DeliveryCounters deliveryCounters;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String userAgent = "Google Chrome";
+    private final String ip = "192.168.0.100";
+
+    private Category category;
+    private List<Banner> banners;
+
+    @BeforeEach
+    public void initDB() {
+        category = categoryRepository.save(new Category(null, "Music", "music", false));
+        banners = new ArrayList<>();
+        for (int i = 0; i < bannersCount; ++i) {
+            banners.add(new Banner(null, "ban" + i, 1.0 + i, category, "BANNER_" + i, false));
+        }
+        banners = bannerRepository.saveAll(banners);
+        // banners are saved bypassing the service, content of a chosen banner is taken from the index
+        bannerIndex.rebuild();
+        // known user agents are served from the dictionary cache
+        userAgentDictionary.getId(userAgent);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        impressionWriter.flush();
+        deliveryCounters.flush();
+        jdbcTemplate.update("delete from banner_delivery_counter");
+        requestRepository.deleteAll();
+        bannerRepository.deleteAll();
+        categoryRepository.deleteAll();
+        // categories are changed bypassing the service
+        categoryCache.invalidate();
+    }
+
+    private void markRequested(int seenCount) {
+        List<Request> requests = new ArrayList<>();
+        Integer userAgentId = userAgentDictionary.getId(userAgent);
+        IpAddress ipAddress = IpAddress.parse(ip);
+        for (int i = 0; i < seenCount; ++i) {
+            requests.add(new Request(null, banners.get(bannersCount - 1 - i), userAgentId, ipAddress,
+                    ViewerHash.of(ipAddress, userAgent), null));
+        }
+        requestRepository.saveAll(requests);
+    }
+
+    private Optional<String> nextBanner() {
+        try {
+            return service.getNextBannerContent(userAgent, ip, category.getReqName());
+        } catch (BadRequestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void givenAntiJoinMode_shouldReturnBannersByHighestPriceSkippingRequestedOnes() {
+        markRequested(3);
+        assertEquals(nextBanner().orElse(null), "BANNER_" + (bannersCount - 4));
+        assertEquals(nextBanner().orElse(null), "BANNER_" + (bannersCount - 5));
+    }
+
+    @Test
+    public void givenWriteBehind_whenFlushed_thenServedImpressionsAreInRequestTable()
+            throws InterruptedException {
+        nextBanner();
+        nextBanner();
+        impressionWriter.flush();
+        assertEquals(requestRepository.count(), 2);
+        assertEquals(impressionWriter.getQueueDepth(), 0);
+        assertEquals(nextBanner().orElse(null), "BANNER_" + (bannersCount - 3));
+    }
+
+    @Test
+    public void givenAntiJoinMode_whenAllBannersRequested_shouldReturnEmpty() {
+        markRequested(bannersCount);
+        assertTrue(nextBanner().isEmpty());
+    }
+
+    @Test
+    public void givenAntiJoinMode_queryCountPerBidShouldNotDependOnNumberOfRequestedBanners() {
+        categoryCache.findByReqName(category.getReqName());
+        long statementsWhenNothingSeen = QueryCounter.statementsOf(this::nextBanner).size();
+        markRequested(bannersCount - 2);
+        long statementsWhenAlmostAllSeen = QueryCounter.statementsOf(this::nextBanner).size();
+
+        // banner selection only: the category is cached after the first lookup,
+        // content of the chosen banner is taken from the index and the request is inserted by the write-behind queue
+        assertEquals(statementsWhenNothingSeen, 1);
+        assertEquals(statementsWhenAlmostAllSeen, statementsWhenNothingSeen);
+    }
+
+    @Test
+    public void givenAntiJoinMode_shouldSelectIdsOnlyAndContentOfChosenBannerFromIndex() {
+        categoryCache.findByReqName(category.getReqName());
+        List<String> statements = QueryCounter.statementsOf(
+                () -> assertEquals(nextBanner().orElse(null), "BANNER_" + (bannersCount - 1)));
+        assertEquals(statements.size(), 1);
+        assertFalse(statements.get(0).contains("content"), statements.get(0));
+    }
+
+    @Test
+    public void givenColdCaches_bidShouldStayWithinStatementBudget() {
+        categoryCache.invalidate();
+        // category lookup, user agent lookup and insert, banner selection
+        assertStatementBudget(4, () -> {
+            try {
+                assertTrue(service.getNextBannerContent("Mozilla Firefox", ip, category.getReqName()).isPresent());
+            } catch (BadRequestException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void givenAntiJoinMode_whenBannerReachedDailyCap_shouldSkipItForOtherViewers() throws BadRequestException {
+        Banner top = banners.get(bannersCount - 1);
+        top.setDailyImpressionCap(1L);
+        bannerRepository.save(top);
+        bannerIndex.rebuild();
+
+        assertEquals(nextBanner().orElse(null), top.getContent());
+        assertEquals(service.getNextBannerContent("Mozilla Firefox", ip, category.getReqName()).orElse(null),
+                "BANNER_" + (bannersCount - 2));
+        assertEquals(service.getNextBannerContent("Curl", ip, category.getReqName()).orElse(null),
+                "BANNER_" + (bannersCount - 2));
+    }
+
+    @Test
+    public void givenAntiJoinMode_whenTopBannersAreTargetedElsewhere_shouldReturnFirstEligibleBanner() {
+        for (int i = 0; i < 5; ++i) {
+            Banner banner = banners.get(bannersCount - 1 - i);
+            banner.setTargetIpRanges("10.0.0.0/8");
+            bannerRepository.save(banner);
+        }
+        bannerIndex.rebuild();
+        // the query limit covers the five banners not targeted at the viewer
+        assertEquals(nextBanner().orElse(null), "BANNER_" + (bannersCount - 6));
+    }
+}
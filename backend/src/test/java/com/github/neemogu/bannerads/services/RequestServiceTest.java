@@ -1,25 +1,43 @@
 package com.github.neemogu.bannerads.services;
 
 import com.github.neemogu.bannerads.banner.Banner;
-import com.github.neemogu.bannerads.banner.BannerFetchParameters;
-import com.github.neemogu.bannerads.banner.BannerService;
-import com.github.neemogu.bannerads.banner.BannerSortBy;
+import com.github.neemogu.bannerads.banner.BannerIndex;
+import com.github.neemogu.bannerads.banner.TargetingIndex;
+import com.github.neemogu.bannerads.banner.UserAgentFamily;
 import com.github.neemogu.bannerads.category.Category;
-import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.category.CategoryCache;
 import com.github.neemogu.bannerads.exceptions.BadRequestException;
+import com.github.neemogu.bannerads.request.BannerSelectionMode;
+import com.github.neemogu.bannerads.request.BannerSelectionStrategies;
+import com.github.neemogu.bannerads.request.DeliveryCounters;
+import com.github.neemogu.bannerads.request.FrequencyCaps;
+import com.github.neemogu.bannerads.request.ImpressionWriter;
 import com.github.neemogu.bannerads.request.RequestRepository;
+import com.github.neemogu.bannerads.request.PriceWeightedSelection;
 import com.github.neemogu.bannerads.request.RequestService;
-import com.github.neemogu.bannerads.util.SortDirection;
+import com.github.neemogu.bannerads.request.RoundRobinSelection;
+import com.github.neemogu.bannerads.request.SelectionStrategyType;
+import com.github.neemogu.bannerads.request.StrictPriceSelection;
+import com.github.neemogu.bannerads.request.UserAgentDictionary;
+import com.github.neemogu.bannerads.request.Viewer;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.ViewerHash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -28,11 +46,28 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 public class RequestServiceTest {
     @Mock
-    private CategoryRepository categoryRepository;
+    private CategoryCache categoryCache;
     @Mock
     private RequestRepository requestRepository;
     @Mock
-    private BannerService bannerService;
+    private BannerIndex bannerIndex;
+    @Mock
+    private ImpressionWriter impressionWriter;
+    @Mock
+    private UserAgentDictionary userAgentDictionary;
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // counters are only read from and written to the database by flushes
+    @Spy
+    private DeliveryCounters deliveryCounters = new DeliveryCounters(mock(JdbcTemplate.class), meterRegistry);
+    // a banner twice and a category three times per day
+    @Spy
+    private FrequencyCaps frequencyCaps = new FrequencyCaps(BannerSelectionMode.FREQUENCY_SKETCH,
+            2, 3, 86400000L, 4, 1024, 4, meterRegistry);
+    @Spy
+    private BannerSelectionStrategies selectionStrategies = new BannerSelectionStrategies(
+            List.of(new StrictPriceSelection(), new PriceWeightedSelection(), new RoundRobinSelection()),
+            SelectionStrategyType.STRICT_PRICE);
 
     @InjectMocks
     private RequestService service;
@@ -49,6 +84,14 @@ public class RequestServiceTest {
     private final String userAgent2 = "Curl";
     private final String ip1 = "192.168.0.100";
     private final String ip2 = "10.4.0.68";
+    private final Integer userAgentId1 = 1;
+    private final Integer userAgentId2 = 2;
+    private final IpAddress ipAddress1 = IpAddress.parse(ip1);
+    private final IpAddress ipAddress2 = IpAddress.parse(ip2);
+    private final Viewer viewer1 = new Viewer(userAgent1, userAgentId1, UserAgentFamily.of(userAgent1), ipAddress1,
+            ViewerHash.of(ipAddress1, userAgent1));
+    private final Viewer viewer2 = new Viewer(userAgent2, userAgentId2, UserAgentFamily.of(userAgent2), ipAddress2,
+            ViewerHash.of(ipAddress2, userAgent2));
 
     @BeforeEach
     public void init() {
@@ -56,11 +99,16 @@ public class RequestServiceTest {
         b1 = new Banner(1, "ban1", 4.49, category, "BANNER_1", false);
         b2 = new Banner(2, "ban2", 2.99, category, "BANNER_2", false);
         b3 = new Banner(3, "ban3", 4.49, category, "BANNER_3", false);
+        lenient().when(userAgentDictionary.getId(userAgent1)).thenReturn(userAgentId1);
+        lenient().when(userAgentDictionary.getId(userAgent2)).thenReturn(userAgentId2);
+        lenient().when(userAgentDictionary.getFamily(userAgent1)).thenReturn(UserAgentFamily.of(userAgent1));
+        lenient().when(userAgentDictionary.getFamily(userAgent2)).thenReturn(UserAgentFamily.of(userAgent2));
+        lenient().when(bannerIndex.getCategoryTargeting(any())).thenReturn(new TargetingIndex(List.of()));
     }
 
     @Test
     public void givenNotExistingCategoryReqName_shouldThrowBadRequestException() {
-        when(categoryRepository.findByReqName(category.getReqName())).thenReturn(Optional.empty());
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.empty());
         assertThrows(BadRequestException.class,
                 () -> service.getNextBannerContent(userAgent1, ip1, category.getReqName()));
     }
@@ -68,26 +116,17 @@ public class RequestServiceTest {
     @Test
     public void givenOneIPAndUserAgent_shouldReturnUniqueForIpAndAgentBannersContentByHighestPriceAndSaveRequests()
     throws BadRequestException {
-        when(categoryRepository.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
-        BannerFetchParameters parameters1 = BannerFetchParameters.builder()
-                .categoryId(category.getId()).sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC)
-                .page(0).pageSize(RequestService.bannerPageSize).build();
-        BannerFetchParameters parameters2 = BannerFetchParameters.builder()
-                .categoryId(category.getId()).sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC)
-                .page(1).pageSize(RequestService.bannerPageSize).build();
-
-        when(bannerService.getBannerListPageCount(parameters1)).thenReturn(2L);
-        when(bannerService.getBannerList(parameters1)).thenReturn(List.of(b1, b3));
-        when(bannerService.getBannerList(parameters2)).thenReturn(List.of(b2));
-
-        when(requestRepository.existsByBannerAndIpAddressAndUserAgentAndDateAfter(
-                eq(b1), eq(ip1), eq(userAgent1), any()
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b3, b2)));
+
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b1), any(), any(), eq(ipAddress1), eq(userAgentId1)
         )).thenReturn(false, true);
-        when(requestRepository.existsByBannerAndIpAddressAndUserAgentAndDateAfter(
-                eq(b2), eq(ip1), eq(userAgent1), any()
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b2), any(), any(), eq(ipAddress1), eq(userAgentId1)
         )).thenReturn(false, true);
-        when(requestRepository.existsByBannerAndIpAddressAndUserAgentAndDateAfter(
-                eq(b3), eq(ip1), eq(userAgent1), any()
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b3), any(), any(), eq(ipAddress1), eq(userAgentId1)
         )).thenReturn(false, true);
 
         Optional<String> res1 = service.getNextBannerContent(userAgent1, ip1, category.getReqName());
@@ -101,26 +140,24 @@ public class RequestServiceTest {
         assertEquals(res3.get(), "BANNER_2");
         Optional<String> res4 = service.getNextBannerContent(userAgent1, ip1, category.getReqName());
         assertTrue(res4.isEmpty());
+        assertEquals(meterRegistry.counter("bannerads.bid.exhausted", "category", category.getReqName()).count(), 1.0);
+        assertEquals(meterRegistry.get("bannerads.bid.step").tag("step", "insert").timer().count(), 3);
+        assertEquals(meterRegistry.get("bannerads.bid.step").tag("step", "dedup_check").timer().count(), 4);
 
-        verify(requestRepository, times(3)).save(any());
+        verify(impressionWriter, times(3)).write(any(), eq(viewer1));
     }
 
     @Test
     public void givenDifferentIpOrUserAgent_shouldReturnSameBannerContent()
     throws BadRequestException{
-        when(categoryRepository.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
-        BannerFetchParameters parameters1 = BannerFetchParameters.builder()
-                .categoryId(category.getId()).sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC)
-                .page(0).pageSize(RequestService.bannerPageSize).build();
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b2)));
 
-        when(bannerService.getBannerListPageCount(parameters1)).thenReturn(2L);
-        when(bannerService.getBannerList(parameters1)).thenReturn(List.of(b1, b2));
-
-        when(requestRepository.existsByBannerAndIpAddressAndUserAgentAndDateAfter(
-                eq(b1), eq(ip1), eq(userAgent1), any()
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b1), any(), any(), eq(ipAddress1), eq(userAgentId1)
         )).thenReturn(false, true);
-        when(requestRepository.existsByBannerAndIpAddressAndUserAgentAndDateAfter(
-                eq(b1), eq(ip2), eq(userAgent2), any()
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b1), any(), any(), eq(ipAddress2), eq(userAgentId2)
         )).thenReturn(false, true);
 
         Optional<String> res1 = service.getNextBannerContent(userAgent1, ip1, category.getReqName());
@@ -129,22 +166,18 @@ public class RequestServiceTest {
         assertTrue(res2.isPresent());
         assertEquals(res1.get(), res2.get());
 
-        verify(requestRepository, times(2)).save(any());
+        verify(impressionWriter, times(1)).write(b1.getId(), viewer1);
+        verify(impressionWriter, times(1)).write(b1.getId(), viewer2);
     }
 
     @Test
     public void givenOneIPAndUserAgent_whenGetNextBannerAtDifferentDays_thenReturnSameBannerContent()
             throws BadRequestException{
-        when(categoryRepository.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
-        BannerFetchParameters parameters1 = BannerFetchParameters.builder()
-                .categoryId(category.getId()).sortBy(BannerSortBy.PRICE).sortDirection(SortDirection.DESC)
-                .page(0).pageSize(RequestService.bannerPageSize).build();
-
-        when(bannerService.getBannerListPageCount(parameters1)).thenReturn(2L);
-        when(bannerService.getBannerList(parameters1)).thenReturn(List.of(b1, b2));
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b2)));
 
-        when(requestRepository.existsByBannerAndIpAddressAndUserAgentAndDateAfter(
-                eq(b1), eq(ip1), eq(userAgent1), any()
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b1), any(), any(), eq(ipAddress1), eq(userAgentId1)
         )).thenReturn(false);
 
         Optional<String> res1 = service.getNextBannerContent(userAgent1, ip1, category.getReqName());
@@ -154,6 +187,124 @@ public class RequestServiceTest {
         assertTrue(res2.isPresent());
         assertEquals(res1.get(), res2.get());
 
-        verify(requestRepository, times(2)).save(any());
+        verify(impressionWriter, times(2)).write(b1.getId(), viewer1);
+    }
+
+    @Test
+    public void givenBannerWithPendingImpression_shouldSkipItWithoutQueryingRequests()
+            throws BadRequestException {
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b2)));
+        when(impressionWriter.getPendingBannerIds(viewer1)).thenReturn(Set.of(b1.getId()));
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b2), any(), any(), eq(ipAddress1), eq(userAgentId1)
+        )).thenReturn(false);
+
+        Optional<String> res = service.getNextBannerContent(userAgent1, ip1, category.getReqName());
+        assertEquals(res.orElse(null), "BANNER_2");
+        verify(requestRepository, times(0)).existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b1), any(), any(), any(), any());
+    }
+
+    @Test
+    public void givenInvalidIpAddress_shouldThrowBadRequestException() {
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        assertThrows(BadRequestException.class,
+                () -> service.getNextBannerContent(userAgent1, "192.168.0", category.getReqName()));
+    }
+
+    @Test
+    public void givenFirstCandidateNotRequested_shouldQueryRequestsOnlyOnce() throws BadRequestException {
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b2)));
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b1), any(), any(), eq(ipAddress1), eq(userAgentId1)
+        )).thenReturn(false);
+
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_1");
+        // the database is only reached by the dedup check, the insert is deferred to the impression writer
+        verify(categoryCache, times(1)).findByReqName(category.getReqName());
+        verify(requestRepository, times(1)).existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                any(), any(), any(), any(), any());
+        verifyNoMoreInteractions(requestRepository);
+    }
+
+    @Test
+    public void givenBannerReachedDailyImpressionCap_shouldSkipItWithoutQueryingRequests()
+            throws BadRequestException {
+        b1.setDailyImpressionCap(1L);
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b2)));
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                any(), any(), any(), any(), any()
+        )).thenReturn(false);
+
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_1");
+        assertEquals(service.getNextBannerContent(userAgent2, ip2, category.getReqName()).orElse(null), "BANNER_2");
+        assertEquals(deliveryCounters.getImpressions(b1.getId()), 1);
+        verify(requestRepository, times(0)).existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b1), any(), any(), eq(ipAddress2), any());
+    }
+
+    @Test
+    public void givenBannerReachedDailyBudget_shouldSkipIt() throws BadRequestException {
+        // two impressions at 4.49
+        b1.setDailyBudget(9.0);
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b2)));
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                any(), any(), any(), any(), any()
+        )).thenReturn(false);
+
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_1");
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_1");
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_2");
+    }
+
+    @Test
+    public void givenFrequencySketchMode_shouldApplyBannerAndCategoryCapsWithoutQueryingRequests()
+            throws BadRequestException {
+        ReflectionTestUtils.setField(service, "selectionMode", BannerSelectionMode.FREQUENCY_SKETCH);
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b2)));
+
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_1");
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_1");
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_2");
+        assertTrue(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).isEmpty());
+        assertEquals(service.getNextBannerContent(userAgent2, ip2, category.getReqName()).orElse(null), "BANNER_1");
+
+        verify(impressionWriter, times(3)).write(any(), eq(viewer1));
+        verifyNoInteractions(requestRepository);
+    }
+
+    @Test
+    public void givenRoundRobinCategory_shouldOfferBannersInTurn() throws BadRequestException {
+        category.setSelectionStrategy(SelectionStrategyType.ROUND_ROBIN);
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b2)));
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                any(), any(), any(), any(), any()
+        )).thenReturn(false);
+
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_1");
+        assertEquals(service.getNextBannerContent(userAgent2, ip2, category.getReqName()).orElse(null), "BANNER_2");
+        assertEquals(service.getNextBannerContent(userAgent2, ip2, category.getReqName()).orElse(null), "BANNER_1");
+    }
+
+    @Test
+    public void givenTargetedBanners_shouldSkipNotTargetedOnesWithoutQueryingRequests() throws BadRequestException {
+        b1.setTargetUserAgents("FIREFOX");
+        b3.setTargetIpRanges("10.0.0.0/8");
+        when(categoryCache.findByReqName(category.getReqName())).thenReturn(Optional.of(category));
+        when(bannerIndex.getCategoryTargeting(category.getId())).thenReturn(new TargetingIndex(List.of(b1, b3, b2)));
+        when(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                any(), any(), any(), any(), any()
+        )).thenReturn(false);
+
+        assertEquals(service.getNextBannerContent(userAgent1, ip1, category.getReqName()).orElse(null), "BANNER_2");
+        assertEquals(service.getNextBannerContent(userAgent1, ip2, category.getReqName()).orElse(null), "BANNER_3");
+        verify(requestRepository, never()).existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                eq(b1), any(), any(), any(), any());
     }
 }
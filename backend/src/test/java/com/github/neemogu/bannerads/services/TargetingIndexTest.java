@@ -0,0 +1,171 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.TargetingIndex;
+import com.github.neemogu.bannerads.banner.UserAgentFamily;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.IpRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TargetingIndexTest {
+    private static final String chrome = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 " +
+            "(KHTML, like Gecko) Chrome/96.0.4664.45 Safari/537.36";
+    private static final String firefox = "Mozilla/5.0 (X11; Linux x86_64; rv:94.0) Gecko/20100101 Firefox/94.0";
+
+    private final Category category = new Category(1, "Music", "music", false);
+
+    private Banner banner(int id, String userAgents, String ipRanges) {
+        return new Banner(id, "ban" + id, 1.0, category, "BANNER_" + id, false, null, null, userAgents, ipRanges);
+    }
+
+    private static TargetingIndex.EligibleBanners eligibleFor(List<Banner> banners, String userAgent, String ip) {
+        return new TargetingIndex(banners).eligibleFor(UserAgentFamily.of(userAgent), IpAddress.parse(ip));
+    }
+
+    @Test
+    public void givenUserAgents_whenClassify_thenBrowsersBasedOnOthersAreRecognized() {
+        assertEquals(UserAgentFamily.of(chrome), UserAgentFamily.CHROME);
+        assertEquals(UserAgentFamily.of(firefox), UserAgentFamily.FIREFOX);
+        assertEquals(UserAgentFamily.of(chrome + " Edg/96.0.1054.43"), UserAgentFamily.EDGE);
+        assertEquals(UserAgentFamily.of("Mozilla/5.0 (compatible; Googlebot/2.1)"), UserAgentFamily.BOT);
+        assertEquals(UserAgentFamily.of("Mozilla/5.0 (Macintosh) AppleWebKit/605.1.15 Version/15.1 Safari/605.1.15"),
+                UserAgentFamily.SAFARI);
+        assertEquals(UserAgentFamily.of("curl/7.68.0"), UserAgentFamily.OTHER);
+        assertEquals(UserAgentFamily.of(null), UserAgentFamily.OTHER);
+    }
+
+    @Test
+    public void givenUserAgentsMentioningEdgeInOtherWords_whenClassify_thenTheyAreNotEdge() {
+        assertEquals(UserAgentFamily.of(chrome + " Edge/18.19041"), UserAgentFamily.EDGE);
+        assertEquals(UserAgentFamily.of("KnowledgeBase-Client/2.0 " + firefox), UserAgentFamily.FIREFOX);
+        assertEquals(UserAgentFamily.of(chrome + " Knowledge/1.0"), UserAgentFamily.CHROME);
+        assertEquals(UserAgentFamily.of("Mozilla/5.0 (Linux; Android 11; EdgeTouch) Firefox/94.0"),
+                UserAgentFamily.FIREFOX);
+        assertEquals(UserAgentFamily.of("Hedg/1.0"), UserAgentFamily.OTHER);
+    }
+
+    @Test
+    public void givenUserAgents_whenClassify_thenBotWordsAreMatchedOnWordBoundaries() {
+        assertEquals(UserAgentFamily.of("Mozilla/5.0 (compatible; bingbot/2.0; +http://www.bing.com/bingbot.htm)"),
+                UserAgentFamily.BOT);
+        assertEquals(UserAgentFamily.of("AdsBot-Google (+http://www.google.com/adsbot.html)"), UserAgentFamily.BOT);
+        assertEquals(UserAgentFamily.of("Mozilla/5.0 (compatible; Baiduspider/2.0)"), UserAgentFamily.BOT);
+        assertEquals(UserAgentFamily.of("Sogou web spider/4.0"), UserAgentFamily.BOT);
+        // Cubot is a phone brand
+        assertEquals(UserAgentFamily.of("Mozilla/5.0 (Linux; Android 10; CUBOT X30) AppleWebKit/537.36 " +
+                "(KHTML, like Gecko) Chrome/96.0.4664.45 Mobile Safari/537.36"), UserAgentFamily.CHROME);
+        assertEquals(UserAgentFamily.of("Mozilla/5.0 (Linux; Android 9; CUBOT_P30) Firefox/94.0"),
+                UserAgentFamily.FIREFOX);
+    }
+
+    @Test
+    public void givenNoTargetedBanners_thenAllBannersAreEligible() {
+        List<Banner> banners = List.of(banner(1, null, null), banner(2, " ", ""));
+        TargetingIndex.EligibleBanners eligible = eligibleFor(banners, chrome, "10.0.0.1");
+        assertSame(eligible, TargetingIndex.EligibleBanners.all());
+        assertEquals(eligible.getExcludedCount(), 0);
+    }
+
+    @Test
+    public void givenUserAgentAndIpRules_thenEligibleBannersAreIntersectionOfBothAttributes() {
+        List<Banner> banners = List.of(
+                banner(1, "chrome", "10.0.0.0/8"),
+                banner(2, "CHROME,FIREFOX", null),
+                banner(3, null, "10.1.0.0/16, 192.168.0.1-192.168.0.9"),
+                banner(4, null, null),
+                banner(5, "SAFARI", null)
+        );
+
+        TargetingIndex.EligibleBanners eligible = eligibleFor(banners, chrome, "10.1.2.3");
+        assertTrue(eligible.contains(0) && eligible.contains(1) && eligible.contains(2) && eligible.contains(3));
+        assertFalse(eligible.contains(4));
+        assertEquals(eligible.getExcludedCount(), 1);
+
+        eligible = eligibleFor(banners, firefox, "10.200.0.1");
+        assertFalse(eligible.containsBanner(1) || eligible.containsBanner(3) || eligible.containsBanner(5));
+        assertTrue(eligible.containsBanner(2) && eligible.containsBanner(4));
+        // banners not in the category list are left to the caller
+        assertTrue(eligible.containsBanner(42));
+
+        eligible = eligibleFor(banners, firefox, "192.168.0.9");
+        assertTrue(eligible.contains(2));
+        eligible = eligibleFor(banners, firefox, "192.168.0.10");
+        assertFalse(eligible.contains(2));
+        eligible = eligibleFor(banners, chrome, "1.1.1.1");
+        assertEquals(eligible.getExcludedCount(), 3);
+        eligible = eligibleFor(banners, chrome, "2001:db8::1");
+        assertFalse(eligible.contains(0) || eligible.contains(2));
+    }
+
+    @Test
+    public void givenManyRanges_thenEachAddressMatchesOnlyBannersCoveringIt() {
+        List<Banner> banners = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            // overlapping ranges 10.0.i.0 - 10.0.(i + 1).255
+            banners.add(banner(i, null, "10.0." + i + ".0-10.0." + (i + 1) + ".255"));
+        }
+        for (int third = 0; third <= 101; ++third) {
+            TargetingIndex.EligibleBanners eligible = eligibleFor(banners, chrome, "10.0." + third + ".128");
+            for (int i = 0; i < 100; ++i) {
+                assertEquals(eligible.contains(i), i == third || i == third - 1, "10.0." + third + " / " + i);
+            }
+        }
+    }
+
+    @Test
+    public void givenRandomRanges_thenEligibleBannersAreTheOnesWithARangeContainingTheAddress() {
+        Random random = new Random(42);
+        List<Banner> banners = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            StringJoiner ranges = new StringJoiner(", ");
+            // ranges of a banner may overlap or touch each other, some banners are not targeted
+            for (int j = random.nextInt(4); j > 0; --j) {
+                int first = random.nextInt(256);
+                int last = Math.min(255, first + random.nextInt(40));
+                ranges.add("10.0.0." + first + "-10.0.0." + last);
+            }
+            banners.add(banner(i, null, ranges.toString()));
+        }
+        banners.add(banner(40, null, "10.0.0.255-255.255.255.255"));
+        TargetingIndex targeting = new TargetingIndex(banners);
+        for (int fourth = 0; fourth < 256; ++fourth) {
+            IpAddress address = IpAddress.parse("10.0.0." + fourth);
+            TargetingIndex.EligibleBanners eligible = targeting.eligibleFor(UserAgentFamily.CHROME, address);
+            for (int i = 0; i < banners.size(); ++i) {
+                List<IpRange> ranges = IpRange.parseList(banners.get(i).getTargetIpRanges());
+                boolean expected = ranges.isEmpty() || ranges.stream().anyMatch(range -> range.contains(address));
+                assertEquals(eligible.contains(i), expected, address + " / " + i);
+            }
+        }
+        assertTrue(targeting.eligibleFor(UserAgentFamily.CHROME, IpAddress.parse("255.255.255.255")).contains(40));
+    }
+
+    @Test
+    public void givenInvalidRules_thenBannerIsNotEligible() {
+        List<Banner> banners = List.of(banner(1, "NETSCAPE", null), banner(2, null, "banana"), banner(3, null, null));
+        TargetingIndex.EligibleBanners eligible = eligibleFor(banners, chrome, "10.0.0.1");
+        assertFalse(eligible.contains(0) || eligible.contains(1));
+        assertTrue(eligible.contains(2));
+    }
+
+    @Test
+    public void givenFamilyRulesOnly_thenEligibleBannersAreSharedByViewersOfFamily() {
+        List<Banner> banners = List.of(banner(1, "CHROME", null), banner(2, null, null));
+        TargetingIndex targeting = new TargetingIndex(banners);
+        TargetingIndex.EligibleBanners eligible = targeting.eligibleFor(UserAgentFamily.FIREFOX,
+                IpAddress.parse("10.0.0.1"));
+        assertSame(targeting.eligibleFor(UserAgentFamily.FIREFOX, IpAddress.parse("10.0.0.2")), eligible);
+        assertFalse(eligible.contains(0));
+        assertTrue(eligible.contains(1));
+        assertEquals(eligible.getExcludedCount(), 1);
+        assertSame(targeting.getBanners(), banners);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.UserAgentFamily;
+import com.github.neemogu.bannerads.request.UserAgent;
+import com.github.neemogu.bannerads.request.UserAgentDictionary;
+import com.github.neemogu.bannerads.request.UserAgentRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserAgentDictionaryTest {
+    @Mock
+    private UserAgentRepository repository;
+
+    private final String userAgent = "Google Chrome";
+
+    @Test
+    public void givenKnownUserAgent_whenGetIdTwice_thenRepositoryIsQueriedOnce() {
+        UserAgentDictionary dictionary = new UserAgentDictionary(repository, 10);
+        when(repository.findByAgent(userAgent)).thenReturn(Optional.of(new UserAgent(5, userAgent)));
+
+        assertEquals(dictionary.getId(userAgent), 5);
+        assertEquals(dictionary.getId(userAgent), 5);
+        verify(repository, times(1)).findByAgent(userAgent);
+        verify(repository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    public void givenNewUserAgent_whenGetId_thenItIsInserted() {
+        UserAgentDictionary dictionary = new UserAgentDictionary(repository, 10);
+        when(repository.findByAgent(userAgent)).thenReturn(Optional.empty());
+        when(repository.saveAndFlush(new UserAgent(null, userAgent))).thenReturn(new UserAgent(7, userAgent));
+
+        assertEquals(dictionary.getId(userAgent), 7);
+    }
+
+    @Test
+    public void givenUserAgentInsertedConcurrently_whenGetId_thenExistingIdIsReturned() {
+        UserAgentDictionary dictionary = new UserAgentDictionary(repository, 10);
+        when(repository.findByAgent(userAgent))
+                .thenReturn(Optional.empty(), Optional.of(new UserAgent(8, userAgent)));
+        when(repository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        assertEquals(dictionary.getId(userAgent), 8);
+    }
+
+    @Test
+    public void givenNullOrTooLongUserAgent_whenGetId_thenNullOrTruncatedIdIsReturned() {
+        UserAgentDictionary dictionary = new UserAgentDictionary(repository, 10);
+        String truncated = "a".repeat(UserAgent.maxLength);
+        when(repository.findByAgent(truncated)).thenReturn(Optional.of(new UserAgent(9, truncated)));
+
+        assertNull(dictionary.getId(null));
+        assertEquals(dictionary.getId(truncated + "bcd"), 9);
+        verify(repository).findByAgent(truncated);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void givenUserAgent_whenGetFamily_thenItIsClassifiedWithoutDictionaryLookup() {
+        UserAgentDictionary dictionary = new UserAgentDictionary(repository, 10);
+
+        assertEquals(dictionary.getFamily("Mozilla/5.0 (compatible; Googlebot/2.1)"), UserAgentFamily.BOT);
+        assertEquals(dictionary.getFamily("Mozilla/5.0 (compatible; Googlebot/2.1)"), UserAgentFamily.BOT);
+        assertEquals(dictionary.getFamily(null), UserAgentFamily.OTHER);
+        verifyNoInteractions(repository);
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.neemogu.bannerads.services;
+
+import com.github.neemogu.bannerads.banner.Banner;
+import com.github.neemogu.bannerads.banner.BannerRepository;
+import com.github.neemogu.bannerads.category.Category;
+import com.github.neemogu.bannerads.category.CategoryRepository;
+import com.github.neemogu.bannerads.request.RequestRepository;
+import com.github.neemogu.bannerads.request.UserAgentDictionary;
+import com.github.neemogu.bannerads.request.ViewerHashBackfill;
+import com.github.neemogu.bannerads.util.IpAddress;
+import com.github.neemogu.bannerads.util.ViewerHash;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "bannerads.viewer-hash-backfill.chunk-size=3")
+public class ViewerHashBackfillIntegrationTest {
+    private static final long millisInHour = 3600000L;
+    private static final String userAgent = "Google Chrome";
+
+    @Autowired
+    private ViewerHashBackfill backfill;
+    @Autowired
+    private UserAgentDictionary userAgentDictionary;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private RequestRepository requestRepository;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Banner banner;
+
+    @BeforeEach
+    public void initDB() {
+        Category category = categoryRepository.save(new Category(null, "Music", "music", false));
+        banner = bannerRepository.save(new Banner(null, "ban1", 4.49, category, "BANNER_1", false));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        requestRepository.deleteAll();
+        bannerRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    private void insertRequest(IpAddress ipAddress, Integer userAgentId, Long viewerHash) {
+        jdbcTemplate.update("insert into request (banner_id, ip_address, user_agent_id, viewer_hash, date) " +
+                        "values (?, ?, ?, ?, ?)",
+                banner.getId(), ipAddress.toBytes(), userAgentId, viewerHash,
+                new Timestamp(System.currentTimeMillis() - millisInHour));
+    }
+
+    @Test
+    public void givenRequestsWithoutViewerHash_whenBackfill_thenTheyAreFoundByDedupLookup() {
+        Integer userAgentId = userAgentDictionary.getId(userAgent);
+        for (int i = 0; i < 7; ++i) {
+            insertRequest(IpAddress.parse("10.0.0." + i), i % 2 == 0 ? userAgentId : null, null);
+        }
+        insertRequest(IpAddress.parse("10.0.0.100"), userAgentId, 42L);
+
+        assertEquals(backfill.backfill(), 7);
+        assertEquals(backfill.backfill(), 0);
+
+        IpAddress ipAddress = IpAddress.parse("10.0.0.2");
+        Date dayAgo = new Date(System.currentTimeMillis() - 24 * millisInHour);
+        assertTrue(requestRepository.existsByBannerAndViewerHashAndDateAfterAndIpAddressAndUserAgentId(
+                banner, ViewerHash.of(ipAddress, userAgent), dayAgo, ipAddress, userAgentId));
+        List<Long> hashes = jdbcTemplate.queryForList(
+                "select viewer_hash from request where ip_address = ?", Long.class,
+                (Object) IpAddress.parse("10.0.0.1").toBytes());
+        assertEquals(hashes, List.of(ViewerHash.of(IpAddress.parse("10.0.0.1"), null)));
+        assertEquals(jdbcTemplate.queryForObject("select viewer_hash from request where ip_address = ?",
+                Long.class, (Object) IpAddress.parse("10.0.0.100").toBytes()), 42L);
+    }
+}
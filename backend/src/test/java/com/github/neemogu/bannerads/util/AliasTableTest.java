@@ -0,0 +1,43 @@
+package com.github.neemogu.bannerads.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AliasTableTest {
+    private static int[] sample(AliasTable table, int times) {
+        Random random = new Random(7);
+        int[] counts = new int[table.size()];
+        for (int i = 0; i < times; ++i) {
+            ++counts[table.sample(random)];
+        }
+        return counts;
+    }
+
+    @Test
+    public void whenSample_thenIndexesAreDrawnProportionallyToWeights() {
+        int times = 100000;
+        int[] counts = sample(new AliasTable(new double[] {1.0, 2.0, 7.0, 0.0}), times);
+        assertEquals(counts[0] / (double) times, 0.1, 0.01);
+        assertEquals(counts[1] / (double) times, 0.2, 0.01);
+        assertEquals(counts[2] / (double) times, 0.7, 0.01);
+        assertEquals(counts[3], 0);
+    }
+
+    @Test
+    public void givenZeroWeights_whenSample_thenIndexesAreDrawnUniformly() {
+        int times = 30000;
+        int[] counts = sample(new AliasTable(new double[] {0.0, 0.0, 0.0}), times);
+        for (int count : counts) {
+            assertEquals(count / (double) times, 1.0 / 3, 0.01);
+        }
+    }
+
+    @Test
+    public void givenInvalidWeights_thenExceptionIsThrown() {
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1.0, -1.0}));
+    }
+}
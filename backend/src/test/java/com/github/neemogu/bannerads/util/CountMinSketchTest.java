@@ -0,0 +1,57 @@
+package com.github.neemogu.bannerads.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CountMinSketchTest {
+    @Test
+    public void givenFewKeys_whenAdd_thenCountsAreExact() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        assertEquals(sketch.add(1), 1);
+        assertEquals(sketch.add(1), 2);
+        assertEquals(sketch.add(2), 1);
+        assertEquals(sketch.estimate(1), 2);
+        assertEquals(sketch.estimate(3), 0);
+        sketch.clear();
+        assertEquals(sketch.estimate(1), 0);
+        assertEquals(sketch.getSizeInBytes(), 1024 * 4 * 4);
+    }
+
+    @Test
+    public void givenManyKeys_thenEstimatesAreNotLowerAndWithinErrorBound() {
+        // epsilon = e / width = 0.01, delta = e^-depth = 0.0067
+        int width = 272;
+        int depth = 5;
+        int additions = 20000;
+        CountMinSketch sketch = new CountMinSketch(width, depth);
+        Map<Long, Integer> counts = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < additions; ++i) {
+            // skewed keys, a few of them are frequent
+            long key = random.nextInt(1 + random.nextInt(5000));
+            sketch.add(key);
+            counts.merge(key, 1, Integer::sum);
+        }
+        double bound = Math.E / width * additions;
+        int exceeding = 0;
+        for (Map.Entry<Long, Integer> count : counts.entrySet()) {
+            int estimate = sketch.estimate(count.getKey());
+            assertTrue(estimate >= count.getValue());
+            if (estimate - count.getValue() > bound) {
+                ++exceeding;
+            }
+        }
+        assertTrue(exceeding <= Math.ceil(counts.size() * Math.exp(-depth)), "exceeding: " + exceeding);
+    }
+
+    @Test
+    public void givenInvalidSize_thenExceptionIsThrown() {
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(16, 0));
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.neemogu.bannerads.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IpAddressTest {
+    @Test
+    public void givenIpv4Address_whenParse_thenItIsMappedToIpv6AndStoredInFourBytes() {
+        IpAddress address = IpAddress.parse("192.168.0.100");
+        assertTrue(address.isIpv4());
+        assertEquals(address.getHigh(), 0);
+        assertEquals(address.getLow(), 0xffffc0a80064L);
+        assertArrayEquals(address.toBytes(), new byte[]{(byte) 192, (byte) 168, 0, 100});
+        assertEquals(address.toString(), "192.168.0.100");
+        assertEquals(IpAddress.parse("::ffff:192.168.0.100"), address);
+    }
+
+    @Test
+    public void givenIpv6Address_whenParse_thenAllNotationsGiveSameAddress() {
+        IpAddress address = IpAddress.parse("2001:db8:0:0:0:0:2:1");
+        assertFalse(address.isIpv4());
+        assertEquals(address.getHigh(), 0x20010db800000000L);
+        assertEquals(address.getLow(), 0x0000000000020001L);
+        assertEquals(IpAddress.parse("2001:DB8::2:1"), address);
+        assertEquals(IpAddress.parse("2001:0db8:0000:0000:0000:0000:0002:0001%eth0"), address);
+        assertEquals(address.toString(), "2001:db8::2:1");
+        assertEquals(IpAddress.fromBytes(address.toBytes()), address);
+        assertEquals(address.toBytes().length, 16);
+    }
+
+    @Test
+    public void givenCompressedIpv6Addresses_whenParse_thenGapIsFilledWithZeros() {
+        assertEquals(IpAddress.parse("::"), new IpAddress(0, 0));
+        assertEquals(IpAddress.parse("::1"), new IpAddress(0, 1));
+        assertEquals(IpAddress.parse("0:0:0:0:0:0:0:1").toString(), "::1");
+        assertEquals(IpAddress.parse("fe80::"), new IpAddress(0xfe80000000000000L, 0));
+        assertEquals(IpAddress.parse("fe80::").toString(), "fe80::");
+        assertEquals(IpAddress.parse("1:0:0:2:0:0:0:3").toString(), "1:0:0:2::3");
+        assertEquals(IpAddress.parse("64:ff9b::10.0.0.1"), new IpAddress(0x0064ff9b00000000L, 0x0a000001L));
+    }
+
+    @Test
+    public void givenInvalidAddresses_whenParse_thenExceptionIsThrown() {
+        String[] invalid = {
+                "", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.4%eth0", "abc",
+                ":", ":::", "1::2::3", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7::8",
+                ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:", "12345::", "::g", "1.2.3.4::", "::1.2.3.4:1"
+        };
+        for (String address : invalid) {
+            assertThrows(IllegalArgumentException.class, () -> IpAddress.parse(address), address);
+        }
+        assertThrows(IllegalArgumentException.class, () -> IpAddress.parse(null));
+    }
+
+    @Test
+    public void givenAddresses_whenCompare_thenTheyAreOrderedAsUnsignedNumbers() {
+        assertTrue(IpAddress.parse("10.0.0.1").compareTo(IpAddress.parse("10.0.0.2")) < 0);
+        assertTrue(IpAddress.parse("ffff::").compareTo(IpAddress.parse("1::")) > 0);
+        assertTrue(IpAddress.parse("255.255.255.255").compareTo(IpAddress.parse("::1")) > 0);
+        assertEquals(IpAddress.parse("10.0.0.1").compareTo(IpAddress.parse("::ffff:a00:1")), 0);
+    }
+}
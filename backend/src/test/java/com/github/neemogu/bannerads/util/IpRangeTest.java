@@ -0,0 +1,59 @@
+package com.github.neemogu.bannerads.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IpRangeTest {
+    @Test
+    public void givenIpv4Cidr_whenParse_thenHostBitsAreMaskedInMappedAddressSpace() {
+        IpRange range = IpRange.parse("10.1.2.3/16");
+        assertEquals(range.getFirst(), IpAddress.parse("10.1.0.0"));
+        assertEquals(range.getLast(), IpAddress.parse("10.1.255.255"));
+        assertTrue(range.contains(IpAddress.parse("10.1.200.7")));
+        assertFalse(range.contains(IpAddress.parse("10.2.0.0")));
+        assertEquals(IpRange.parse("0.0.0.0/0").getLast(), IpAddress.parse("255.255.255.255"));
+        assertFalse(IpRange.parse("0.0.0.0/0").contains(IpAddress.parse("2001:db8::1")));
+    }
+
+    @Test
+    public void givenIpv6Cidr_whenParse_thenPrefixMayCrossHalves() {
+        IpRange range = IpRange.parse("2001:db8::/32");
+        assertEquals(range.getFirst(), IpAddress.parse("2001:db8::"));
+        assertEquals(range.getLast(), IpAddress.parse("2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+        IpRange narrow = IpRange.parse("2001:db8::1:0/112");
+        assertEquals(narrow.getFirst(), IpAddress.parse("2001:db8::1:0"));
+        assertEquals(narrow.getLast(), IpAddress.parse("2001:db8::1:ffff"));
+        assertEquals(IpRange.parse("::/0").getLast(), new IpAddress(-1L, -1L));
+    }
+
+    @Test
+    public void givenHyphenatedRangeOrAddress_whenParse_thenBoundsAreInclusive() {
+        IpRange range = IpRange.parse(" 192.168.0.10 - 192.168.0.20 ");
+        assertTrue(range.contains(IpAddress.parse("192.168.0.10")));
+        assertTrue(range.contains(IpAddress.parse("192.168.0.20")));
+        assertFalse(range.contains(IpAddress.parse("192.168.0.21")));
+        IpRange single = IpRange.parse("192.168.0.1");
+        assertEquals(single.getFirst(), single.getLast());
+    }
+
+    @Test
+    public void givenList_whenParse_thenBlankEntriesAreIgnored() {
+        List<IpRange> ranges = IpRange.parseList("10.0.0.0/8, ,192.168.0.1,");
+        assertEquals(ranges.size(), 2);
+        assertTrue(IpRange.parseList(null).isEmpty());
+        assertTrue(IpRange.parseList(" ").isEmpty());
+    }
+
+    @Test
+    public void givenInvalidRange_whenParse_thenExceptionIsThrown() {
+        assertThrows(IllegalArgumentException.class, () -> IpRange.parse("10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> IpRange.parse("10.0.0.0/-1"));
+        assertThrows(IllegalArgumentException.class, () -> IpRange.parse("10.0.0.0/x"));
+        assertThrows(IllegalArgumentException.class, () -> IpRange.parse("10.0.0.9-10.0.0.1"));
+        assertThrows(IllegalArgumentException.class, () -> IpRange.parse("10.0.0.1-::ffff:0:1"));
+        assertThrows(IllegalArgumentException.class, () -> IpRange.parseList("10.0.0.1,banana"));
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.neemogu.bannerads.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageCursorTest {
+    @Test
+    public void whenEncodeAndDecode_thenSameCursorIsReturned() {
+        PageCursor withKey = new PageCursor("NAME,ASC", "Les Paul\nLive", 42);
+        PageCursor withoutKey = new PageCursor("id", null, 7);
+        PageCursor withEmptyKey = new PageCursor("NAME,ASC", "", 1);
+        assertEquals(PageCursor.decode(withKey.encode()).orElseThrow(), withKey);
+        assertEquals(PageCursor.decode(withoutKey.encode()).orElseThrow(), withoutKey);
+        assertEquals(PageCursor.decode(withEmptyKey.encode()).orElseThrow(), withEmptyKey);
+        assertTrue(withKey.encode().matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void givenMalformedToken_whenDecode_thenReturnEmpty() {
+        assertTrue(PageCursor.decode("%%%").isEmpty());
+        assertTrue(PageCursor.decode("").isEmpty());
+        assertTrue(PageCursor.decode(Base64.getUrlEncoder().encodeToString("id".getBytes())).isEmpty());
+        assertTrue(PageCursor.decode(Base64.getUrlEncoder().encodeToString("id\nseven".getBytes())).isEmpty());
+    }
+}
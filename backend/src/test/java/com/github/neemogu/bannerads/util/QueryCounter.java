@@ -0,0 +1,65 @@
+package com.github.neemogu.bannerads.util;
+
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Records SQL statements executed by the current thread through a data source wrapped by
+ * {@link QueryCountingConfiguration}. Statements of other threads (like the impression writer)
+ * are not recorded, so counts do not depend on background work.
+ */
+public final class QueryCounter {
+    private static final ThreadLocal<List<String>> recorded = new ThreadLocal<>();
+
+    private QueryCounter() {
+    }
+
+    static void record(String sql) {
+        List<String> statements = recorded.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+    }
+
+    /**
+     * Runs an action and returns SQL of statements it executed, in execution order.
+     *
+     * @param action Action to run.
+     * @return Executed statements.
+     */
+    public static List<String> statementsOf(Executable action) {
+        List<String> previous = recorded.get();
+        List<String> statements = new ArrayList<>();
+        recorded.set(statements);
+        try {
+            action.execute();
+        } catch (Throwable e) {
+            fail("Action failed while counting statements", e);
+        } finally {
+            if (previous != null) {
+                previous.addAll(statements);
+            }
+            recorded.set(previous);
+        }
+        return Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * Asserts that an action executes at most given number of statements.
+     * The failure message lists all executed statements, which shows N+1 selects at once.
+     *
+     * @param budget Maximum number of statements.
+     * @param action Action to run.
+     */
+    public static void assertStatementBudget(int budget, Executable action) {
+        List<String> statements = statementsOf(action);
+        assertTrue(statements.size() <= budget, () -> "Expected at most " + budget + " statements, but "
+                + statements.size() + " were executed:\n" + String.join("\n", statements));
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.neemogu.bannerads.util;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Wraps the application data source with JDBC proxies reporting every executed statement to {@link QueryCounter}.
+ * Import it into a test to count statements of the code under test.
+ */
+@TestConfiguration
+public class QueryCountingConfiguration {
+    @Bean
+    public static BeanPostProcessor queryCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource ? wrap(DataSource.class, bean, null) : bean;
+            }
+        };
+    }
+
+    private static Object wrap(Class<?> type, Object target, String sql) {
+        return Proxy.newProxyInstance(QueryCountingConfiguration.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (Statement.class.isAssignableFrom(type) && method.getName().startsWith("execute")) {
+                        QueryCounter.record(args != null && args.length > 0 && args[0] instanceof String
+                                ? (String) args[0] : sql);
+                    }
+                    Object result = invoke(method, target, args);
+                    if (result instanceof Connection && method.getReturnType() == Connection.class) {
+                        return wrap(Connection.class, result, null);
+                    }
+                    if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                        String statementSql = args != null && args.length > 0 && args[0] instanceof String
+                                ? (String) args[0] : null;
+                        return wrap(method.getReturnType(), result, statementSql);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.neemogu.bannerads.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlidingCountMinSketchTest {
+    // window of 4 slices of 1000 ms
+    private final SlidingCountMinSketch sketch = new SlidingCountMinSketch(4000, 4, 1024, 4);
+
+    @Test
+    public void givenAdditionsInWindow_thenTheyAreCountedTogether() {
+        assertEquals(sketch.add(1, 0), 1);
+        assertEquals(sketch.add(1, 1500), 2);
+        assertEquals(sketch.add(1, 3999), 3);
+        assertEquals(sketch.estimate(1, 3999), 3);
+        assertEquals(sketch.estimate(2, 3999), 0);
+    }
+
+    @Test
+    public void givenOldAdditions_thenTheyExpireAfterWindowAndOneSlice() {
+        sketch.add(1, 500);
+        sketch.add(1, 1500);
+        // the slice of the first addition is still within window + slice
+        assertEquals(sketch.estimate(1, 4900), 2);
+        assertEquals(sketch.estimate(1, 5000), 1);
+        assertEquals(sketch.estimate(1, 6000), 0);
+        // the expired slice sketch is reused
+        assertEquals(sketch.add(1, 6000), 1);
+        assertEquals(sketch.estimate(1, 6500), 1);
+    }
+
+    @Test
+    public void givenLongPause_thenAllAdditionsExpire() {
+        sketch.add(1, 0);
+        sketch.add(1, 3000);
+        assertEquals(sketch.estimate(1, 100000), 0);
+        assertEquals(sketch.getSizeInBytes(), 6 * 1024 * 4 * 4);
+    }
+
+    @Test
+    public void givenNextSliceClearedAhead_thenOldAdditionsExpireAndNewOnesAreCounted() {
+        sketch.add(1, 500);
+        sketch.add(1, 4500);
+        // during slice 5 the spare sketch of slice 6 still holds slice 0
+        sketch.clearNext(5500);
+        assertEquals(sketch.estimate(1, 5500), 1);
+        assertEquals(sketch.add(1, 6000), 2);
+        assertEquals(sketch.estimate(1, 6500), 2);
+        // clearing again for the same slice keeps its additions
+        sketch.clearNext(5900);
+        assertEquals(sketch.estimate(1, 6500), 2);
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.neemogu.bannerads.util;
+
+import com.github.neemogu.bannerads.category.Category;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrigramIndexTest {
+    private TrigramIndex<Category> index;
+
+    @BeforeEach
+    public void init() {
+        index = new TrigramIndex<>(Category::getId, Category::getName);
+        index.replaceAll(List.of(
+                new Category(1, "Music", "music", false),
+                new Category(2, "Art", "art", false),
+                new Category(3, "Martial Arts", "martial", false),
+                new Category(4, "Smart Home", "home", false)
+        ));
+    }
+
+    private Set<Integer> search(String substring) {
+        return index.search(substring).stream().map(Category::getId).collect(Collectors.toSet());
+    }
+
+    private List<Integer> complete(String prefix, int limit) {
+        return index.complete(prefix, limit).stream().map(Category::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void whenSearch_thenNamesContainingStringIgnoringCaseAreFound() {
+        assertEquals(search("ART"), Set.of(2, 3, 4));
+        assertEquals(search("arts"), Set.of(3));
+        assertEquals(search("l a"), Set.of(3));
+        assertEquals(search("mar"), Set.of(3, 4));
+        assertEquals(search("m"), Set.of(1, 3, 4));
+        assertEquals(search("s"), Set.of(1, 3, 4));
+        assertEquals(search("music!"), Set.of());
+        assertEquals(search("tsa"), Set.of());
+        assertEquals(search("").size(), 4);
+    }
+
+    @Test
+    public void givenQueryWhoseTrigramsAreAllPresent_whenSearch_thenOnlyContainingNamesAreFound() {
+        // "art" and "rth" are both in "Smart Home"... but "arth" is not
+        index.put(new Category(5, "Earth", "earth", false));
+        assertEquals(search("arth"), Set.of(5));
+        assertEquals(search("martho"), Set.of());
+    }
+
+    @Test
+    public void whenPutAndRemove_thenIndexIsUpdated() {
+        index.put(new Category(2, "Painting", "art", false));
+        assertEquals(search("art"), Set.of(3, 4));
+        assertEquals(search("paint"), Set.of(2));
+        index.remove(3);
+        index.remove(42);
+        assertEquals(search("art"), Set.of(4));
+        assertEquals(index.size(), 3);
+    }
+
+    @Test
+    public void whenComplete_thenNamesStartingWithPrefixAreReturnedInOrder() {
+        index.put(new Category(5, "music", "music2", false));
+        assertEquals(complete("M", 10), List.of(3, 1, 5));
+        assertEquals(complete("mu", 1), List.of(1));
+        assertEquals(complete("x", 10), List.of());
+    }
+}
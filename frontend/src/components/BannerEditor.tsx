@@ -13,6 +13,12 @@ function BannerEditor(props: BannerEditorProps) {
     const [price, setPrice] = useState<number>(0.0);
     const [content, setContent] = useState<string>("");
     const [categoryId, setCategoryId] = useState<number>(0);
+    // daily caps, not limited if null
+    const [dailyImpressionCap, setDailyImpressionCap] = useState<number|null>(null);
+    const [dailyBudget, setDailyBudget] = useState<number|null>(null);
+    // comma separated targeting rules, shown to all if empty
+    const [targetUserAgents, setTargetUserAgents] = useState<string>("");
+    const [targetIpRanges, setTargetIpRanges] = useState<string>("");
     // list of categories to select from
     const [categories, setCategories] = useState<{id: number, name: string}[]>([]);
     // form fields post errors
@@ -43,6 +49,10 @@ function BannerEditor(props: BannerEditorProps) {
                     setPrice(data.price)
                     setCategoryId(data.category.id)
                     setContent(data.content)
+                    setDailyImpressionCap(data.dailyImpressionCap)
+                    setDailyBudget(data.dailyBudget)
+                    setTargetUserAgents(data.targetUserAgents ?? "")
+                    setTargetIpRanges(data.targetIpRanges ?? "")
                 }, error => {
                     setError(error);
                 })
@@ -51,6 +61,10 @@ function BannerEditor(props: BannerEditorProps) {
             setPrice(0);
             setContent("");
             setCategoryId(0)
+            setDailyImpressionCap(null);
+            setDailyBudget(null);
+            setTargetUserAgents("");
+            setTargetIpRanges("");
         }
     },[props.bannerId]);
 
@@ -95,13 +109,20 @@ function BannerEditor(props: BannerEditorProps) {
                 setPrice(0);
                 setContent("");
                 setCategoryId(categories[0].id)
+                setDailyImpressionCap(null);
+                setDailyBudget(null);
+                setTargetUserAgents("");
+                setTargetIpRanges("");
             }, error => {
                 setError(error.data)
             });
     };
 
     const saveHandler = () => {
-        const preparedBanner = {id: props.bannerId, name: name, price: price, category: {id: categoryId}, content: content};
+        const preparedBanner = {id: props.bannerId, name: name, price: price, category: {id: categoryId}, content: content,
+            dailyImpressionCap: dailyImpressionCap, dailyBudget: dailyBudget,
+            targetUserAgents: targetUserAgents === "" ? null : targetUserAgents,
+            targetIpRanges: targetIpRanges === "" ? null : targetIpRanges};
         console.log(preparedBanner);
         const requestOptions: RequestInit = {
             method: preparedBanner.id === null ? 'POST' : 'PUT',
@@ -132,6 +153,8 @@ function BannerEditor(props: BannerEditorProps) {
                     setPrice(0);
                     setContent("");
                     setCategoryId(categories[0].id);
+                    setDailyImpressionCap(null);
+                    setDailyBudget(null);
                 }
             }, error => {
                 if (error.type === "content") {
@@ -171,6 +194,52 @@ function BannerEditor(props: BannerEditorProps) {
                             {inputErrors.price !== undefined ? inputErrors.price : ""}
                         </td>
                     </tr>
+                    <tr>
+                        <td className="editor-field-name">Daily impressions</td>
+                        <td className="editor-field">
+                            <input type="number" value={dailyImpressionCap ?? ""} min={1} step={1}
+                                   placeholder="Unlimited"
+                                   onChange={event => setDailyImpressionCap(
+                                       event.target.value === "" ? null : Number(event.target.value))}/>
+                        </td>
+                        <td className="editor-field-error">
+                            {inputErrors.dailyImpressionCap !== undefined ? inputErrors.dailyImpressionCap : ""}
+                        </td>
+                    </tr>
+                    <tr>
+                        <td className="editor-field-name">Daily budget</td>
+                        <td className="editor-field">
+                            <input type="number" value={dailyBudget ?? ""} min={0.0} step={0.01}
+                                   placeholder="Unlimited"
+                                   onChange={event => setDailyBudget(
+                                       event.target.value === "" ? null : Number(event.target.value))}/>
+                        </td>
+                        <td className="editor-field-error">
+                            {inputErrors.dailyBudget !== undefined ? inputErrors.dailyBudget : ""}
+                        </td>
+                    </tr>
+                    <tr>
+                        <td className="editor-field-name">User agents</td>
+                        <td className="editor-field">
+                            <input type="text" value={targetUserAgents}
+                                   placeholder="All (e.g. CHROME, FIREFOX)"
+                                   onChange={event => setTargetUserAgents(event.target.value)}/>
+                        </td>
+                        <td className="editor-field-error">
+                            {inputErrors.targetUserAgents !== undefined ? inputErrors.targetUserAgents : ""}
+                        </td>
+                    </tr>
+                    <tr>
+                        <td className="editor-field-name">IP ranges</td>
+                        <td className="editor-field">
+                            <input type="text" value={targetIpRanges}
+                                   placeholder="All (e.g. 10.0.0.0/8, 2001:db8::/32)"
+                                   onChange={event => setTargetIpRanges(event.target.value)}/>
+                        </td>
+                        <td className="editor-field-error">
+                            {inputErrors.targetIpRanges !== undefined ? inputErrors.targetIpRanges : ""}
+                        </td>
+                    </tr>
                     <tr>
                         <td className="editor-field-name">Category</td>
                         <td className="editor-field">
@@ -11,6 +11,8 @@ interface CategoryEditorProps {
 function CategoryEditor(props: CategoryEditorProps) {
     const [name, setName] = useState<string>("");
     const [reqName, setReqName] = useState<string>("");
+    // order of serving banners of the category, the server default if null
+    const [selectionStrategy, setSelectionStrategy] = useState<string|null>(null);
     // form fields post errors
     const [inputErrors, setInputErrors] = useState<any>({})
     // Text message of an error if there was an error
@@ -37,12 +39,14 @@ function CategoryEditor(props: CategoryEditorProps) {
                 .then(data => {
                     setName(data.name)
                     setReqName(data.reqName)
+                    setSelectionStrategy(data.selectionStrategy)
                 }, error => {
                     setError(error);
                 })
         } else {
             setName("");
             setReqName("");
+            setSelectionStrategy(null);
         }
     },[props.categoryId]);
 
@@ -72,13 +76,15 @@ function CategoryEditor(props: CategoryEditorProps) {
                 props.listUpdater(prev => !prev);
                 setName("");
                 setReqName("");
+                setSelectionStrategy(null);
             }, error => {
                 setError(error.data)
             });
     };
 
     const saveHandler = () => {
-        const preparedCategory = {id: props.categoryId, name: name, reqName: reqName};
+        const preparedCategory = {id: props.categoryId, name: name, reqName: reqName,
+            selectionStrategy: selectionStrategy};
         console.log(JSON.stringify(preparedCategory));
         const requestOptions: RequestInit = {
             method: preparedCategory.id === null ? 'POST' : 'PUT',
@@ -108,6 +114,7 @@ function CategoryEditor(props: CategoryEditorProps) {
                 if (props.categoryId === null) {
                     setName("");
                     setReqName("");
+                    setSelectionStrategy(null);
                 }
             }, error => {
                 console.log(error);
@@ -147,6 +154,19 @@ function CategoryEditor(props: CategoryEditorProps) {
                             {inputErrors.reqName !== undefined ? inputErrors.reqName : ""}
                         </td>
                     </tr>
+                    <tr>
+                        <td className="editor-field-name">Banner order</td>
+                        <td className="editor-field">
+                            <select value={selectionStrategy ?? ""}
+                                    onChange={event => setSelectionStrategy(
+                                        event.target.value === "" ? null : event.target.value)}>
+                                <option value="">Default</option>
+                                <option value="STRICT_PRICE">Highest price first</option>
+                                <option value="PRICE_WEIGHTED">Random, weighted by price</option>
+                                <option value="ROUND_ROBIN">Round-robin</option>
+                            </select>
+                        </td>
+                    </tr>
                 </table>
             </div>
             <div className="editor-notifier">
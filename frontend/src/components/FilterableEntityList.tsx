@@ -33,14 +33,12 @@ function FilterableEntityList(props: FilterableEntityListProps) {
         const getUrlParameters = () => {
             return "?page=" + (page - 1) + "&pageSize=" + pageSize + "&searchName=" + searchStr;
         };
-        fetch(backUrl + "/" + entityPluralForm.get(props.entityType) + "/pages" + getUrlParameters())
-            .then(response => response.text())
-            .then(data => setPageCount(Number(data)),
-                    error => setError(error))
-        fetch(backUrl + "/" + entityPluralForm.get(props.entityType) + "/list" + getUrlParameters())
+        // the page and the page count are returned by one request
+        fetch(backUrl + "/" + entityPluralForm.get(props.entityType) + "/page" + getUrlParameters())
             .then(response => response.json())
             .then(data => {
-                    setEntityList(data.map((e: any) => { return {id: e.id, name: e.name} }));
+                    setEntityList(data.items.map((e: any) => { return {id: e.id, name: e.name} }));
+                    setPageCount(Number(data.pageCount));
                     setIsLoaded(true);
                 },
                 error => setError(error))